@@ -0,0 +1,49 @@
+package com.kujacic.courses.benchmark;
+
+import com.kujacic.courses.utils.ByteRangeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range parsing and response building, run for every range request before any video byte is read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteRangeBenchmark {
+
+    private static final long CONTENT_LENGTH = 512L * 1024 * 1024;
+
+    @Param({"bytes=0-", "bytes=1048576-2097151", "bytes=-500", "bytes=0-99,200-299,150-180,4096-8191"})
+    public String rangeHeader;
+
+    @Benchmark
+    public List<ByteRangeUtils.ByteRange> resolve() {
+        return ByteRangeUtils.resolve(rangeHeader, CONTENT_LENGTH);
+    }
+
+    @Benchmark
+    public void partialContent(Blackhole blackhole) {
+        ResponseEntity<StreamingResponseBody> response = ByteRangeUtils.partialContent(rangeHeader, CONTENT_LENGTH, "video/mp4",
+                (OutputStream outputStream, ByteRangeUtils.ByteRange range) -> blackhole.consume(range));
+        blackhole.consume(response.getHeaders());
+    }
+}
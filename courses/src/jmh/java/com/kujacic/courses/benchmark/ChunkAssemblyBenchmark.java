@@ -0,0 +1,88 @@
+package com.kujacic.courses.benchmark;
+
+import com.kujacic.courses.service.impl.VideoBufferPool;
+import com.kujacic.courses.service.impl.VideoSegmentCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Assembly of 1 MB response chunks the way VideoService does it: a pooled off-heap buffer is
+ * filled from the segment cache and released once written. The backing storage is an in-memory
+ * video, so the numbers cover the cache and buffer handling only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ChunkAssemblyBenchmark {
+
+    private static final String VIDEO_KEY = "videos/benchmark.mp4";
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int VIDEO_SIZE = 64 * 1024 * 1024;
+
+    @Param({"true", "false"})
+    public boolean cacheEnabled;
+
+    private Path cacheDirectory;
+    private byte[] video;
+    private VideoBufferPool bufferPool;
+    private VideoSegmentCache segmentCache;
+    private VideoSegmentCache.SegmentLoader loader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cacheDirectory = Files.createTempDirectory("chunk-benchmark-");
+        video = new byte[VIDEO_SIZE];
+        ThreadLocalRandom.current().nextBytes(video);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        bufferPool = new VideoBufferPool(meterRegistry, 4096, 256, 512);
+        segmentCache = new VideoSegmentCache(meterRegistry, bufferPool, cacheDirectory.toString(), 4, 1024, cacheEnabled);
+        loader = (start, end, target) -> target.put(video, (int) start, (int) (end - start + 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void assembleChunk(Blackhole blackhole) {
+        long start = (long) ThreadLocalRandom.current().nextInt(VIDEO_SIZE / CHUNK_SIZE) * CHUNK_SIZE;
+        long end = start + CHUNK_SIZE - 1;
+
+        try (VideoBufferPool.PooledBuffer buffer = bufferPool.acquire(CHUNK_SIZE)) {
+            segmentCache.read(VIDEO_KEY, start, end, VIDEO_SIZE, loader, buffer.buffer());
+            ByteBuffer data = buffer.buffer().flip();
+            blackhole.consume(data.get(data.limit() - 1));
+        }
+    }
+}
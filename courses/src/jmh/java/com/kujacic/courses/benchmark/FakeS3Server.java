@@ -0,0 +1,79 @@
+package com.kujacic.courses.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for S3 serving path-style GET requests, including single byte ranges,
+ * for objects put into it directly. Enough for the SDK's GetObject calls the streaming path
+ * makes, so the load harness runs without network access or a MinIO container.
+ */
+public class FakeS3Server implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private final HttpServer server;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    public FakeS3Server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    public void putObject(String bucket, String key, byte[] data) {
+        objects.put("/" + bucket + "/" + key, data);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] object = objects.get(exchange.getRequestURI().getPath());
+            if (!exchange.getRequestMethod().equals("GET") || object == null) {
+                exchange.getResponseHeaders().set("Content-Type", "application/xml");
+                byte[] error = "<Error><Code>NoSuchKey</Code></Error>".getBytes();
+                exchange.sendResponseHeaders(404, error.length);
+                exchange.getResponseBody().write(error);
+                return;
+            }
+
+            long start = 0;
+            long end = object.length - 1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null && matcher.matches()) {
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + object.length);
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "video/mp4");
+            exchange.getResponseHeaders().set("ETag", "\"" + Integer.toHexString(System.identityHashCode(object)) + "\"");
+            exchange.sendResponseHeaders(range == null ? 200 : 206, end - start + 1);
+
+            OutputStream body = exchange.getResponseBody();
+            body.write(object, (int) start, (int) (end - start + 1));
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
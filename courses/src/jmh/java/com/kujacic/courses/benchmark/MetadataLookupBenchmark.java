@@ -0,0 +1,78 @@
+package com.kujacic.courses.benchmark;
+
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.service.VideoStreamService;
+import com.kujacic.courses.service.impl.EgressShaper;
+import com.kujacic.courses.service.impl.LocalVideoService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata work done for every video request before streaming starts: the local storage's
+ * filesystem lookup, and a revalidation answered with 304 from that metadata.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataLookupBenchmark {
+
+    private static final String VIDEO_ID = "benchmark";
+
+    private Path storageDirectory;
+    private LocalVideoService localVideoService;
+    private VideoStreamService videoStreamService;
+    private HttpHeaders revalidation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageDirectory = Files.createTempDirectory("metadata-benchmark-");
+        Files.write(storageDirectory.resolve(VIDEO_ID + ".mp4"), new byte[1024]);
+
+        localVideoService = new LocalVideoService();
+        ReflectionTestUtils.setField(localVideoService, "videoStoragePath", storageDirectory.toString());
+
+        videoStreamService = new VideoStreamService(localVideoService, new EgressShaper(new SimpleMeterRegistry(), 0, 0, 2));
+
+        revalidation = new HttpHeaders();
+        revalidation.setIfNoneMatch("\"" + localVideoService.getVideoMetadata(VIDEO_ID).getEtag() + "\"");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(storageDirectory.resolve(VIDEO_ID + ".mp4"));
+        Files.deleteIfExists(storageDirectory);
+    }
+
+    @Benchmark
+    public VideoMetadata localMetadata() {
+        return localVideoService.getVideoMetadata(VIDEO_ID);
+    }
+
+    @Benchmark
+    public ResponseEntity<StreamingResponseBody> notModified() {
+        return videoStreamService.streamVideo(VIDEO_ID, revalidation, "viewer");
+    }
+}
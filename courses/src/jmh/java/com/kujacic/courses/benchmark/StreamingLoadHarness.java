@@ -0,0 +1,333 @@
+package com.kujacic.courses.benchmark;
+
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.service.StorageService;
+import com.kujacic.courses.service.impl.LocalVideoService;
+import com.kujacic.courses.service.impl.VideoBufferPool;
+import com.kujacic.courses.service.impl.VideoPrefetcher;
+import com.kujacic.courses.service.impl.VideoSegmentCache;
+import com.kujacic.courses.service.impl.VideoService;
+import com.kujacic.courses.utils.VideoUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Load harness for the streaming path.
+ * Simulated viewers play a video through {@link VideoService} (backed by an in-process fake S3, or
+ * any S3-compatible endpoint such as MinIO) or {@link LocalVideoService}, requesting consecutive
+ * ranges and seeking now and then. Every viewer uses its own seeded random source, so runs with the
+ * same arguments issue the same requests. Reports throughput, time to first byte and request
+ * latency percentiles, and heap and direct memory per viewer.
+ * <p>
+ * Arguments are key=value pairs: storage (s3|local), viewers, seconds, video-mb, range-kb,
+ * seek-percent, cache (true|false), and endpoint, bucket, access-key, secret-key for an external S3.
+ */
+public class StreamingLoadHarness {
+
+    private static final String VIDEO_ID = "load-test";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String storageType = options.getOrDefault("storage", "s3");
+        int viewers = Integer.parseInt(options.getOrDefault("viewers", "50"));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "30"));
+        int videoSize = Integer.parseInt(options.getOrDefault("video-mb", "64")) * 1024 * 1024;
+        long rangeSize = Long.parseLong(options.getOrDefault("range-kb", "2048")) * 1024;
+        int seekPercent = Integer.parseInt(options.getOrDefault("seek-percent", "10"));
+        boolean cacheEnabled = Boolean.parseBoolean(options.getOrDefault("cache", "true"));
+
+        byte[] video = new byte[videoSize];
+        new Random(42).nextBytes(video);
+
+        Path workDirectory = Files.createTempDirectory("streaming-load-");
+        List<AutoCloseable> resources = new ArrayList<>();
+        try {
+            StorageService storage = storageType.equals("local")
+                    ? localStorage(workDirectory, video)
+                    : s3Storage(options, workDirectory, video, cacheEnabled, resources);
+
+            System.out.printf("Streaming %d MB video from %s storage to %d viewers for %d s (%d KB ranges, %d%% seeks)%n",
+                    videoSize / (1024 * 1024), storageType, viewers, seconds, rangeSize / 1024, seekPercent);
+
+            run(storage, viewers, seconds, videoSize, rangeSize, seekPercent);
+        } finally {
+            Collections.reverse(resources);
+            for (AutoCloseable resource : resources) {
+                resource.close();
+            }
+            deleteDirectory(workDirectory);
+        }
+    }
+
+    private static void run(StorageService storage, int viewers, long seconds, long videoSize,
+                            long rangeSize, int seekPercent) throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        BufferPoolMXBean directMemory = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .findFirst()
+                .orElseThrow();
+
+        System.gc();
+        long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+        long baselineDirect = directMemory.getMemoryUsed();
+        AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        AtomicLong peakDirect = new AtomicLong(baselineDirect);
+
+        List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                peakDirect.accumulateAndGet(directMemory.getMemoryUsed(), Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        long started = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int viewer = 0; viewer < viewers; viewer++) {
+            Random random = new Random(viewer);
+            threads.add(Thread.ofVirtual().start(() -> {
+                long position = 0;
+                while (System.nanoTime() < deadline) {
+                    if (position >= videoSize || random.nextInt(100) < seekPercent) {
+                        position = random.nextLong(videoSize);
+                    }
+                    long end = Math.min(position + rangeSize, videoSize) - 1;
+
+                    long[] timing = request(storage, "bytes=" + position + "-" + end, bytes);
+                    if (timing == null) {
+                        failures.incrementAndGet();
+                    } else {
+                        latencies.add(timing);
+                    }
+                    position = end + 1;
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+        sampler.interrupt();
+
+        report(latencies, bytes.get(), failures.get(), elapsedSeconds, viewers,
+                peakHeap.get() - baselineHeap, peakDirect.get() - baselineDirect);
+    }
+
+    /**
+     * Sends one range request and drains the response.
+     *
+     * @return time to first byte and total time in nanoseconds, or null if the request failed
+     */
+    private static long[] request(StorageService storage, String range, AtomicLong bytes) {
+        long start = System.nanoTime();
+        long[] firstByte = {0};
+
+        try {
+            ResponseEntity<StreamingResponseBody> response = storage.streamVideo(VIDEO_ID, range);
+            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+                return null;
+            }
+
+            response.getBody().writeTo(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] buffer, int offset, int length) {
+                    if (firstByte[0] == 0) {
+                        firstByte[0] = System.nanoTime() - start;
+                    }
+                    bytes.addAndGet(length);
+                }
+            });
+            return new long[]{firstByte[0], System.nanoTime() - start};
+
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void report(List<long[]> latencies, long bytes, long failures, double elapsedSeconds,
+                               int viewers, long heapGrowth, long directGrowth) {
+        long[] firstByte = latencies.stream().mapToLong(timing -> timing[0]).sorted().toArray();
+        long[] total = latencies.stream().mapToLong(timing -> timing[1]).sorted().toArray();
+
+        System.out.printf("Requests:     %d (%d failed)%n", latencies.size() + failures, failures);
+        System.out.printf("Throughput:   %.1f MB/s, %.1f requests/s%n",
+                bytes / elapsedSeconds / (1024 * 1024), latencies.size() / elapsedSeconds);
+        System.out.printf("First byte:   p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(firstByte, 50), percentile(firstByte, 99), percentile(firstByte, 100));
+        System.out.printf("Request:      p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(total, 50), percentile(total, 99), percentile(total, 100));
+        System.out.printf("Heap/viewer:  %.1f KB (peak growth %.1f MB)%n",
+                heapGrowth / 1024.0 / viewers, heapGrowth / (1024.0 * 1024));
+        System.out.printf("Direct/viewer: %.1f KB (peak growth %.1f MB)%n",
+                directGrowth / 1024.0 / viewers, directGrowth / (1024.0 * 1024));
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static StorageService localStorage(Path workDirectory, byte[] video) throws IOException {
+        Files.write(workDirectory.resolve(VIDEO_ID + ".mp4"), video);
+
+        LocalVideoService storage = new LocalVideoService();
+        ReflectionTestUtils.setField(storage, "videoStoragePath", workDirectory.toString());
+        return storage;
+    }
+
+    private static StorageService s3Storage(Map<String, String> options, Path workDirectory, byte[] video,
+                                            boolean cacheEnabled, List<AutoCloseable> resources) throws IOException {
+        String bucket = options.getOrDefault("bucket", "videos");
+        String key = "videos/" + VIDEO_ID + ".mp4";
+
+        URI endpoint;
+        if (options.containsKey("endpoint")) {
+            endpoint = URI.create(options.get("endpoint"));
+        } else {
+            FakeS3Server fakeS3 = new FakeS3Server();
+            resources.add(fakeS3);
+            fakeS3.putObject(bucket, key, video);
+            endpoint = fakeS3.endpoint();
+        }
+
+        S3Client s3Client = S3Client.builder()
+                .endpointOverride(endpoint)
+                .forcePathStyle(true)
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                        options.getOrDefault("access-key", "benchmark"), options.getOrDefault("secret-key", "benchmark"))))
+                .build();
+        resources.add(s3Client);
+
+        if (options.containsKey("endpoint")) {
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(key).contentType("video/mp4").build(),
+                    RequestBody.fromBytes(video));
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VideoBufferPool bufferPool = new VideoBufferPool(meterRegistry, 4096, 256, 512);
+        VideoSegmentCache segmentCache = new VideoSegmentCache(meterRegistry, bufferPool,
+                workDirectory.resolve("cache").toString(), 4, 1024, cacheEnabled);
+
+        ThreadPoolTaskExecutor prefetchExecutor = new ThreadPoolTaskExecutor();
+        prefetchExecutor.setCorePoolSize(8);
+        prefetchExecutor.setMaxPoolSize(8);
+        prefetchExecutor.setQueueCapacity(100);
+        prefetchExecutor.initialize();
+        resources.add(prefetchExecutor::shutdown);
+
+        // The harness only streams, so the service gets no multipart uploader
+        VideoService storage = new VideoService(new FixedMetadataVideoUtils(key, video.length), s3Client, segmentCache,
+                null, new VideoPrefetcher(segmentCache, prefetchExecutor, 4, 500, true), bufferPool);
+        ReflectionTestUtils.setField(storage, "bucketName", bucket);
+        return storage;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        Arrays.stream(args)
+                .map(argument -> argument.split("=", 2))
+                .filter(parts -> parts.length == 2)
+                .forEach(parts -> options.put(parts[0], parts[1]));
+        return options;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Metadata is served from the Caffeine cache in steady state, so the harness hands it out directly
+     * instead of issuing HEAD requests.
+     */
+    private record FixedMetadataVideoUtils(String videoKey, long contentLength) implements VideoUtils {
+
+        @Override
+        public VideoMetadata getVideoMetadata(String key) {
+            return VideoMetadata.builder()
+                    .contentLength(contentLength)
+                    .contentType("video/mp4")
+                    .fileName(VIDEO_ID + ".mp4")
+                    .etag("\"" + VIDEO_ID + "\"")
+                    .lastModified(Instant.EPOCH)
+                    .build();
+        }
+
+        @Override
+        public String getFileExtension(String filename) {
+            return filename.substring(filename.lastIndexOf('.') + 1);
+        }
+
+        @Override
+        public void evictVideoMetadata(String key) {
+        }
+
+        @Override
+        public boolean videoExists(String key) {
+            return key.equals(videoKey);
+        }
+
+        @Override
+        public void validateVideo(MultipartFile file) {
+        }
+
+        @Override
+        public void validateVideo(String filename, String contentType, long size) {
+        }
+
+        @Override
+        public String extractFileName(String key) {
+            return key.substring(key.lastIndexOf('/') + 1);
+        }
+    }
+}
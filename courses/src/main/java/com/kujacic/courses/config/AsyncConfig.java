@@ -0,0 +1,99 @@
+package com.kujacic.courses.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class AsyncConfig implements WebMvcConfigurer {
+
+    @Value("${video.upload.executor.pool-size:4}")
+    private int uploadPoolSize;
+
+    @Value("${video.upload.executor.queue-capacity:50}")
+    private int uploadQueueCapacity;
+
+    @Value("${video.prefetch.executor.pool-size:8}")
+    private int prefetchPoolSize;
+
+    @Value("${video.prefetch.executor.queue-capacity:100}")
+    private int prefetchQueueCapacity;
+
+    @Value("${video.tiering.executor.pool-size:2}")
+    private int tieringPoolSize;
+
+    @Value("${video.tiering.executor.queue-capacity:20}")
+    private int tieringQueueCapacity;
+
+    /**
+     * Executor running video uploads off the request threads. Uploads arriving while its queue is
+     * full are rejected and answered with 503 and a Retry-After header.
+     */
+    @Bean(name = "videoUploadExecutor")
+    public Executor videoUploadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(uploadPoolSize);
+        executor.setMaxPoolSize(uploadPoolSize);
+        executor.setQueueCapacity(uploadQueueCapacity);
+        executor.setThreadNamePrefix("video-upload-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor loading video segments ahead of playback. The queue is bounded so read-ahead
+     * is skipped rather than piling up when S3 is slow.
+     */
+    @Bean(name = "videoPrefetchExecutor")
+    public AsyncTaskExecutor videoPrefetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(prefetchPoolSize);
+        executor.setMaxPoolSize(prefetchPoolSize);
+        executor.setQueueCapacity(prefetchQueueCapacity);
+        executor.setThreadNamePrefix("video-prefetch-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor copying popular videos from S3 to the hot local tier. Promotions are skipped
+     * while the queue is full and retried on a later play.
+     */
+    @Bean(name = "videoTieringExecutor")
+    public AsyncTaskExecutor videoTieringExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(tieringPoolSize);
+        executor.setMaxPoolSize(tieringPoolSize);
+        executor.setQueueCapacity(tieringQueueCapacity);
+        executor.setThreadNamePrefix("video-tiering-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor writing StreamingResponseBody responses. Each stream gets its own virtual thread,
+     * so viewers blocked on S3 or disk I/O are not limited by a platform thread pool.
+     */
+    @Bean(name = "videoStreamingExecutor")
+    public AsyncTaskExecutor videoStreamingExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("video-stream-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(videoStreamingExecutor());
+    }
+}
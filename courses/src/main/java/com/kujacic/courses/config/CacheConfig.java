@@ -0,0 +1,11 @@
+package com.kujacic.courses.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String VIDEO_METADATA_CACHE = "video-metadata";
+    public static final String VIDEO_KEY_CACHE = "video-keys";
+}
@@ -1,169 +1,237 @@
-package com.kujacic.courses.config;
-
-import com.kujacic.courses.dto.error.ErrorResponseDTO;
-import com.kujacic.courses.dto.error.ValidationErrorResponseDTO;
-import com.kujacic.courses.exception.CourseNotFoundException;
-import com.kujacic.courses.exception.ResourceNotFoundException;
-import com.kujacic.courses.exception.ServiceUnavailableException;
-import feign.FeignException;
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.ConstraintViolationException;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.validation.FieldError;
-import org.springframework.web.bind.MethodArgumentNotValidException;
-import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.RestControllerAdvice;
-
-import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
-
-@RestControllerAdvice
-public class GlobalExceptionHandler {
-
-    /**
-     * Handle validation errors from @Valid annotation on @RequestBody
-     */
-    @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ResponseEntity<ValidationErrorResponseDTO> handleValidationErrors(
-            MethodArgumentNotValidException ex) {
-
-        Map<String, String> errors = new HashMap<>();
-
-        ex.getBindingResult().getFieldErrors().forEach(error -> {
-            String fieldName = error.getField();
-            String errorMessage = error.getDefaultMessage();
-            errors.put(fieldName, errorMessage);
-        });
-
-        ValidationErrorResponseDTO response = new ValidationErrorResponseDTO(
-                HttpStatus.BAD_REQUEST.value(),
-                "Validation failed",
-                errors,
-                LocalDateTime.now()
-        );
-
-        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
-    }
-
-    /**
-     * Handle validation errors from @Validated annotation on method parameters
-     */
-    @ExceptionHandler(ConstraintViolationException.class)
-    public ResponseEntity<ValidationErrorResponseDTO> handleConstraintViolation(
-            ConstraintViolationException ex) {
-
-        Map<String, String> errors = ex.getConstraintViolations()
-                .stream()
-                .collect(Collectors.toMap(
-                        violation -> violation.getPropertyPath().toString(),
-                        ConstraintViolation::getMessage
-                ));
-
-        ValidationErrorResponseDTO response = new ValidationErrorResponseDTO(
-                HttpStatus.BAD_REQUEST.value(),
-                "Validation failed",
-                errors,
-                LocalDateTime.now()
-        );
-
-        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
-    }
-
-    @ExceptionHandler(CourseNotFoundException.class)
-    public ResponseEntity<ErrorResponseDTO> handleProgressNotFound(
-            CourseNotFoundException ex) {
-        ErrorResponseDTO error = new ErrorResponseDTO(
-                HttpStatus.NOT_FOUND.value(),
-                ex.getMessage(),
-                LocalDateTime.now()
-        );
-        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
-    }
-
-    /**
-     * Handle ResourceNotFoundException (e.g., Course not found)
-     */
-    @ExceptionHandler(ResourceNotFoundException.class)
-    public ResponseEntity<ErrorResponseDTO> handleResourceNotFound(
-            ResourceNotFoundException ex) {
-        ErrorResponseDTO error = new ErrorResponseDTO(
-                HttpStatus.NOT_FOUND.value(),
-                ex.getMessage(),
-                LocalDateTime.now()
-        );
-        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
-    }
-
-    /**
-     * Handle ServiceUnavailableException
-     */
-    @ExceptionHandler(ServiceUnavailableException.class)
-    public ResponseEntity<ErrorResponseDTO> handleServiceUnavailable(
-            ServiceUnavailableException ex) {
-        ErrorResponseDTO error = new ErrorResponseDTO(
-                HttpStatus.SERVICE_UNAVAILABLE.value(),
-                ex.getMessage(),
-                LocalDateTime.now()
-        );
-        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
-    }
-
-    /**
-     * Handle Feign 404 Not Found
-     */
-    @ExceptionHandler(FeignException.NotFound.class)
-    public ResponseEntity<ErrorResponseDTO> handleFeignNotFound(
-            FeignException.NotFound ex) {
-        ErrorResponseDTO error = new ErrorResponseDTO(
-                HttpStatus.NOT_FOUND.value(),
-                "Requested resource not found in external service",
-                LocalDateTime.now()
-        );
-        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
-    }
-
-    /**
-     * Handle all other Feign exceptions
-     */
-    @ExceptionHandler(FeignException.class)
-    public ResponseEntity<ErrorResponseDTO> handleFeignException(FeignException ex) {
-        HttpStatus status = HttpStatus.valueOf(ex.status());
-
-        String message = switch (ex.status()) {
-            case 400 -> "Bad request to external service";
-            case 401 -> "Unauthorized access to external service";
-            case 403 -> "Forbidden access to external service";
-            case 404 -> "Resource not found in external service";
-            case 500 -> "External service encountered an error";
-            case 503 -> "External service is temporarily unavailable";
-            default -> "Error communicating with external service";
-        };
-
-        ErrorResponseDTO error = new ErrorResponseDTO(
-                status.value(),
-                message,
-                LocalDateTime.now()
-        );
-
-        return new ResponseEntity<>(error, status);
-    }
-
-    /**
-     * Handle all other exceptions
-     */
-    @ExceptionHandler(Exception.class)
-    public ResponseEntity<ErrorResponseDTO> handleGeneralException(Exception ex) {
-        // Log the exception for debugging
-        ex.printStackTrace(); // Replace with proper logging in production
-
-        ErrorResponseDTO error = new ErrorResponseDTO(
-                HttpStatus.INTERNAL_SERVER_ERROR.value(),
-                "An unexpected error occurred: " + ex.getMessage(),
-                LocalDateTime.now()
-        );
-        return new ResponseEntity<>(error, HttpStatus.INTERNAL_SERVER_ERROR);
-    }
+package com.kujacic.courses.config;
+
+import com.kujacic.courses.dto.error.ErrorResponseDTO;
+import com.kujacic.courses.dto.error.ValidationErrorResponseDTO;
+import com.kujacic.courses.exception.CourseNotFoundException;
+import com.kujacic.courses.exception.InvalidUploadException;
+import com.kujacic.courses.exception.ResourceNotFoundException;
+import com.kujacic.courses.exception.ServiceUnavailableException;
+import com.kujacic.courses.exception.UploadInProgressException;
+import com.kujacic.courses.exception.UploadOffsetMismatchException;
+import feign.FeignException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RestControllerAdvice
+public class GlobalExceptionHandler {
+
+    // Long enough for some of the queued uploads to finish before the client tries again
+    private static final int RETRY_AFTER_SECONDS = 30;
+
+    /**
+     * Handle validation errors from @Valid annotation on @RequestBody
+     */
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<ValidationErrorResponseDTO> handleValidationErrors(
+            MethodArgumentNotValidException ex) {
+
+        Map<String, String> errors = new HashMap<>();
+
+        ex.getBindingResult().getFieldErrors().forEach(error -> {
+            String fieldName = error.getField();
+            String errorMessage = error.getDefaultMessage();
+            errors.put(fieldName, errorMessage);
+        });
+
+        ValidationErrorResponseDTO response = new ValidationErrorResponseDTO(
+                HttpStatus.BAD_REQUEST.value(),
+                "Validation failed",
+                errors,
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Handle validation errors from @Validated annotation on method parameters
+     */
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<ValidationErrorResponseDTO> handleConstraintViolation(
+            ConstraintViolationException ex) {
+
+        Map<String, String> errors = ex.getConstraintViolations()
+                .stream()
+                .collect(Collectors.toMap(
+                        violation -> violation.getPropertyPath().toString(),
+                        ConstraintViolation::getMessage
+                ));
+
+        ValidationErrorResponseDTO response = new ValidationErrorResponseDTO(
+                HttpStatus.BAD_REQUEST.value(),
+                "Validation failed",
+                errors,
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(CourseNotFoundException.class)
+    public ResponseEntity<ErrorResponseDTO> handleProgressNotFound(
+            CourseNotFoundException ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.NOT_FOUND.value(),
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Handle ResourceNotFoundException (e.g., Course not found)
+     */
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<ErrorResponseDTO> handleResourceNotFound(
+            ResourceNotFoundException ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.NOT_FOUND.value(),
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Handle UploadOffsetMismatchException, telling the client where to resume
+     */
+    @ExceptionHandler(UploadOffsetMismatchException.class)
+    public ResponseEntity<ErrorResponseDTO> handleUploadOffsetMismatch(
+            UploadOffsetMismatchException ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.CONFLICT.value(),
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header("Upload-Offset", String.valueOf(ex.getExpectedOffset()))
+                .body(error);
+    }
+
+    /**
+     * Handle UploadInProgressException, raised while another request completes or aborts the upload
+     */
+    @ExceptionHandler(UploadInProgressException.class)
+    public ResponseEntity<ErrorResponseDTO> handleUploadInProgress(
+            UploadInProgressException ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.CONFLICT.value(),
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Handle InvalidUploadException (e.g., invalid video or upload chunk)
+     */
+    @ExceptionHandler(InvalidUploadException.class)
+    public ResponseEntity<ErrorResponseDTO> handleInvalidUpload(
+            InvalidUploadException ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.BAD_REQUEST.value(),
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Handle ServiceUnavailableException
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ErrorResponseDTO> handleServiceUnavailable(
+            ServiceUnavailableException ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                ex.getMessage(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Handle TaskRejectedException, raised when a bounded executor such as the video upload executor is full
+     */
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<ErrorResponseDTO> handleTaskRejected(
+            TaskRejectedException ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Too many requests are being processed, try again later",
+                LocalDateTime.now()
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                .body(error);
+    }
+
+    /**
+     * Handle Feign 404 Not Found
+     */
+    @ExceptionHandler(FeignException.NotFound.class)
+    public ResponseEntity<ErrorResponseDTO> handleFeignNotFound(
+            FeignException.NotFound ex) {
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.NOT_FOUND.value(),
+                "Requested resource not found in external service",
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Handle all other Feign exceptions
+     */
+    @ExceptionHandler(FeignException.class)
+    public ResponseEntity<ErrorResponseDTO> handleFeignException(FeignException ex) {
+        HttpStatus status = HttpStatus.valueOf(ex.status());
+
+        String message = switch (ex.status()) {
+            case 400 -> "Bad request to external service";
+            case 401 -> "Unauthorized access to external service";
+            case 403 -> "Forbidden access to external service";
+            case 404 -> "Resource not found in external service";
+            case 500 -> "External service encountered an error";
+            case 503 -> "External service is temporarily unavailable";
+            default -> "Error communicating with external service";
+        };
+
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                status.value(),
+                message,
+                LocalDateTime.now()
+        );
+
+        return new ResponseEntity<>(error, status);
+    }
+
+    /**
+     * Handle all other exceptions
+     */
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponseDTO> handleGeneralException(Exception ex) {
+        // Log the exception for debugging
+        ex.printStackTrace(); // Replace with proper logging in production
+
+        ErrorResponseDTO error = new ErrorResponseDTO(
+                HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                "An unexpected error occurred: " + ex.getMessage(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(error, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
 }
\ No newline at end of file
@@ -3,16 +3,27 @@ package com.kujacic.courses.config;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.amqp.support.converter.MessageConverter;
 
+import java.time.Duration;
+
 @Configuration
 @Slf4j
 public class RabbitConfig {
+    // Downloading the source and storing the package are not bounded by the transcode timeout
+    private static final Duration TRANSCODE_TRANSFER_MARGIN = Duration.ofMinutes(15);
+
+    @Value("${video.transcode.timeout-minutes:60}")
+    private long transcodeTimeoutMinutes;
+
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
@@ -54,6 +65,46 @@ public class RabbitConfig {
                 .with("course-certificate.requested");
     }
 
+    @Bean
+    public TopicExchange courseExchange() {
+        return new TopicExchange("course-exchange", true, false);
+    }
+
+    /**
+     * A transcoding job keeps its message unacknowledged until it is done, which may take longer than
+     * the broker's default consumer timeout of 30 minutes. The queue allows for the whole job instead,
+     * so the broker does not close the channel and redeliver a job that is still running.
+     */
+    @Bean
+    public Queue videoTranscodeQueue() {
+        return QueueBuilder.durable("video-transcode-queue")
+                .withArgument("x-dead-letter-exchange", "dlx")
+                .withArgument("x-consumer-timeout",
+                        Duration.ofMinutes(transcodeTimeoutMinutes).plus(TRANSCODE_TRANSFER_MARGIN).toMillis())
+                .build();
+    }
+
+    @Bean
+    public Binding videoTranscodeRequested() {
+        return BindingBuilder
+                .bind(videoTranscodeQueue())
+                .to(courseExchange())
+                .with("video-transcode.requested");
+    }
+
+    /**
+     * Transcoding jobs run for minutes, so each worker takes a single job at a time
+     * instead of prefetching a batch that other workers could have picked up.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory transcodeListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setPrefetchCount(1);
+        return factory;
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
@@ -2,6 +2,10 @@ package com.kujacic.courses.config;
 
 import com.kujacic.courses.service.StorageService;
 import com.kujacic.courses.service.impl.LocalVideoService;
+import com.kujacic.courses.service.impl.S3MultipartUploader;
+import com.kujacic.courses.service.impl.VideoBufferPool;
+import com.kujacic.courses.service.impl.VideoPrefetcher;
+import com.kujacic.courses.service.impl.VideoSegmentCache;
 import com.kujacic.courses.service.impl.VideoService;
 import com.kujacic.courses.utils.VideoUtils;
 import lombok.RequiredArgsConstructor;
@@ -14,6 +18,10 @@ import software.amazon.awssdk.services.s3.S3Client;
 public class VideoServiceConfig {
     private final VideoUtils videoUtils;
     private final S3Client s3Client;
+    private final VideoSegmentCache videoSegmentCache;
+    private final S3MultipartUploader s3MultipartUploader;
+    private final VideoPrefetcher videoPrefetcher;
+    private final VideoBufferPool videoBufferPool;
 
     public StorageService localVideoService() {
         return new LocalVideoService();
@@ -21,7 +29,7 @@ public class VideoServiceConfig {
 
     @Profile("prod")
     public StorageService s3VideoService() {
-        return new VideoService(videoUtils, s3Client);
+        return new VideoService(videoUtils, s3Client, videoSegmentCache, s3MultipartUploader, videoPrefetcher, videoBufferPool);
     }
 
 }
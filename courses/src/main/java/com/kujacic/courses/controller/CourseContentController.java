@@ -1,14 +1,24 @@
 package com.kujacic.courses.controller;
 
 import com.kujacic.courses.dto.content.ContentResponseDTO;
+import com.kujacic.courses.dto.upload.InitUploadRequest;
+import com.kujacic.courses.dto.upload.UploadSessionResponse;
+import com.kujacic.courses.service.ContentUploadService;
 import com.kujacic.courses.service.CourseContentsService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/courses/{courseId}/levels/{courseLevelId}/contents")
 @RequiredArgsConstructor
@@ -16,16 +26,58 @@ import org.springframework.web.multipart.MultipartFile;
 public class CourseContentController {
 
     private final CourseContentsService courseContentService;
+    private final ContentUploadService contentUploadService;
 
 
     @PostMapping(value = "", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<ContentResponseDTO> createCourseContent(
+    public CompletableFuture<ResponseEntity<ContentResponseDTO>> createCourseContent(
             @PathVariable Long courseId,
             @PathVariable Long courseLevelId,
             @RequestParam("video") MultipartFile file
     ) {
-        ContentResponseDTO contentResponse = courseContentService.createContent(courseLevelId, file);
+        return courseContentService.createContent(courseLevelId, file)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    @PostMapping("uploads")
+    public ResponseEntity<UploadSessionResponse> initUpload(
+            @PathVariable Long courseId,
+            @PathVariable Long courseLevelId,
+            @Valid @RequestBody InitUploadRequest initUploadRequest
+    ) {
+        UploadSessionResponse upload = contentUploadService.initUpload(courseLevelId, initUploadRequest);
+        return new ResponseEntity<>(upload, HttpStatus.CREATED);
+    }
+
+    @GetMapping("uploads/{uploadId}")
+    public ResponseEntity<UploadSessionResponse> getUpload(@PathVariable UUID uploadId) {
+        UploadSessionResponse upload = contentUploadService.getUpload(uploadId);
+        return ResponseEntity.ok()
+                .header("Upload-Offset", upload.getUploadedBytes().toString())
+                .body(upload);
+    }
+
+    @PatchMapping(value = "uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponse> appendChunk(
+            @PathVariable UUID uploadId,
+            @RequestHeader("Upload-Offset") long offset,
+            @RequestHeader(HttpHeaders.CONTENT_LENGTH) long length,
+            InputStream chunk
+    ) {
+        UploadSessionResponse upload = contentUploadService.appendChunk(uploadId, offset, chunk, length);
+        return ResponseEntity.ok()
+                .header("Upload-Offset", upload.getUploadedBytes().toString())
+                .body(upload);
+    }
+
+    @PostMapping("uploads/{uploadId}/complete")
+    public ResponseEntity<ContentResponseDTO> completeUpload(@PathVariable UUID uploadId) {
+        return ResponseEntity.ok(contentUploadService.completeUpload(uploadId));
+    }
 
-        return ResponseEntity.ok(contentResponse);
+    @DeleteMapping("uploads/{uploadId}")
+    public ResponseEntity<Void> abortUpload(@PathVariable UUID uploadId) {
+        contentUploadService.abortUpload(uploadId);
+        return ResponseEntity.noContent().build();
     }
 }
\ No newline at end of file
@@ -1,27 +1,55 @@
 package com.kujacic.courses.controller;
 
 import com.kujacic.courses.dto.video.VideoPost;
+import com.kujacic.courses.service.CourseContentsService;
 import com.kujacic.courses.service.StorageService;
-import com.kujacic.courses.service.impl.VideoService;
+import com.kujacic.courses.service.VideoStreamService;
+import com.kujacic.courses.utils.PreviewUtils;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/videos")
 @RequiredArgsConstructor
 public class VideoController {
     private final StorageService videoService;
+    private final VideoStreamService videoStreamService;
+    private final CourseContentsService courseContentsService;
+
+    @GetMapping("{videoId}")
+    public ResponseEntity<StreamingResponseBody> getVideo(@AuthenticationPrincipal Jwt jwt, @PathVariable String videoId, @RequestHeader HttpHeaders requestHeaders) {
+        return videoStreamService.streamVideo(courseContentsService.resolveVideoKey(videoId), requestHeaders, jwt.getClaimAsString("sub"));
+    }
 
     @PostMapping("stream")
-    public ResponseEntity<byte[]> streamVideo(@Valid @RequestBody VideoPost videoPostRequest, @RequestHeader(value = "Range", required = false) String rangeHeader) {
-        return videoService.streamVideo(videoPostRequest.getVideoId(), rangeHeader);
+    public ResponseEntity<StreamingResponseBody> streamVideo(@AuthenticationPrincipal Jwt jwt, @Valid @RequestBody VideoPost videoPostRequest, @RequestHeader(value = "Range", required = false) String rangeHeader) {
+        return videoStreamService.streamRange(courseContentsService.resolveVideoKey(videoPostRequest.getVideoId()), rangeHeader, jwt.getClaimAsString("sub"));
+    }
+
+    @GetMapping("{videoId}/hls/{fileName}")
+    public ResponseEntity<Resource> getHlsPlaylist(@PathVariable String videoId, @PathVariable String fileName) {
+        return videoService.getHlsFile(courseContentsService.resolveVideoKey(videoId), fileName);
+    }
+
+    @GetMapping("{videoId}/hls/{rendition}/{fileName}")
+    public ResponseEntity<Resource> getHlsRenditionFile(@PathVariable String videoId, @PathVariable String rendition, @PathVariable String fileName) {
+        return videoService.getHlsFile(courseContentsService.resolveVideoKey(videoId), rendition + "/" + fileName);
+    }
+
+    @GetMapping("{videoId}/preview/{fileName}")
+    public ResponseEntity<Resource> getPreviewFile(@PathVariable String videoId, @PathVariable String fileName) {
+        return videoService.getHlsFile(courseContentsService.resolveVideoKey(videoId), PreviewUtils.DIRECTORY + "/" + fileName);
     }
 
     @PostMapping("download")
     public ResponseEntity<Resource> downloadVideo(@Valid @RequestBody VideoPost videoPostRequest) {
-        return videoService.download(videoPostRequest.getVideoId());
+        return videoService.download(courseContentsService.resolveVideoKey(videoPostRequest.getVideoId()));
     }
 }
@@ -0,0 +1,14 @@
+package com.kujacic.courses.dto.rabbitmq;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VideoTranscodeEvent {
+    private String contentId;
+}
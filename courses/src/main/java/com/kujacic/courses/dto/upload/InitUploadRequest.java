@@ -0,0 +1,30 @@
+package com.kujacic.courses.dto.upload;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class InitUploadRequest {
+
+    @NotBlank
+    @JsonProperty("file_name")
+    private String fileName;
+
+    @NotBlank
+    @JsonProperty("content_type")
+    private String contentType;
+
+    @NotNull
+    @Positive
+    @JsonProperty("total_size")
+    private Long totalSize;
+}
@@ -0,0 +1,20 @@
+package com.kujacic.courses.dto.upload;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionResponse {
+    @JsonProperty("upload_id")
+    String uploadId;
+
+    @JsonProperty("uploaded_bytes")
+    Long uploadedBytes;
+
+    @JsonProperty("total_size")
+    Long totalSize;
+}
@@ -5,15 +5,27 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.ByteBuffer;
+
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-public class VideoChunk {
-    private byte[] data;
+public class VideoChunk implements AutoCloseable {
+    private ByteBuffer data;
     private long rangeStart;
     private long rangeEnd;
     private long contentLength;
     private String contentType;
     private String fileName;
-}
\ No newline at end of file
+
+    // Returns the pooled buffer backing data; the chunk must not be read after it is closed
+    private Runnable release;
+
+    @Override
+    public void close() {
+        if (release != null) {
+            release.run();
+        }
+    }
+}
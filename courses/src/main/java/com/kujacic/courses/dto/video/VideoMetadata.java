@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Data
 @Builder
 @AllArgsConstructor
@@ -14,4 +16,6 @@ public class VideoMetadata {
     private Long contentLength;
     private String contentType;
     private String fileName;
+    private String etag;
+    private Instant lastModified;
 }
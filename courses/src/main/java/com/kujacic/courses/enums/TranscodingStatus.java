@@ -0,0 +1,8 @@
+package com.kujacic.courses.enums;
+
+public enum TranscodingStatus {
+    PENDING,
+    PROCESSING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,12 @@
+package com.kujacic.courses.exception;
+
+/**
+ * Thrown when an uploaded video or chunk is rejected, such as a wrong file type, size or chunk length.
+ * Its message is meant for the client.
+ */
+public class InvalidUploadException extends RuntimeException {
+
+    public InvalidUploadException(String message) {
+        super(message);
+    }
+}
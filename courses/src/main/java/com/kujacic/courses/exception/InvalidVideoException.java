@@ -0,0 +1,11 @@
+package com.kujacic.courses.exception;
+
+/**
+ * Thrown when the content of an uploaded video does not match its declared type or exceeds the size limit.
+ */
+public class InvalidVideoException extends InvalidUploadException {
+
+    public InvalidVideoException(String message) {
+        super(message);
+    }
+}
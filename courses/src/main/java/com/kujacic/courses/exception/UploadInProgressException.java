@@ -0,0 +1,11 @@
+package com.kujacic.courses.exception;
+
+/**
+ * Thrown when an upload is changed while another request is completing or aborting it.
+ */
+public class UploadInProgressException extends RuntimeException {
+
+    public UploadInProgressException() {
+        super("Upload is being completed or aborted");
+    }
+}
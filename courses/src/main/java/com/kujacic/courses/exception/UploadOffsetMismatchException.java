@@ -0,0 +1,13 @@
+package com.kujacic.courses.exception;
+
+import lombok.Getter;
+
+@Getter
+public class UploadOffsetMismatchException extends RuntimeException {
+    private final long expectedOffset;
+
+    public UploadOffsetMismatchException(long expectedOffset) {
+        super("Chunk offset does not match the uploaded size of " + expectedOffset + " bytes");
+        this.expectedOffset = expectedOffset;
+    }
+}
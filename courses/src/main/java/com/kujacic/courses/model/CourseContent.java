@@ -1,12 +1,13 @@
 package com.kujacic.courses.model;
 
+import com.kujacic.courses.enums.TranscodingStatus;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.util.UUID;
 
 @Entity
-@Table(name = "course_contents")
+@Table(name = "course_contents", indexes = @Index(name = "idx_course_contents_content_hash", columnList = "content_hash"))
 @Getter
 @Setter
 @Builder
@@ -20,6 +21,28 @@ public class CourseContent {
     @Column()
     private String url;
 
+    /**
+     * SHA-256 of the uploaded video, which is also its storage key. Contents sharing a hash reference
+     * the same stored video and HLS package. Nothing removes contents, so stored videos and packages are
+     * kept for good; a delete path would have to keep them until no row with their hash is left.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transcoding_status")
+    @Builder.Default
+    private TranscodingStatus transcodingStatus = TranscodingStatus.PENDING;
+
+    @Column(name = "hls_url")
+    private String hlsUrl;
+
+    @Column(name = "poster_url")
+    private String posterUrl;
+
+    @Column(name = "thumbnail_track_url")
+    private String thumbnailTrackUrl;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "course_level")
     private CourseLevel courseLevel;
@@ -0,0 +1,58 @@
+package com.kujacic.courses.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Message waiting to be sent to the broker.
+ * Written in the same transaction as the change it announces and removed once the broker confirms it.
+ */
+@Entity
+@Table(name = "outbox_events")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String exchange;
+
+    @Column(name = "routing_key", nullable = false)
+    private String routingKey;
+
+    @Column(name = "correlation_id", nullable = false)
+    private String correlationId;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    // Message headers as a JSON object
+    @Column(columnDefinition = "text")
+    private String headers;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Set once the event failed too often; parked events are no longer relayed
+    @Column(name = "parked_at")
+    private LocalDateTime parkedAt;
+
+    // When a relay claimed the event for sending, or null if no relay is sending it
+    @Column(name = "relaying_since")
+    private LocalDateTime relayingSince;
+}
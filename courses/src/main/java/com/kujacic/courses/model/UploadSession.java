@@ -0,0 +1,66 @@
+package com.kujacic.courses.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "upload_sessions")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "course_level_id", nullable = false)
+    private Long courseLevelId;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+    @Column(name = "total_size", nullable = false)
+    private Long totalSize;
+
+    @Column(name = "uploaded_bytes", nullable = false)
+    @Builder.Default
+    private Long uploadedBytes = 0L;
+
+    @Column(name = "part_count", nullable = false)
+    @Builder.Default
+    private Integer partCount = 0;
+
+    @Column(name = "storage_upload_id")
+    private String storageUploadId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * When a chunk was last claimed or committed. Expiry is based on it, so an upload that is still
+     * progressing is kept however long it takes.
+     */
+    @Column(name = "last_activity_at")
+    private LocalDateTime lastActivityAt;
+
+    /**
+     * When the chunk being transferred claimed its offset, or null if no chunk is in flight.
+     */
+    @Column(name = "appending_since")
+    private LocalDateTime appendingSince;
+
+    /**
+     * When completing or aborting the upload started, or null if neither is in progress. Set while the
+     * session is locked, so the storage is called without holding the lock.
+     */
+    @Column(name = "finalizing_since")
+    private LocalDateTime finalizingSince;
+}
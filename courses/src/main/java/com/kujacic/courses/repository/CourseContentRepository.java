@@ -1,5 +1,6 @@
 package com.kujacic.courses.repository;
 
+import com.kujacic.courses.enums.TranscodingStatus;
 import com.kujacic.courses.model.CourseContent;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -14,4 +15,11 @@ public interface CourseContentRepository extends JpaRepository<CourseContent, UU
 
     @Query("SELECT COUNT(cc) > 0 FROM CourseContent cc WHERE cc.courseLevel.id = :id")
     Boolean existByCourseLevelId(@Param("id") Long id);
+
+    Optional<CourseContent> findFirstByContentHash(String contentHash);
+
+    @Query("SELECT cc.contentHash FROM CourseContent cc WHERE cc.id = :id AND cc.contentHash IS NOT NULL")
+    Optional<String> findContentHashById(@Param("id") UUID id);
+
+    Optional<CourseContent> findFirstByContentHashAndTranscodingStatus(String contentHash, TranscodingStatus transcodingStatus);
 }
@@ -0,0 +1,47 @@
+package com.kujacic.courses.repository;
+
+import com.kujacic.courses.model.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Locks the next events to relay, strictly oldest first. Rows locked by another instance are skipped,
+     * so several relays can claim batches side by side. Parked events and events claimed by another
+     * relay are left out; a claim made before the stale cutoff is taken over, since its relay is gone.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("""
+            SELECT e FROM OutboxEvent e
+            WHERE e.parkedAt IS NULL AND (e.relayingSince IS NULL OR e.relayingSince < :staleBefore)
+            ORDER BY e.id
+            """)
+    List<OutboxEvent> findBatchForRelay(@Param("staleBefore") LocalDateTime staleBefore, Pageable pageable);
+
+    /**
+     * Stores a failed attempt of an event and releases its claim, so the next run relays it again unless it is parked.
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.attempts = :attempts, e.parkedAt = :parkedAt, e.relayingSince = NULL WHERE e.id = :id")
+    int recordFailedAttempt(@Param("id") Long id, @Param("attempts") int attempts, @Param("parkedAt") LocalDateTime parkedAt);
+
+    /**
+     * Releases the claim of events that were not sent, so the next run relays them again.
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.relayingSince = NULL WHERE e.id IN :ids")
+    int releaseClaims(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,93 @@
+package com.kujacic.courses.repository;
+
+import com.kujacic.courses.model.UploadSession;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+
+    /**
+     * Locks a session for the rest of the transaction, so requests changing the same upload run one after another.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UploadSession s WHERE s.id = :id")
+    Optional<UploadSession> findByIdForUpdate(@Param("id") UUID id);
+
+    /**
+     * Claims the chunk at the given offset of a session, unless another request is transferring a chunk
+     * or the upload is being completed or aborted, and records the activity. A claim made before the stale cutoff is taken over, since its request is gone.
+     *
+     * @return 1 if the chunk was claimed, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE UploadSession s SET s.appendingSince = :now, s.lastActivityAt = :now
+            WHERE s.id = :id AND s.uploadedBytes = :offset AND s.finalizingSince IS NULL
+              AND (s.appendingSince IS NULL OR s.appendingSince < :staleBefore)
+            """)
+    int claimChunk(@Param("id") UUID id, @Param("offset") long offset,
+                   @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Commits a transferred chunk claimed at the given offset, releases the claim and records the activity.
+     *
+     * @return 1 if the chunk was committed, 0 if the session is gone or moved past the offset
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE UploadSession s
+            SET s.uploadedBytes = :uploadedBytes, s.partCount = s.partCount + 1, s.appendingSince = NULL,
+                s.lastActivityAt = :now
+            WHERE s.id = :id AND s.uploadedBytes = :offset
+            """)
+    int commitChunk(@Param("id") UUID id, @Param("offset") long offset, @Param("uploadedBytes") long uploadedBytes,
+                    @Param("now") LocalDateTime now);
+
+    /**
+     * Releases the claim of a chunk whose transfer failed, so it can be sent again.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.appendingSince = NULL WHERE s.id = :id AND s.uploadedBytes = :offset")
+    int releaseChunk(@Param("id") UUID id, @Param("offset") long offset);
+
+    /**
+     * Releases sessions whose completion or abort failed, so it can be tried again.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.finalizingSince = NULL WHERE s.id IN :ids")
+    int releaseFinalization(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Locks sessions without activity since the cutoff, least recently active first. Sessions a request
+     * has locked, or is completing or aborting since the stale cutoff, are skipped. Sessions from before
+     * activity was recorded count from their creation.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("""
+            SELECT s FROM UploadSession s
+            WHERE COALESCE(s.lastActivityAt, s.createdAt) < :cutoff
+              AND (s.finalizingSince IS NULL OR s.finalizingSince < :staleBefore)
+            ORDER BY COALESCE(s.lastActivityAt, s.createdAt)
+            """)
+    List<UploadSession> findExpiredForCleanup(@Param("cutoff") LocalDateTime cutoff,
+                                              @Param("staleBefore") LocalDateTime staleBefore, Pageable pageable);
+}
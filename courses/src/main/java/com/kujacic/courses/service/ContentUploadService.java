@@ -0,0 +1,208 @@
+package com.kujacic.courses.service;
+
+import com.kujacic.courses.dto.content.ContentResponseDTO;
+import com.kujacic.courses.dto.upload.InitUploadRequest;
+import com.kujacic.courses.dto.upload.UploadSessionResponse;
+import com.kujacic.courses.exception.InvalidUploadException;
+import com.kujacic.courses.exception.ResourceNotFoundException;
+import com.kujacic.courses.exception.UploadInProgressException;
+import com.kujacic.courses.exception.UploadOffsetMismatchException;
+import com.kujacic.courses.exception.VideoProcessingError;
+import com.kujacic.courses.model.CourseLevel;
+import com.kujacic.courses.model.UploadSession;
+import com.kujacic.courses.repository.UploadSessionRepository;
+import com.kujacic.courses.utils.VideoContainerUtils;
+import com.kujacic.courses.utils.VideoUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable upload protocol for course content videos.
+ * An upload is initialized once, receives its chunks in order by byte offset and is finalized
+ * when all bytes have arrived. Each chunk is streamed straight to the storage, and the
+ * committed offset is kept on the session so an interrupted upload resumes where it stopped.
+ * A chunk claims its offset before it is transferred, so concurrent chunks for the same offset
+ * cannot both be written. The claim and the new offset are committed in short statements of their
+ * own; no transaction or connection is held while the chunk is transferred. Completing and
+ * aborting an upload lock the session just long enough to mark it, call the storage after that
+ * transaction committed and remove the session in a second one. Storage failures are reported as processing errors,
+ * whether the storage signals them as I/O errors or as runtime exceptions.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ContentUploadService {
+    private final UploadSessionRepository uploadSessionRepository;
+    private final CourseContentsService courseContentsService;
+    private final StorageService videoService;
+    private final VideoUtils videoUtils;
+    private final TransactionTemplate transactionTemplate;
+
+    // A claim this old belongs to a request that is gone, so its chunk may be sent again
+    private static final Duration CHUNK_CLAIM_TIMEOUT = Duration.ofMinutes(30);
+
+    // A completion or abort started this long ago belongs to a request that is gone
+    static final Duration FINALIZATION_TIMEOUT = Duration.ofMinutes(30);
+
+    public UploadSessionResponse initUpload(Long courseLevelId, InitUploadRequest request) {
+        courseContentsService.findLevelWithoutContent(courseLevelId);
+        videoUtils.validateVideo(request.getFileName(), request.getContentType(), request.getTotalSize());
+
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID())
+                .courseLevelId(courseLevelId)
+                .fileName(request.getFileName())
+                .contentType(request.getContentType())
+                .totalSize(request.getTotalSize())
+                .createdAt(now)
+                .lastActivityAt(now)
+                .build();
+
+        try {
+            session.setStorageUploadId(videoService.initUpload(session));
+        } catch (IOException | UncheckedIOException | SdkException e) {
+            log.warn("Could not start upload for course level {}: {}", courseLevelId, e.getMessage());
+            throw new VideoProcessingError();
+        }
+
+        uploadSessionRepository.save(session);
+        log.info("Initialized upload {} for course level {}", session.getId(), courseLevelId);
+
+        return toResponse(session);
+    }
+
+    public UploadSessionResponse getUpload(UUID uploadId) {
+        return toResponse(findSession(uploadId));
+    }
+
+    public UploadSessionResponse appendChunk(UUID uploadId, long offset, InputStream chunk, long length) {
+        UploadSession session = findSession(uploadId);
+
+        if (offset != session.getUploadedBytes()) {
+            throw new UploadOffsetMismatchException(session.getUploadedBytes());
+        }
+        if (length <= 0 || offset + length > session.getTotalSize()) {
+            throw new InvalidUploadException("Chunk exceeds the declared upload size");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (uploadSessionRepository.claimChunk(uploadId, offset, now, now.minus(CHUNK_CLAIM_TIMEOUT)) == 0) {
+            // Another chunk was committed or is being transferred since the session was read
+            throw new UploadOffsetMismatchException(findSession(uploadId).getUploadedBytes());
+        }
+
+        try {
+            if (offset == 0) {
+                // Sniff the container before the first byte reaches the storage
+                chunk = VideoContainerUtils.validate(chunk, videoUtils.getFileExtension(session.getFileName()), length);
+            }
+            videoService.appendChunk(session, chunk, length);
+        } catch (IOException | UncheckedIOException | SdkException e) {
+            log.warn("Chunk at offset {} of upload {} failed: {}", offset, uploadId, e.getMessage());
+            uploadSessionRepository.releaseChunk(uploadId, offset);
+            throw new VideoProcessingError();
+        } catch (RuntimeException e) {
+            uploadSessionRepository.releaseChunk(uploadId, offset);
+            throw e;
+        }
+
+        if (uploadSessionRepository.commitChunk(uploadId, offset, offset + length, LocalDateTime.now()) == 0) {
+            throw new ResourceNotFoundException("Upload not found");
+        }
+        session.setUploadedBytes(offset + length);
+        session.setPartCount(session.getPartCount() + 1);
+
+        return toResponse(session);
+    }
+
+    public ContentResponseDTO completeUpload(UUID uploadId) {
+        UploadSession session = transactionTemplate.execute(status -> {
+            UploadSession locked = lockForFinalization(uploadId);
+            if (!locked.getUploadedBytes().equals(locked.getTotalSize())) {
+                throw new UploadOffsetMismatchException(locked.getUploadedBytes());
+            }
+            courseContentsService.findLevelWithoutContent(locked.getCourseLevelId());
+            return locked;
+        });
+
+        String url;
+        try {
+            url = videoService.completeUpload(session);
+        } catch (IOException | UncheckedIOException | SdkException e) {
+            log.warn("Could not complete upload {}: {}", uploadId, e.getMessage());
+            uploadSessionRepository.releaseFinalization(List.of(uploadId));
+            throw new VideoProcessingError();
+        } catch (RuntimeException e) {
+            uploadSessionRepository.releaseFinalization(List.of(uploadId));
+            throw e;
+        }
+
+        ContentResponseDTO content = transactionTemplate.execute(status -> {
+            CourseLevel courseLevel = courseContentsService.findLevelWithoutContent(session.getCourseLevelId());
+            ContentResponseDTO saved = courseContentsService.saveContent(session.getId(), courseLevel, url);
+            uploadSessionRepository.deleteById(uploadId);
+            return saved;
+        });
+
+        log.info("Completed upload {} for course level {}", uploadId, session.getCourseLevelId());
+        return content;
+    }
+
+    public void abortUpload(UUID uploadId) {
+        UploadSession session = transactionTemplate.execute(status -> lockForFinalization(uploadId));
+
+        try {
+            videoService.abortUpload(session);
+        } catch (RuntimeException e) {
+            uploadSessionRepository.releaseFinalization(List.of(uploadId));
+            throw e;
+        }
+        uploadSessionRepository.deleteById(uploadId);
+    }
+
+    /**
+     * Locks a session and marks it as being completed or aborted. The mark is committed with the
+     * transaction, so the storage is called without holding the lock while other requests on the
+     * upload are still refused.
+     */
+    private UploadSession lockForFinalization(UUID uploadId) {
+        UploadSession session = lockSession(uploadId);
+
+        LocalDateTime now = LocalDateTime.now();
+        if (session.getFinalizingSince() != null && session.getFinalizingSince().isAfter(now.minus(FINALIZATION_TIMEOUT))) {
+            throw new UploadInProgressException();
+        }
+        session.setFinalizingSince(now);
+        return session;
+    }
+
+    private UploadSession findSession(UUID uploadId) {
+        return uploadSessionRepository.findById(uploadId)
+                .orElseThrow(() -> new ResourceNotFoundException("Upload not found"));
+    }
+
+    private UploadSession lockSession(UUID uploadId) {
+        return uploadSessionRepository.findByIdForUpdate(uploadId)
+                .orElseThrow(() -> new ResourceNotFoundException("Upload not found"));
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session) {
+        return UploadSessionResponse.builder()
+                .uploadId(session.getId().toString())
+                .uploadedBytes(session.getUploadedBytes())
+                .totalSize(session.getTotalSize())
+                .build();
+    }
+}
@@ -1,5 +1,6 @@
 package com.kujacic.courses.service;
 
+import com.kujacic.courses.config.CacheConfig;
 import com.kujacic.courses.dto.content.ContentResponseDTO;
 import com.kujacic.courses.exception.CourseContentExistForLevel;
 import com.kujacic.courses.exception.CourseLevelNotFoundException;
@@ -8,17 +9,24 @@ import com.kujacic.courses.model.CourseContent;
 import com.kujacic.courses.model.CourseLevel;
 import com.kujacic.courses.repository.CourseContentRepository;
 import com.kujacic.courses.repository.CourseLevelsRepository;
-import com.kujacic.courses.service.impl.VideoService;
+import com.kujacic.courses.utils.ContentHashUtils;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
+@Slf4j
 @Getter
 @Setter
 @RequiredArgsConstructor
@@ -26,32 +34,34 @@ public class CourseContentsService {
     private final CourseContentRepository courseContentRepository;
     private final CourseLevelsRepository courseLevelsRepository;
     private final StorageService videoService;
+    private final CoursePublisher coursePublisher;
 
 
 
-    public ContentResponseDTO createContent(Long courseLevelId, MultipartFile file){
-            Boolean contentExistForLevel = courseContentRepository.existByCourseLevelId(courseLevelId);
-            if(contentExistForLevel) throw new CourseContentExistForLevel();
-            CourseLevel courseLevel = courseLevelsRepository.findById(courseLevelId).orElseThrow(() -> new CourseLevelNotFoundException("Course level not found"));
+    /**
+     * Stores the video of a course level and registers it as the level's content.
+     * Runs on the upload executor so the request thread is released while the video is transferred.
+     * Videos are stored under their content hash; when the same video is already stored it is
+     * referenced again instead of being transferred a second time. The returned content id still
+     * addresses the video, see {@link #resolveVideoKey(String)}.
+     */
+    @Async("videoUploadExecutor")
+    public CompletableFuture<ContentResponseDTO> createContent(Long courseLevelId, MultipartFile file){
+            CourseLevel courseLevel = findLevelWithoutContent(courseLevelId);
 
             try {
-                UUID contentId = UUID.randomUUID();
-                String url = videoService.uploadVideo(contentId.toString(), file);
-                CourseContent courseContent = CourseContent.builder()
-                        .id(contentId)
-                        .courseLevel(courseLevel)
-                        .url(url)
-                        .build();
+                String contentHash = ContentHashUtils.sha256(file);
+                Optional<CourseContent> stored = courseContentRepository.findFirstByContentHash(contentHash);
 
+                String url;
+                if (stored.isPresent()) {
+                    url = stored.get().getUrl();
+                    log.info("Video {} is already stored, referencing it again", contentHash);
+                } else {
+                    url = videoService.uploadVideo(contentHash, file);
+                }
 
-
-                CourseContent savedCourseContent = courseContentRepository.save(courseContent);
-
-                return ContentResponseDTO.builder()
-                        .id(savedCourseContent.getId().toString())
-                        .courseLevelId(savedCourseContent.getCourseLevel().getId())
-                        .url(savedCourseContent.getUrl())
-                        .build();
+                return CompletableFuture.completedFuture(saveContent(UUID.randomUUID(), courseLevel, url, contentHash));
             }catch(IOException err){
                 throw new VideoProcessingError();
             }
@@ -59,4 +69,61 @@ public class CourseContentsService {
 
     }
 
+    /**
+     * Resolves the id a video is requested by to the key it is stored under. Contents uploaded in one
+     * piece are stored under their content hash, so their content id resolves to the hash; any other
+     * id, such as a resumable upload's content id or a hash itself, is the key already.
+     * Only resolved ids are cached, since a content may be saved after its id was first requested.
+     */
+    @Cacheable(cacheNames = CacheConfig.VIDEO_KEY_CACHE, key = "#videoId", unless = "#result == #videoId")
+    public String resolveVideoKey(String videoId) {
+        UUID contentId;
+        try {
+            contentId = UUID.fromString(videoId);
+        } catch (IllegalArgumentException e) {
+            return videoId;
+        }
+        return courseContentRepository.findContentHashById(contentId).orElse(videoId);
+    }
+
+    /**
+     * Finds a course level that does not have content yet.
+     */
+    public CourseLevel findLevelWithoutContent(Long courseLevelId) {
+        Boolean contentExistForLevel = courseContentRepository.existByCourseLevelId(courseLevelId);
+        if(contentExistForLevel) throw new CourseContentExistForLevel();
+        return courseLevelsRepository.findById(courseLevelId).orElseThrow(() -> new CourseLevelNotFoundException("Course level not found"));
+    }
+
+    /**
+     * Registers an already stored video as the content of a course level and queues its HLS packaging.
+     */
+    @Transactional
+    public ContentResponseDTO saveContent(UUID contentId, CourseLevel courseLevel, String url) {
+        return saveContent(contentId, courseLevel, url, null);
+    }
+
+    /**
+     * Registers a video stored under its content hash as the content of a course level and queues its HLS packaging.
+     * The content row and its transcode request are committed together.
+     */
+    @Transactional
+    public ContentResponseDTO saveContent(UUID contentId, CourseLevel courseLevel, String url, String contentHash) {
+        CourseContent courseContent = CourseContent.builder()
+                .id(contentId)
+                .courseLevel(courseLevel)
+                .url(url)
+                .contentHash(contentHash)
+                .build();
+
+        CourseContent savedCourseContent = courseContentRepository.save(courseContent);
+        coursePublisher.videoTranscodePublisher(savedCourseContent.getId().toString());
+
+        return ContentResponseDTO.builder()
+                .id(savedCourseContent.getId().toString())
+                .courseLevelId(savedCourseContent.getCourseLevel().getId())
+                .url(savedCourseContent.getUrl())
+                .build();
+    }
+
 }
@@ -10,6 +10,7 @@ import com.kujacic.courses.repository.CourseRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
@@ -27,6 +28,7 @@ public class CourseLevelsService {
         courseLevelsRepository.save(courseLevel);
     }
 
+    @Transactional
     public void passCourseLevel( Integer courseId, Long levelId, String userId) {
 
        CourseLevel courseLevel =  courseLevelsRepository.findCourseLevelWithCourse(levelId).orElseThrow(() -> new CourseLevelNotFoundException("Could no find this course level"));
@@ -1,13 +1,23 @@
 package com.kujacic.courses.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kujacic.courses.dto.rabbitmq.CourseCertificateIssuedEvent;
 import com.kujacic.courses.dto.rabbitmq.CourseLevelPassEvent;
+import com.kujacic.courses.dto.rabbitmq.VideoTranscodeEvent;
+import com.kujacic.courses.model.OutboxEvent;
+import com.kujacic.courses.repository.OutboxEventRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Service
@@ -15,6 +25,8 @@ import java.util.UUID;
 @Slf4j
 public class CoursePublisher {
     private final RabbitTemplate rabbitTemplate;
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
 
     public void courseCertificatePublisher(CourseCertificateIssuedEvent certificate) {
         String correlationId = UUID.randomUUID().toString();
@@ -32,6 +44,12 @@ public class CoursePublisher {
         }
     }
 
+    /**
+     * Records a level pass event in the outbox within the caller's transaction.
+     * The event reaches the broker through the {@link OutboxRelay}, so it is sent only if the
+     * transaction commits and the request does not wait on the broker.
+     */
+    @Transactional
     public void courseLevelPublisher(Integer courseId, Long levelId, String userId, Integer progress, String courseName) {
         String correlationId = UUID.randomUUID().toString();
         MDC.put("correlationId", correlationId);
@@ -39,14 +57,51 @@ public class CoursePublisher {
         try {
             log.info("Course level passed {}", levelId);
             CourseLevelPassEvent courseLevelPassEvent = CourseLevelPassEvent.builder().courseName(courseName).courseId(courseId).levelId(levelId).userId(userId).progress(progress).build();
-            rabbitTemplate.convertAndSend("course-exchange", "course-level.passed", courseLevelPassEvent, message -> {
-                message.getMessageProperties().setCorrelationId(correlationId);
-                message.getMessageProperties().setHeader("levelId", levelId);
-                return message;
-            });
+            MessageProperties properties = new MessageProperties();
+            properties.setHeader("levelId", levelId);
+            // Consumers partition level events by user
+            properties.setHeader("userId", userId);
+            enqueue("course-exchange", "course-level.passed", correlationId, courseLevelPassEvent, properties);
+        } finally {
+            MDC.clear();
+        }
+
+    }
+
+    /**
+     * Records a transcode request in the outbox within the caller's transaction, so the transcoder
+     * never receives the id of content that is not committed yet, or was rolled back.
+     */
+    @Transactional
+    public void videoTranscodePublisher(String contentId) {
+        String correlationId = UUID.randomUUID().toString();
+        MDC.put("correlationId", correlationId);
+        MDC.put("contentId", contentId);
+        try {
+            log.info("Requesting transcoding of content {}", contentId);
+            VideoTranscodeEvent videoTranscodeEvent = VideoTranscodeEvent.builder().contentId(contentId).build();
+            enqueue("course-exchange", "video-transcode.requested", correlationId, videoTranscodeEvent, new MessageProperties());
         } finally {
             MDC.clear();
         }
+    }
+
+    private void enqueue(String exchange, String routingKey, String correlationId, Object event, MessageProperties properties) {
+        // Converted with the template's converter so the relayed message matches a direct send
+        Message message = rabbitTemplate.getMessageConverter().toMessage(event, properties);
 
+        try {
+            outboxEventRepository.save(OutboxEvent.builder()
+                    .exchange(exchange)
+                    .routingKey(routingKey)
+                    .correlationId(correlationId)
+                    .contentType(properties.getContentType())
+                    .payload(new String(message.getBody(), StandardCharsets.UTF_8))
+                    .headers(objectMapper.writeValueAsString(properties.getHeaders()))
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize headers of " + routingKey + " event", e);
+        }
     }
 }
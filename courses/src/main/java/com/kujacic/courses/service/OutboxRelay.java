@@ -0,0 +1,235 @@
+package com.kujacic.courses.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kujacic.courses.model.OutboxEvent;
+import com.kujacic.courses.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends the events recorded in the outbox to the broker.
+ * A batch is claimed in a short transaction, then published without waiting for individual confirms,
+ * and all confirms are awaited together, so a burst of events goes out at the rate the broker accepts
+ * them. No transaction or row lock is held while the broker is awaited; the claim keeps other relays
+ * away from the batch instead, and is taken over once it is stale. Confirmed events are then removed
+ * from the outbox in a second short transaction; nacked, returned or unconfirmed events stay and are
+ * retried on a later run, which makes delivery at-least-once. An event that fails on its own, for
+ * example because its message cannot be built, only counts an attempt for itself, and after the
+ * maximum number of attempts it is parked so it cannot hold up the events behind it.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private static final TypeReference<Map<String, Object>> HEADERS_TYPE = new TypeReference<>() {
+    };
+
+    // Publishing a batch takes far less than this on top of the confirm wait, so a claim only goes
+    // stale when the relay holding it is gone
+    private static final Duration CLAIM_MARGIN = Duration.ofMinutes(1);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long confirmTimeoutMs;
+    private final int maxAttempts;
+    private final Duration claimTimeout;
+
+    private final Counter published;
+    private final Counter failed;
+    private final Counter parked;
+
+    public OutboxRelay(
+            OutboxEventRepository outboxEventRepository,
+            RabbitTemplate rabbitTemplate,
+            ObjectMapper objectMapper,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${outbox.relay.batch-size:200}") int batchSize,
+            @Value("${outbox.relay.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+            @Value("${outbox.relay.max-attempts:10}") int maxAttempts) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.claimTimeout = Duration.ofMillis(confirmTimeoutMs).plus(CLAIM_MARGIN);
+
+        this.published = Counter.builder("outbox.relay.events").tag("result", "published").register(meterRegistry);
+        this.failed = Counter.builder("outbox.relay.events").tag("result", "failed").register(meterRegistry);
+        this.parked = Counter.builder("outbox.relay.events").tag("result", "parked").register(meterRegistry);
+    }
+
+    /**
+     * Drains the outbox, one batch at a time, until it is empty or a batch fails.
+     */
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:200}")
+    public void relay() {
+        try {
+            while (relayBatch()) {
+                log.debug("Outbox batch relayed, continuing with the next one");
+            }
+        } catch (AmqpException e) {
+            log.warn("Could not relay outbox events, retrying on the next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Claims one batch, publishes it and removes the confirmed events.
+     *
+     * @return true if the batch was full and fully confirmed, so more events may be waiting
+     */
+    boolean relayBatch() {
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> claimBatch());
+        if (batch == null || batch.isEmpty()) {
+            return false;
+        }
+
+        List<OutboxEvent> sent = new ArrayList<>(batch.size());
+        List<CorrelationData> confirms = new ArrayList<>(batch.size());
+        List<OutboxEvent> failedEvents = new ArrayList<>();
+        try {
+            for (OutboxEvent event : batch) {
+                Message message;
+                try {
+                    message = toMessage(event);
+                } catch (RuntimeException e) {
+                    recordFailedAttempt(event, e.getMessage());
+                    failedEvents.add(event);
+                    continue;
+                }
+                // Sending only fails when the broker is unreachable, which aborts the whole batch
+                CorrelationData correlationData = new CorrelationData("outbox-" + event.getId());
+                rabbitTemplate.send(event.getExchange(), event.getRoutingKey(), message, correlationData);
+                sent.add(event);
+                confirms.add(correlationData);
+            }
+        } catch (AmqpException e) {
+            // The batch goes back to the outbox right away instead of waiting for its claim to go stale
+            List<OutboxEvent> unsent = batch.stream().filter(event -> !failedEvents.contains(event)).toList();
+            transactionTemplate.executeWithoutResult(status -> recordOutcome(List.of(), failedEvents, unsent));
+            throw e;
+        }
+
+        List<OutboxEvent> delivered = new ArrayList<>(sent.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (int i = 0; i < sent.size(); i++) {
+            OutboxEvent event = sent.get(i);
+            if (isConfirmed(confirms.get(i), deadline)) {
+                delivered.add(event);
+            } else {
+                recordFailedAttempt(event, "not confirmed by the broker");
+                failedEvents.add(event);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> recordOutcome(delivered, failedEvents, List.of()));
+        published.increment(delivered.size());
+
+        log.info("Relayed {} of {} outbox events", delivered.size(), batch.size());
+        return delivered.size() == batchSize;
+    }
+
+    /**
+     * Locks the next events to relay and claims them for this relay, so other relays skip them
+     * once the locks are released.
+     */
+    private List<OutboxEvent> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> batch = outboxEventRepository.findBatchForRelay(now.minus(claimTimeout), PageRequest.of(0, batchSize));
+        batch.forEach(event -> event.setRelayingSince(now));
+        return batch;
+    }
+
+    /**
+     * Removes the delivered events and stores the attempts of the failed ones. The claims of failed
+     * and unsent events are released, so the next run relays them again.
+     */
+    private void recordOutcome(List<OutboxEvent> delivered, List<OutboxEvent> failedEvents, List<OutboxEvent> unsent) {
+        if (!delivered.isEmpty()) {
+            outboxEventRepository.deleteAllByIdInBatch(ids(delivered));
+        }
+        for (OutboxEvent event : failedEvents) {
+            outboxEventRepository.recordFailedAttempt(event.getId(), event.getAttempts(), event.getParkedAt());
+        }
+        if (!unsent.isEmpty()) {
+            outboxEventRepository.releaseClaims(ids(unsent));
+        }
+    }
+
+    private static List<Long> ids(List<OutboxEvent> events) {
+        return events.stream().map(OutboxEvent::getId).toList();
+    }
+
+    private void recordFailedAttempt(OutboxEvent event, String reason) {
+        event.setAttempts(event.getAttempts() + 1);
+        failed.increment();
+
+        if (event.getAttempts() >= maxAttempts) {
+            event.setParkedAt(LocalDateTime.now());
+            parked.increment();
+            log.error("Outbox event {} ({}) failed {} times and is parked: {}",
+                    event.getId(), event.getRoutingKey(), event.getAttempts(), reason);
+        } else {
+            log.error("Outbox event {} ({}) failed, attempt {}: {}",
+                    event.getId(), event.getRoutingKey(), event.getAttempts(), reason);
+        }
+    }
+
+    private boolean isConfirmed(CorrelationData correlationData, long deadline) {
+        try {
+            CorrelationData.Confirm confirm = correlationData.getFuture()
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            // Returns arrive before the confirm, and an unroutable message is acked anyway
+            return confirm.isAck() && correlationData.getReturned() == null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private Message toMessage(OutboxEvent event) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(event.getContentType());
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setCorrelationId(event.getCorrelationId());
+
+        if (event.getHeaders() != null) {
+            try {
+                objectMapper.readValue(event.getHeaders(), HEADERS_TYPE).forEach(properties::setHeader);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not read headers of outbox event " + event.getId(), e);
+            }
+        }
+        return new Message(event.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
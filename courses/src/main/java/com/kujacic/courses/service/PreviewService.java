@@ -0,0 +1,110 @@
+package com.kujacic.courses.service;
+
+import com.kujacic.courses.utils.PreviewUtils;
+import com.kujacic.courses.utils.ProcessUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generates the visual previews of a video: a poster frame and seek-preview sprite sheets with
+ * their WebVTT index. Runs on the local copy the transcoder already made, so previews cost no
+ * extra transfer from storage, and writes into the package directory stored next to the video.
+ */
+@Service
+@Slf4j
+public class PreviewService {
+
+    private final String ffmpegPath;
+    private final String ffprobePath;
+    private final int intervalSeconds;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int columns;
+    private final int rows;
+
+    public PreviewService(
+            @Value("${video.transcode.ffmpeg-path:ffmpeg}") String ffmpegPath,
+            @Value("${video.preview.ffprobe-path:ffprobe}") String ffprobePath,
+            @Value("${video.preview.interval-seconds:5}") int intervalSeconds,
+            @Value("${video.preview.tile-width:160}") int tileWidth,
+            @Value("${video.preview.tile-height:90}") int tileHeight,
+            @Value("${video.preview.columns:10}") int columns,
+            @Value("${video.preview.rows:10}") int rows) {
+        this.ffmpegPath = ffmpegPath;
+        this.ffprobePath = ffprobePath;
+        this.intervalSeconds = intervalSeconds;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * Writes the poster, sprite sheets and thumbnail track of a video into the preview directory of a package.
+     *
+     * @param source the local copy of the video
+     * @param packageDirectory the package directory stored next to the video
+     * @param deadline when the transcoding job generating the previews must be done
+     * @throws IOException if ffmpeg fails or a file cannot be written
+     * @throws InterruptedException if interrupted while waiting for ffmpeg
+     */
+    public void generate(Path source, Path packageDirectory, Instant deadline) throws IOException, InterruptedException {
+        Path previewDirectory = Files.createDirectories(packageDirectory.resolve(PreviewUtils.DIRECTORY));
+        Path logDirectory = packageDirectory.getParent();
+        double duration = probeDuration(source, logDirectory, deadline);
+
+        // Skip the first seconds, which are often black or a title card
+        double posterTime = Math.min(duration * 0.1, 10);
+        ProcessUtils.run(List.of(
+                ffmpegPath, "-y", "-hide_banner",
+                "-ss", String.format(Locale.ROOT, "%.3f", posterTime),
+                "-i", source.toString(),
+                "-frames:v", "1",
+                "-vf", "scale=-2:720",
+                "-q:v", "3",
+                previewDirectory.resolve(PreviewUtils.POSTER).toString()
+        ), logDirectory.resolve("ffmpeg-poster.log"), deadline, "ffmpeg generating poster");
+
+        // Thumbnails are letterboxed to a fixed tile size so the track can address them by position
+        String tileFilter = String.format(Locale.ROOT,
+                "fps=1/%d,scale=%d:%d:force_original_aspect_ratio=decrease,pad=%d:%d:(ow-iw)/2:(oh-ih)/2,tile=%dx%d",
+                intervalSeconds, tileWidth, tileHeight, tileWidth, tileHeight, columns, rows);
+        ProcessUtils.run(List.of(
+                ffmpegPath, "-y", "-hide_banner",
+                "-i", source.toString(),
+                "-an",
+                "-vf", tileFilter,
+                "-q:v", "5",
+                previewDirectory.resolve(PreviewUtils.SPRITE_PATTERN).toString()
+        ), logDirectory.resolve("ffmpeg-sprites.log"), deadline, "ffmpeg generating sprites");
+
+        Files.writeString(previewDirectory.resolve(PreviewUtils.THUMBNAIL_TRACK),
+                PreviewUtils.thumbnailTrack(duration, intervalSeconds, columns, rows, tileWidth, tileHeight));
+
+        log.info("Generated {} preview thumbnails for {}", PreviewUtils.thumbnailCount(duration, intervalSeconds), source);
+    }
+
+    private double probeDuration(Path source, Path logDirectory, Instant deadline) throws IOException, InterruptedException {
+        Path output = logDirectory.resolve("ffprobe.out");
+        ProcessUtils.run(List.of(
+                ffprobePath, "-v", "error",
+                "-show_entries", "format=duration",
+                "-of", "default=noprint_wrappers=1:nokey=1",
+                source.toString()
+        ), output, deadline, "ffprobe of duration");
+
+        try {
+            return Double.parseDouble(Files.readString(output).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("ffprobe reported no duration for " + source);
+        }
+    }
+}
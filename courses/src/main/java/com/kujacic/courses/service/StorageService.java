@@ -1,10 +1,15 @@
 package com.kujacic.courses.service;
 
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.model.UploadSession;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 
 public interface StorageService {
 
@@ -26,12 +31,86 @@ public interface StorageService {
      */
     ResponseEntity<Resource> download(String videoId);
 
+    /**
+     * Retrieves the metadata of a video, including the validators (ETag and last modification time)
+     * used for conditional and cacheable responses.
+     *
+     * @param videoId the unique identifier of the video
+     * @return the metadata of the video
+     * @throws com.kujacic.courses.exception.ResourceNotFoundException if the video does not exist
+     */
+    VideoMetadata getVideoMetadata(String videoId);
+
     /**
      * Streams a video with support for range requests (partial content).
      *
      * @param videoId the unique identifier of the video to stream
      * @param rangeHeader the HTTP Range header value for partial content requests (can be null)
-     * @return ResponseEntity containing the video bytes and appropriate headers for streaming
+     * @return ResponseEntity containing a body that writes the requested bytes and appropriate headers for streaming
+     */
+    ResponseEntity<StreamingResponseBody> streamVideo(String videoId, String rangeHeader);
+
+    /**
+     * Prepares the destination of a resumable upload.
+     *
+     * @param session the upload session being started
+     * @return a storage specific identifier of the upload, kept on the session
+     * @throws IOException if the destination cannot be prepared
+     */
+    String initUpload(UploadSession session) throws IOException;
+
+    /**
+     * Streams the next chunk of a resumable upload directly to its destination.
+     * The chunk is written at the session's current uploaded size and becomes part number partCount + 1.
+     *
+     * @param session the upload session receiving the chunk
+     * @param chunk the chunk data
+     * @param length the exact length of the chunk in bytes
+     * @throws IOException if the chunk cannot be written completely
+     */
+    void appendChunk(UploadSession session, InputStream chunk, long length) throws IOException;
+
+    /**
+     * Finalizes a resumable upload once all chunks have been received.
+     *
+     * @param session the completed upload session
+     * @return the URL of the stored video
+     * @throws IOException if the upload cannot be finalized
+     */
+    String completeUpload(UploadSession session) throws IOException;
+
+    /**
+     * Discards everything written for an unfinished resumable upload.
+     *
+     * @param session the upload session to abort
+     */
+    void abortUpload(UploadSession session);
+
+    /**
+     * Opens the original upload of a video for reading, e.g. as transcoding input.
+     *
+     * @param videoId the unique identifier of the video
+     * @return a stream over the stored video, to be closed by the caller
+     * @throws IOException if the video cannot be opened
+     */
+    InputStream openVideo(String videoId) throws IOException;
+
+    /**
+     * Stores a generated HLS package (master playlist, rendition playlists and segments) next to the video.
+     *
+     * @param videoId the unique identifier of the video
+     * @param packageDirectory the local directory holding the package
+     * @return the URL of the master playlist
+     * @throws IOException if a file of the package cannot be stored
+     */
+    String storeHlsPackage(String videoId, Path packageDirectory) throws IOException;
+
+    /**
+     * Serves one playlist or segment of a video's HLS package.
+     *
+     * @param videoId the unique identifier of the video
+     * @param path the path of the file inside the package
+     * @return ResponseEntity containing the file and cache headers
      */
-    ResponseEntity<byte[]> streamVideo(String videoId, String rangeHeader);
+    ResponseEntity<Resource> getHlsFile(String videoId, String path);
 }
@@ -0,0 +1,202 @@
+package com.kujacic.courses.service;
+
+import com.kujacic.courses.enums.TranscodingStatus;
+import com.kujacic.courses.model.CourseContent;
+import com.kujacic.courses.repository.CourseContentRepository;
+import com.kujacic.courses.utils.HlsUtils;
+import com.kujacic.courses.utils.PreviewUtils;
+import com.kujacic.courses.utils.ProcessUtils;
+import com.kujacic.courses.utils.TranscodingUtils;
+import com.kujacic.courses.utils.TranscodingUtils.EncodedRendition;
+import com.kujacic.courses.utils.TranscodingUtils.Rendition;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Packages uploaded videos as adaptive bitrate HLS.
+ * Every configured rendition is encoded by a local ffmpeg process into short segments with
+ * its own playlist, and a master playlist referencing all renditions is stored next to the video.
+ * Each rendition is probed after encoding, so the master playlist advertises the frame size and
+ * codecs it actually contains.
+ * The package also carries the video's poster and seek-preview thumbnails.
+ */
+@Service
+@Slf4j
+public class TranscodingService {
+
+    private final CourseContentRepository courseContentRepository;
+    private final StorageService videoService;
+    private final PreviewService previewService;
+    private final String ffmpegPath;
+    private final String ffprobePath;
+    private final List<Rendition> renditions;
+    private final int segmentSeconds;
+    private final Duration timeout;
+    private final Path workPath;
+
+    public TranscodingService(
+            CourseContentRepository courseContentRepository,
+            StorageService videoService,
+            PreviewService previewService,
+            @Value("${video.transcode.ffmpeg-path:ffmpeg}") String ffmpegPath,
+            @Value("${video.preview.ffprobe-path:ffprobe}") String ffprobePath,
+            @Value("${video.transcode.renditions:360:800,720:2800,1080:5000}") String renditions,
+            @Value("${video.transcode.segment-seconds:4}") int segmentSeconds,
+            @Value("${video.transcode.timeout-minutes:60}") long timeoutMinutes,
+            @Value("${video.transcode.work-path:${java.io.tmpdir}}") String workPath) {
+        this.courseContentRepository = courseContentRepository;
+        this.videoService = videoService;
+        this.previewService = previewService;
+        this.ffmpegPath = ffmpegPath;
+        this.ffprobePath = ffprobePath;
+        this.renditions = TranscodingUtils.parseRenditions(renditions);
+        this.segmentSeconds = segmentSeconds;
+        this.timeout = Duration.ofMinutes(timeoutMinutes);
+        this.workPath = Paths.get(workPath);
+    }
+
+    public void transcode(UUID contentId) {
+        Optional<CourseContent> foundContent = courseContentRepository.findById(contentId);
+        if (foundContent.isEmpty()) {
+            log.warn("Content {} no longer exists, skipping transcoding", contentId);
+            return;
+        }
+
+        CourseContent content = foundContent.get();
+        if (content.getTranscodingStatus() == TranscodingStatus.READY) {
+            log.info("Content {} is already transcoded", contentId);
+            return;
+        }
+
+        // Contents sharing a stored video share its HLS package as well
+        String videoId = content.getContentHash() != null ? content.getContentHash() : contentId.toString();
+        if (content.getContentHash() != null) {
+            Optional<CourseContent> transcoded = courseContentRepository
+                    .findFirstByContentHashAndTranscodingStatus(content.getContentHash(), TranscodingStatus.READY);
+            if (transcoded.isPresent()) {
+                content.setHlsUrl(transcoded.get().getHlsUrl());
+                content.setPosterUrl(transcoded.get().getPosterUrl());
+                content.setThumbnailTrackUrl(transcoded.get().getThumbnailTrackUrl());
+                content.setTranscodingStatus(TranscodingStatus.READY);
+                courseContentRepository.save(content);
+                log.info("Content {} reuses the HLS package of video {}", contentId, videoId);
+                return;
+            }
+        }
+
+        content.setTranscodingStatus(TranscodingStatus.PROCESSING);
+        courseContentRepository.save(content);
+
+        // Bounds the whole job, which holds its message unacknowledged until it is done
+        Instant deadline = Instant.now().plus(timeout);
+        Path workDirectory = null;
+        try {
+            Files.createDirectories(workPath);
+            workDirectory = Files.createTempDirectory(workPath, "transcode-" + contentId + "-");
+
+            Path source = workDirectory.resolve("source");
+            try (InputStream video = videoService.openVideo(videoId)) {
+                Files.copy(video, source, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Path packageDirectory = Files.createDirectory(workDirectory.resolve("hls"));
+            List<EncodedRendition> encoded = new ArrayList<>(renditions.size());
+            for (Rendition rendition : renditions) {
+                encoded.add(encodeRendition(source, packageDirectory, rendition, deadline));
+            }
+            Files.writeString(packageDirectory.resolve(HlsUtils.MASTER_PLAYLIST), TranscodingUtils.masterPlaylist(encoded));
+            boolean previews = generatePreviews(contentId, source, packageDirectory, deadline);
+
+            String hlsUrl = videoService.storeHlsPackage(videoId, packageDirectory);
+            content.setHlsUrl(hlsUrl);
+            if (previews) {
+                // Preview files are stored inside the package, next to the master playlist
+                String previewBase = hlsUrl.substring(0, hlsUrl.length() - HlsUtils.MASTER_PLAYLIST.length()) + PreviewUtils.DIRECTORY + "/";
+                content.setPosterUrl(previewBase + PreviewUtils.POSTER);
+                content.setThumbnailTrackUrl(previewBase + PreviewUtils.THUMBNAIL_TRACK);
+            }
+            content.setTranscodingStatus(TranscodingStatus.READY);
+            courseContentRepository.save(content);
+
+            log.info("Content {} transcoded into {} renditions", contentId, renditions.size());
+
+        } catch (IOException e) {
+            log.error("Transcoding of content {} failed: {}", contentId, e.getMessage(), e);
+            markFailed(content);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Transcoding of content {} was interrupted", contentId);
+            markFailed(content);
+        } catch (RuntimeException e) {
+            // Storage errors are unchecked; marking the content failed acknowledges the event, so the
+            // whole ladder is not encoded again by the listener's retries
+            log.error("Transcoding of content {} failed: {}", contentId, e.getMessage(), e);
+            markFailed(content);
+        } finally {
+            deleteDirectory(workDirectory);
+        }
+    }
+
+    /**
+     * Previews are optional, a video whose previews cannot be generated is still published without them.
+     */
+    private boolean generatePreviews(UUID contentId, Path source, Path packageDirectory, Instant deadline) throws InterruptedException {
+        try {
+            previewService.generate(source, packageDirectory, deadline);
+            return true;
+        } catch (IOException e) {
+            log.warn("Preview generation of content {} failed: {}", contentId, e.getMessage());
+            deleteDirectory(packageDirectory.resolve(PreviewUtils.DIRECTORY));
+            return false;
+        }
+    }
+
+    private EncodedRendition encodeRendition(Path source, Path packageDirectory, Rendition rendition, Instant deadline) throws IOException, InterruptedException {
+        Path renditionDirectory = Files.createDirectory(packageDirectory.resolve(rendition.name()));
+        Path logDirectory = packageDirectory.getParent();
+
+        ProcessUtils.run(TranscodingUtils.renditionCommand(ffmpegPath, source, renditionDirectory, rendition, segmentSeconds),
+                logDirectory.resolve("ffmpeg-" + rendition.name() + ".log"), deadline, "ffmpeg encoding rendition " + rendition.name());
+
+        Path probeOutput = logDirectory.resolve("ffprobe-" + rendition.name() + ".out");
+        ProcessUtils.run(TranscodingUtils.probeCommand(ffprobePath, renditionDirectory.resolve(TranscodingUtils.FIRST_SEGMENT)),
+                probeOutput, deadline, "ffprobe of rendition " + rendition.name());
+        try {
+            return TranscodingUtils.parseProbe(rendition, Files.readString(probeOutput));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("ffprobe found no video in rendition " + rendition.name(), e);
+        }
+    }
+
+    private void markFailed(CourseContent content) {
+        content.setTranscodingStatus(TranscodingStatus.FAILED);
+        courseContentRepository.save(content);
+    }
+
+    private void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Failed to clean up transcoding directory {}: {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.kujacic.courses.service;
+
+import com.kujacic.courses.model.UploadSession;
+import com.kujacic.courses.repository.UploadSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Removes resumable uploads that were never completed or aborted.
+ * An upload expires once no chunk arrived for the session TTL, so a long upload that is still
+ * progressing is kept.
+ * Their stored parts are aborted, which discards the S3 multipart upload or deletes the local part
+ * file, and the sessions are deleted.
+ * Expired sessions are locked only to mark them as being aborted; the storage is called after that
+ * transaction committed, and the sessions are deleted in a second one.
+ */
+@Component
+@Slf4j
+public class UploadSessionCleaner {
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final StorageService videoService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration sessionTtl;
+    private final int batchSize;
+
+    public UploadSessionCleaner(
+            UploadSessionRepository uploadSessionRepository,
+            StorageService videoService,
+            TransactionTemplate transactionTemplate,
+            @Value("${video.upload.session-ttl-hours:24}") long sessionTtlHours,
+            @Value("${video.upload.cleanup-batch-size:100}") int batchSize) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.videoService = videoService;
+        this.transactionTemplate = transactionTemplate;
+        this.sessionTtl = Duration.ofHours(sessionTtlHours);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Aborts one batch of expired uploads. Sessions a request is working on right now are skipped
+     * and picked up by a later run.
+     */
+    @Scheduled(fixedDelayString = "${video.upload.cleanup-interval-ms:600000}")
+    public void abortExpiredUploads() {
+        List<UploadSession> expired = transactionTemplate.execute(status -> claimExpired());
+        if (expired == null || expired.isEmpty()) {
+            return;
+        }
+
+        List<UUID> aborted = new ArrayList<>(expired.size());
+        List<UUID> failed = new ArrayList<>();
+        for (UploadSession session : expired) {
+            try {
+                videoService.abortUpload(session);
+                aborted.add(session.getId());
+            } catch (RuntimeException e) {
+                // Released, so the next run tries again
+                log.warn("Could not abort expired upload {}: {}", session.getId(), e.getMessage());
+                failed.add(session.getId());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!aborted.isEmpty()) {
+                uploadSessionRepository.deleteAllByIdInBatch(aborted);
+            }
+            if (!failed.isEmpty()) {
+                uploadSessionRepository.releaseFinalization(failed);
+            }
+        });
+
+        log.info("Aborted {} of {} expired uploads", aborted.size(), expired.size());
+    }
+
+    private List<UploadSession> claimExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        List<UploadSession> expired = uploadSessionRepository.findExpiredForCleanup(
+                now.minus(sessionTtl), now.minus(ContentUploadService.FINALIZATION_TIMEOUT), PageRequest.of(0, batchSize));
+        expired.forEach(session -> session.setFinalizingSince(now));
+        return expired;
+    }
+}
@@ -0,0 +1,117 @@
+package com.kujacic.courses.service;
+
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.service.impl.EgressShaper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Serves videos as cacheable GET responses.
+ * Every response carries a strong ETag and Last-Modified taken from the stored video, so the
+ * viewer's browser can reuse full and partial responses and revalidate them with
+ * If-None-Match / If-Modified-Since. If-Range makes a range request fall back to the full video
+ * when the cached validator no longer matches. Response bodies are written within the viewer's
+ * and the node's egress limits.
+ */
+@Service
+@RequiredArgsConstructor
+public class VideoStreamService {
+
+    // Content ids are never reused for a different video, so responses can be cached for long.
+    // The endpoint requires a JWT, so only the viewer's own cache may keep them, never a shared one
+    private static final CacheControl VIDEO_CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(1)).cachePrivate();
+
+    private final StorageService videoService;
+    private final EgressShaper egressShaper;
+
+    public ResponseEntity<StreamingResponseBody> streamVideo(String videoId, HttpHeaders requestHeaders, String viewerId) {
+        VideoMetadata metadata = videoService.getVideoMetadata(videoId);
+        String etag = quote(metadata.getEtag());
+
+        if (isNotModified(requestHeaders, etag, metadata)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .lastModified(metadata.getLastModified())
+                    .cacheControl(VIDEO_CACHE_CONTROL)
+                    .build();
+        }
+
+        String rangeHeader = requestHeaders.getFirst(HttpHeaders.RANGE);
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && ifRange != null && !ifRangeMatches(ifRange, etag, metadata)) {
+            rangeHeader = null;
+        }
+
+        ResponseEntity<StreamingResponseBody> response = videoService.streamVideo(videoId, rangeHeader);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(etag)
+                .lastModified(metadata.getLastModified())
+                .cacheControl(VIDEO_CACHE_CONTROL)
+                .body(egressShaper.shape(response.getBody(), viewerId));
+    }
+
+    /**
+     * Streams the given range of a video without conditional request handling.
+     */
+    public ResponseEntity<StreamingResponseBody> streamRange(String videoId, String rangeHeader, String viewerId) {
+        ResponseEntity<StreamingResponseBody> response = videoService.streamVideo(videoId, rangeHeader);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .body(egressShaper.shape(response.getBody(), viewerId));
+    }
+
+    private boolean isNotModified(HttpHeaders requestHeaders, String etag, VideoMetadata metadata) {
+        if (!requestHeaders.getIfNoneMatch().isEmpty()) {
+            // If-None-Match uses the weak comparison and takes precedence over If-Modified-Since
+            return requestHeaders.getIfNoneMatch().stream()
+                    .anyMatch(candidate -> candidate.equals("*") || stripWeak(candidate).equals(etag));
+        }
+
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince != -1
+                && metadata.getLastModified().getEpochSecond() <= ifModifiedSince / 1000;
+    }
+
+    private boolean ifRangeMatches(String ifRange, String etag, VideoMetadata metadata) {
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return metadata.getLastModified().getEpochSecond() == date;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String quote(String etag) {
+        return etag.startsWith("\"") ? etag : "\"" + etag + "\"";
+    }
+}
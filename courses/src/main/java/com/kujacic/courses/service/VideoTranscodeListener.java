@@ -0,0 +1,36 @@
+package com.kujacic.courses.service;
+
+import com.kujacic.courses.dto.rabbitmq.VideoTranscodeEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class VideoTranscodeListener {
+    private final TranscodingService transcodingService;
+
+    @RabbitListener(
+            queues = "video-transcode-queue",
+            containerFactory = "transcodeListenerContainerFactory",
+            concurrency = "${video.transcode.workers:2}"
+    )
+    public void handleVideoTranscodeEvent(VideoTranscodeEvent videoTranscodeEvent,
+                                          @Header(value = AmqpHeaders.CORRELATION_ID, required = false) String correlationId) {
+        MDC.put("correlationId", correlationId);
+        MDC.put("contentId", videoTranscodeEvent.getContentId());
+        try {
+            log.info("Transcoding content {}", videoTranscodeEvent.getContentId());
+            transcodingService.transcode(UUID.fromString(videoTranscodeEvent.getContentId()));
+        } finally {
+            MDC.clear();
+        }
+    }
+}
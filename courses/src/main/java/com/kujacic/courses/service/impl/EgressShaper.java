@@ -0,0 +1,131 @@
+package com.kujacic.courses.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+
+/**
+ * Bandwidth shaping of video responses.
+ * Every response is written in small quanta, and each quantum first waits for the viewer's token
+ * bucket and then for the node-wide one. Buckets hand out time slots in the order they are reserved,
+ * so viewers competing for the global limit take turns quantum by quantum instead of one client
+ * fetching large ranges back to back starving the others, and a viewer opening many connections
+ * still shares a single per-viewer limit. A limit of 0 disables that bucket.
+ */
+@Component
+public class EgressShaper {
+
+    private static final int QUANTUM = 64 * 1024;
+
+    private final long viewerBytesPerSecond;
+    private final long burstSeconds;
+    private final TokenBucket globalBucket;
+
+    // Buckets of viewers that streamed recently; an idle viewer starts over with a full burst
+    private final Cache<String, TokenBucket> viewerBuckets = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+
+    private final Counter throttledSeconds;
+
+    public EgressShaper(
+            MeterRegistry meterRegistry,
+            @Value("${video.egress.global-limit-mbps:0}") long globalLimitMbps,
+            @Value("${video.egress.viewer-limit-mbps:0}") long viewerLimitMbps,
+            @Value("${video.egress.burst-seconds:2}") long burstSeconds) {
+        this.viewerBytesPerSecond = toBytesPerSecond(viewerLimitMbps);
+        this.burstSeconds = burstSeconds;
+
+        long globalBytesPerSecond = toBytesPerSecond(globalLimitMbps);
+        this.globalBucket = globalBytesPerSecond > 0
+                ? new TokenBucket(globalBytesPerSecond, globalBytesPerSecond * burstSeconds, System::nanoTime)
+                : null;
+
+        this.throttledSeconds = Counter.builder("video.egress.throttled")
+                .baseUnit("seconds")
+                .description("Time video responses waited for egress bandwidth")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wraps a response body so it is written within the viewer's and the node's bandwidth limits.
+     *
+     * @param body the response body
+     * @param viewerId the viewer the response is sent to
+     * @return the shaped body, or the body itself when no limit is configured
+     */
+    public StreamingResponseBody shape(StreamingResponseBody body, String viewerId) {
+        TokenBucket viewerBucket = viewerBytesPerSecond > 0
+                ? viewerBuckets.get(viewerId == null ? "anonymous" : viewerId,
+                        key -> new TokenBucket(viewerBytesPerSecond, viewerBytesPerSecond * burstSeconds, System::nanoTime))
+                : null;
+
+        if (body == null || (viewerBucket == null && globalBucket == null)) {
+            return body;
+        }
+        return outputStream -> body.writeTo(new ShapedOutputStream(outputStream, viewerBucket));
+    }
+
+    private static long toBytesPerSecond(long mbps) {
+        return mbps * 1_000_000 / 8;
+    }
+
+    private final class ShapedOutputStream extends FilterOutputStream {
+
+        private final TokenBucket viewerBucket;
+
+        private ShapedOutputStream(OutputStream outputStream, TokenBucket viewerBucket) {
+            super(outputStream);
+            this.viewerBucket = viewerBucket;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            int position = offset;
+            int end = offset + length;
+
+            while (position < end) {
+                int quantum = Math.min(QUANTUM, end - position);
+                await(viewerBucket, quantum);
+                await(globalBucket, quantum);
+                out.write(buffer, position, quantum);
+                position += quantum;
+            }
+        }
+
+        private void await(TokenBucket bucket, int bytes) throws IOException {
+            if (bucket == null) {
+                return;
+            }
+
+            long waitNanos = bucket.reserve(bytes);
+            if (waitNanos <= 0) {
+                return;
+            }
+
+            throttledSeconds.increment(waitNanos / 1_000_000_000d);
+            try {
+                Thread.sleep(Duration.ofNanos(waitNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for egress bandwidth");
+            }
+        }
+    }
+}
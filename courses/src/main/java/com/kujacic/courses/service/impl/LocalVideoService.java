@@ -1,6 +1,15 @@
 package com.kujacic.courses.service.impl;
 
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.exception.InvalidUploadException;
+import com.kujacic.courses.exception.InvalidVideoException;
+import com.kujacic.courses.exception.ResourceNotFoundException;
+import com.kujacic.courses.model.UploadSession;
 import com.kujacic.courses.service.StorageService;
+import com.kujacic.courses.utils.ByteRangeUtils;
+import com.kujacic.courses.utils.FaststartUtils;
+import com.kujacic.courses.utils.HlsUtils;
+import com.kujacic.courses.utils.VideoContainerUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
@@ -11,15 +20,27 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -28,11 +49,15 @@ public class LocalVideoService implements StorageService {
     @Value("${video.storage.path:./videos}")
     private String videoStoragePath;
 
+    // Copies of videos promoted to the hot tier are kept apart from the videos uploaded to this storage
+    @Value("${video.tiering.hot-path:${video.storage.path:./videos}/hot}")
+    private String hotCopyPath;
+
     @Value("${video.upload.max-file-size-mb}")
     private long maxFileSizeMb;
 
     @Value("${video.upload.allowed-extensions}")
-    private String allowedExtensions;
+    private Set<String> allowedExtensions;
 
     /**
      * Uploads a video file to the local filesystem.
@@ -60,15 +85,20 @@ public class LocalVideoService implements StorageService {
         String uniqueFileName = contentId + "." + fileExtension;
         Path destinationPath = storagePath.resolve(uniqueFileName);
 
-        try {
-            // Copy file to destination
-            Files.copy(file.getInputStream(), destinationPath, StandardCopyOption.REPLACE_EXISTING);
+        // The content is sniffed before anything is written, and the copy fails once it exceeds the size limit
+        try (InputStream validated = VideoContainerUtils.validate(file.getInputStream(), fileExtension, maxFileSizeMb * 1024 * 1024);
+             InputStream inputStream = FaststartUtils.faststart(file, validated, fileExtension)) {
+            // Copy file to destination, with the moov box of mp4s moved in front of the media data
+            Files.copy(inputStream, destinationPath, StandardCopyOption.REPLACE_EXISTING);
 
             log.info("Successfully uploaded video: {} to local storage: {}", uniqueFileName, destinationPath);
 
             // Return the file path
             return destinationPath.toString();
 
+        } catch (InvalidVideoException e) {
+            Files.deleteIfExists(destinationPath);
+            throw e;
         } catch (IOException e) {
             log.error("Failed to upload video to local storage: {}", e.getMessage(), e);
             throw new IOException("Failed to upload video to local storage: " + e.getMessage());
@@ -83,8 +113,11 @@ public class LocalVideoService implements StorageService {
      */
     @Override
     public ResponseEntity<Resource> download(String videoId) {
+        return download(Paths.get(videoStoragePath, videoId + ".mp4"));
+    }
+
+    private ResponseEntity<Resource> download(Path videoPath) {
         try {
-            Path videoPath = Paths.get(videoStoragePath, videoId + ".mp4");
             File videoFile = videoPath.toFile();
 
             if (!videoFile.exists()) {
@@ -112,43 +145,84 @@ public class LocalVideoService implements StorageService {
     }
 
     /**
-     * Streams the full video without range support.
-     * Returns the complete video file in a single response.
+     * Retrieves the metadata of a video file, deriving a strong ETag from its size and modification time.
      *
-     * @param videoId the unique identifier of the video to stream
-     * @param rangeHeader the HTTP Range header value (ignored in this implementation)
-     * @return ResponseEntity containing the complete video bytes
+     * @param videoId the unique identifier of the video
+     * @return the metadata of the video
+     * @throws ResourceNotFoundException if the video does not exist
      */
     @Override
-    public ResponseEntity<byte[]> streamVideo(String videoId, String rangeHeader) {
+    public VideoMetadata getVideoMetadata(String videoId) {
+        Path videoPath = Paths.get(videoStoragePath, videoId + ".mp4");
+
         try {
-            Path videoPath = Paths.get(videoStoragePath, videoId + ".mp4");
-            File videoFile = videoPath.toFile();
+            long fileSize = Files.size(videoPath);
+            Instant lastModified = Files.getLastModifiedTime(videoPath).toInstant();
+            String contentType = Files.probeContentType(videoPath);
 
-            if (!videoFile.exists()) {
+            return VideoMetadata.builder()
+                    .contentLength(fileSize)
+                    .contentType(contentType == null ? "video/mp4" : contentType)
+                    .fileName(videoPath.getFileName().toString())
+                    .etag(Long.toHexString(fileSize) + "-" + Long.toHexString(lastModified.toEpochMilli()))
+                    .lastModified(lastModified)
+                    .build();
+
+        } catch (NoSuchFileException e) {
+            throw new ResourceNotFoundException("Video not found: " + videoId);
+        } catch (IOException e) {
+            log.error("Error fetching video metadata: {}", e.getMessage(), e);
+            throw new RuntimeException("Error fetching video metadata: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams a video from the local filesystem with support for single, suffix, open-ended
+     * and multi-range requests. The requested bytes are transferred straight from a FileChannel
+     * to the response, so the file is never buffered on the heap regardless of its size.
+     *
+     * @param videoId the unique identifier of the video to stream
+     * @param rangeHeader the HTTP Range header value for partial content requests (can be null)
+     * @return ResponseEntity containing a body that transfers the requested byte range
+     */
+    @Override
+    public ResponseEntity<StreamingResponseBody> streamVideo(String videoId, String rangeHeader) {
+        return streamVideo(Paths.get(videoStoragePath, videoId + ".mp4"), rangeHeader);
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamVideo(Path videoPath, String rangeHeader) {
+        try {
+            if (!Files.isRegularFile(videoPath)) {
                 log.warn("Video not found: {}", videoPath);
                 return ResponseEntity.notFound().build();
             }
 
-            // Read the entire file into memory
-            byte[] videoBytes = Files.readAllBytes(videoPath);
-
+            long fileSize = Files.size(videoPath);
             String contentType = Files.probeContentType(videoPath);
             if (contentType == null) {
                 contentType = "video/mp4";
             }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(contentType));
-            headers.setContentLength(videoBytes.length);
-            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (rangeHeader == null || !ByteRangeUtils.isWellFormed(rangeHeader)) {
+                if (rangeHeader != null) {
+                    log.warn("Ignoring malformed range header {} of {}", rangeHeader, videoPath);
+                }
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.parseMediaType(contentType));
+                headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+                headers.setContentLength(fileSize);
+                log.info("Streaming full video: {} (size: {} bytes)", videoPath, fileSize);
+
+                return ResponseEntity
+                        .ok()
+                        .headers(headers)
+                        .body(outputStream -> transferRegion(videoPath, outputStream, 0, fileSize));
+            }
 
-            log.info("Streaming full video: {} (size: {} bytes)", videoId, videoBytes.length);
+            log.info("Sending video ranges {} of {} ({} bytes)", rangeHeader, videoPath, fileSize);
 
-            return ResponseEntity
-                    .ok()
-                    .headers(headers)
-                    .body(videoBytes);
+            return ByteRangeUtils.partialContent(rangeHeader, fileSize, contentType,
+                    (outputStream, range) -> transferRegion(videoPath, outputStream, range.start(), range.length()));
 
         } catch (Exception e) {
             log.error("Error streaming video: {}", e.getMessage(), e);
@@ -156,39 +230,316 @@ public class LocalVideoService implements StorageService {
         }
     }
 
+    /**
+     * Copies a region of a file to the response using FileChannel.transferTo,
+     * letting the OS move the bytes without a heap copy of the file.
+     *
+     * @param videoPath the path of the video file
+     * @param outputStream the response stream
+     * @param position the offset of the first byte to transfer
+     * @param count the number of bytes to transfer
+     * @throws IOException if reading the file or writing the response fails
+     */
+    private void transferRegion(Path videoPath, OutputStream outputStream, long position, long count) throws IOException {
+        try (FileChannel channel = FileChannel.open(videoPath, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long offset = position;
+            long remaining = count;
+
+            while (remaining > 0) {
+                long transferred = channel.transferTo(offset, remaining, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                offset += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    /**
+     * Creates an empty part file that collects the chunks of a resumable upload.
+     *
+     * @param session the upload session being started
+     * @return the path of the part file
+     * @throws IOException if the part file cannot be created
+     */
+    @Override
+    public String initUpload(UploadSession session) throws IOException {
+        Path uploadsPath = Paths.get(videoStoragePath, "uploads");
+        Files.createDirectories(uploadsPath);
+
+        Path partFile = uploadsPath.resolve(session.getId() + ".part");
+        Files.deleteIfExists(partFile);
+        Files.createFile(partFile);
+
+        log.info("Started resumable upload {} at {}", session.getId(), partFile);
+        return partFile.toString();
+    }
+
+    /**
+     * Writes a chunk into the part file at the session's uploaded size, transferring it
+     * from the request stream straight into the file channel.
+     *
+     * @param session the upload session receiving the chunk
+     * @param chunk the chunk data
+     * @param length the exact length of the chunk in bytes
+     * @throws IOException if the chunk cannot be written completely
+     */
+    @Override
+    public void appendChunk(UploadSession session, InputStream chunk, long length) throws IOException {
+        Path partFile = Paths.get(session.getStorageUploadId());
+        long offset = session.getUploadedBytes();
+
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.WRITE)) {
+            // Drop whatever a previously interrupted chunk left behind the committed offset
+            channel.truncate(offset);
+
+            ReadableByteChannel source = Channels.newChannel(chunk);
+            long position = offset;
+            long remaining = length;
+
+            while (remaining > 0) {
+                long transferred = channel.transferFrom(source, position, remaining);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+
+            if (remaining > 0) {
+                channel.truncate(offset);
+                throw new IOException(String.format("Chunk ended after %d of %d bytes", length - remaining, length));
+            }
+        }
+    }
+
+    /**
+     * Moves the completed part file to its final location. An mp4 whose moov box trails the
+     * media data is copied in faststart layout instead and the part file is deleted.
+     *
+     * @param session the completed upload session
+     * @return the local file path of the uploaded video
+     * @throws IOException if the part file cannot be moved
+     */
+    @Override
+    public String completeUpload(UploadSession session) throws IOException {
+        Path partFile = Paths.get(session.getStorageUploadId());
+        String fileExtension = getFileExtension(session.getFileName());
+        Path destinationPath = Paths.get(videoStoragePath, session.getId() + "." + fileExtension);
+
+        boolean rewritten;
+        try (InputStream original = Files.newInputStream(partFile);
+             InputStream faststart = FaststartUtils.faststart(new FileSystemResource(partFile), original, fileExtension)) {
+            rewritten = faststart != original;
+            if (rewritten) {
+                Files.copy(faststart, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        if (rewritten) {
+            Files.delete(partFile);
+        } else {
+            Files.move(partFile, destinationPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        log.info("Completed resumable upload {} to local storage: {}", session.getId(), destinationPath);
+        return destinationPath.toString();
+    }
+
+    /**
+     * Deletes the part file of an unfinished resumable upload.
+     *
+     * @param session the upload session to abort
+     */
+    @Override
+    public void abortUpload(UploadSession session) {
+        try {
+            Files.deleteIfExists(Paths.get(session.getStorageUploadId()));
+        } catch (IOException e) {
+            log.warn("Failed to delete part file of upload {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the stored video file for reading.
+     *
+     * @param videoId the unique identifier of the video
+     * @return a stream over the video file
+     * @throws IOException if the video cannot be opened
+     */
+    @Override
+    public InputStream openVideo(String videoId) throws IOException {
+        return Files.newInputStream(Paths.get(videoStoragePath, videoId + ".mp4"));
+    }
+
+    /**
+     * Downloads the hot tier copy of a video.
+     *
+     * @param videoId the unique identifier of the video
+     * @return ResponseEntity containing the copy and appropriate headers
+     */
+    public ResponseEntity<Resource> downloadCopy(String videoId) {
+        return download(Paths.get(hotCopyPath, videoId + ".mp4"));
+    }
+
+    /**
+     * Streams the hot tier copy of a video, with the same range support as {@link #streamVideo(String, String)}.
+     *
+     * @param videoId the unique identifier of the video
+     * @param rangeHeader the HTTP Range header value for partial content requests (can be null)
+     * @return ResponseEntity containing a body that transfers the requested byte range
+     */
+    public ResponseEntity<StreamingResponseBody> streamCopy(String videoId, String rangeHeader) {
+        return streamVideo(Paths.get(hotCopyPath, videoId + ".mp4"), rangeHeader);
+    }
+
+    /**
+     * Opens the hot tier copy of a video for reading.
+     *
+     * @param videoId the unique identifier of the video
+     * @return a stream over the copy
+     * @throws IOException if the copy cannot be opened
+     */
+    public InputStream openCopy(String videoId) throws IOException {
+        return Files.newInputStream(Paths.get(hotCopyPath, videoId + ".mp4"));
+    }
+
+    /**
+     * Stores a hot tier copy of a video kept in another storage, when it is promoted to this tier.
+     * The video is written to a temporary file first, so readers never see a partial copy.
+     *
+     * @param videoId the unique identifier of the video
+     * @param video the video data
+     * @return the size of the stored copy in bytes
+     * @throws IOException if the copy cannot be written
+     */
+    public long storeCopy(String videoId, InputStream video) throws IOException {
+        Path copyPath = Paths.get(hotCopyPath);
+        Files.createDirectories(copyPath);
+
+        Path temporary = Files.createTempFile(copyPath, videoId + "-", ".tmp");
+        try {
+            long size = Files.copy(video, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, copyPath.resolve(videoId + ".mp4"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Deletes the hot tier copy of a video. Videos uploaded to this storage are never touched.
+     *
+     * @param videoId the unique identifier of the video
+     * @throws IOException if the copy cannot be deleted
+     */
+    public void deleteCopy(String videoId) throws IOException {
+        Files.deleteIfExists(Paths.get(hotCopyPath, videoId + ".mp4"));
+    }
+
+    /**
+     * Lists the hot tier copies, leaving out the videos uploaded to this storage.
+     *
+     * @return the sizes of the stored copies in bytes, by video id
+     * @throws IOException if the directory cannot be read
+     */
+    public Map<String, Long> listCopies() throws IOException {
+        Map<String, Long> copies = new HashMap<>();
+        Path copyPath = Paths.get(hotCopyPath);
+        if (!Files.isDirectory(copyPath)) {
+            return copies;
+        }
+
+        try (Stream<Path> files = Files.list(copyPath)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(".mp4")).toList()) {
+                String fileName = file.getFileName().toString();
+                copies.put(fileName.substring(0, fileName.length() - ".mp4".length()), Files.size(file));
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Copies a generated HLS package into the video storage directory.
+     *
+     * @param videoId the unique identifier of the video
+     * @param packageDirectory the local directory holding the package
+     * @return the local path of the master playlist
+     * @throws IOException if a file of the package cannot be copied
+     */
+    @Override
+    public String storeHlsPackage(String videoId, Path packageDirectory) throws IOException {
+        Path targetDirectory = Paths.get(videoStoragePath, "hls", videoId);
+
+        try (Stream<Path> files = Files.walk(packageDirectory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Path target = targetDirectory.resolve(packageDirectory.relativize(file).toString());
+                Files.createDirectories(target.getParent());
+                Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        log.info("Stored HLS package of video {} at {}", videoId, targetDirectory);
+        return targetDirectory.resolve(HlsUtils.MASTER_PLAYLIST).toString();
+    }
+
+    /**
+     * Serves a playlist or segment of a video's HLS package from the local filesystem.
+     *
+     * @param videoId the unique identifier of the video
+     * @param path the path of the file inside the package
+     * @return ResponseEntity containing the file and cache headers
+     */
+    @Override
+    public ResponseEntity<Resource> getHlsFile(String videoId, String path) {
+        if (!HlsUtils.isValidPath(path)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Path hlsFile = Paths.get(videoStoragePath, "hls", videoId).resolve(path);
+        if (!Files.isRegularFile(hlsFile)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(HlsUtils.contentType(path)))
+                .header(HttpHeaders.CACHE_CONTROL, HlsUtils.cacheControl(path))
+                .body(new FileSystemResource(hlsFile));
+    }
+
     /**
      * Validates the uploaded video file.
      *
      * @param file the file to validate
-     * @throws IllegalArgumentException if validation fails
+     * @throws InvalidUploadException if validation fails
      */
     private void validateVideo(MultipartFile file) {
         if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("File cannot be empty");
+            throw new InvalidUploadException("File cannot be empty");
         }
 
         long fileSizeInMb = file.getSize() / (1024 * 1024);
         if (fileSizeInMb > maxFileSizeMb) {
-            throw new IllegalArgumentException(
+            throw new InvalidUploadException(
                     String.format("File size exceeds maximum allowed size of %d MB", maxFileSizeMb));
         }
 
         String filename = file.getOriginalFilename();
         if (filename == null || filename.isEmpty()) {
-            throw new IllegalArgumentException("Filename cannot be empty");
+            throw new InvalidUploadException("Filename cannot be empty");
         }
 
         String fileExtension = getFileExtension(filename).toLowerCase();
-        List<String> allowedExtensionsList = Arrays.asList(allowedExtensions.split(","));
-
-        if (!allowedExtensionsList.contains(fileExtension)) {
-            throw new IllegalArgumentException(
-                    String.format("Invalid file type. Allowed types: %s", allowedExtensions));
+        if (!allowedExtensions.contains(fileExtension)) {
+            throw new InvalidUploadException(
+                    String.format("Invalid file type. Allowed types: %s", String.join(",", allowedExtensions)));
         }
 
         String contentType = file.getContentType();
         if (contentType == null || !contentType.startsWith("video/")) {
-            throw new IllegalArgumentException("File must be a video");
+            throw new InvalidUploadException("File must be a video");
         }
     }
 
@@ -197,11 +548,11 @@ public class LocalVideoService implements StorageService {
      *
      * @param filename the filename
      * @return the file extension
-     * @throws IllegalArgumentException if filename is invalid
+     * @throws InvalidUploadException if filename is invalid
      */
     private String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) {
-            throw new IllegalArgumentException("Invalid filename");
+            throw new InvalidUploadException("Invalid filename");
         }
         return filename.substring(filename.lastIndexOf(".") + 1);
     }
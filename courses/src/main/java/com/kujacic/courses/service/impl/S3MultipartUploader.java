@@ -0,0 +1,164 @@
+package com.kujacic.courses.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads a stream to S3 as a multipart upload, sending several parts concurrently
+ * through the async S3 client. At most {@code concurrency} parts are buffered at once,
+ * each part is retried on its own, and the whole upload is aborted if a part fails
+ * for good so no orphaned parts are left in the bucket.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class S3MultipartUploader {
+
+    private final S3AsyncClient s3AsyncClient;
+
+    @Value("${video.upload.multipart.part-size-mb:8}")
+    private int partSizeMb;
+
+    @Value("${video.upload.multipart.concurrency:4}")
+    private int concurrency;
+
+    @Value("${video.upload.multipart.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * Uploads the stream under the given key and blocks until the upload is complete.
+     *
+     * @param bucketName the target bucket
+     * @param key the object key
+     * @param contentType the content type of the object
+     * @param inputStream the data to upload, read sequentially part by part
+     * @throws IOException if reading the stream or uploading a part fails
+     */
+    public void upload(String bucketName, String key, String contentType, InputStream inputStream) throws IOException {
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        String uploadId;
+        try {
+            uploadId = s3AsyncClient.createMultipartUpload(createRequest).join().uploadId();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to start multipart upload for " + key + ": " + e.getCause().getMessage(), e.getCause());
+        }
+
+        int partSize = partSizeMb * 1024 * 1024;
+        Semaphore inFlightParts = new Semaphore(concurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+
+        try {
+            int partNumber = 1;
+            byte[] partData = inputStream.readNBytes(partSize);
+
+            // S3 accepts an empty object only as a single empty part
+            while (partData.length > 0 || partNumber == 1) {
+                inFlightParts.acquire();
+                if (failure.get() != null) {
+                    inFlightParts.release();
+                    break;
+                }
+
+                CompletableFuture<CompletedPart> part = uploadPart(bucketName, key, uploadId, partNumber, partData, 1)
+                        .whenComplete((completedPart, ex) -> {
+                            if (ex != null) {
+                                failure.compareAndSet(null, ex);
+                            }
+                            inFlightParts.release();
+                        });
+                parts.add(part);
+
+                if (partData.length < partSize) {
+                    break;
+                }
+                partNumber++;
+                partData = inputStream.readNBytes(partSize);
+            }
+
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).join();
+
+            List<CompletedPart> completedParts = parts.stream().map(CompletableFuture::join).toList();
+            CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build();
+
+            s3AsyncClient.completeMultipartUpload(completeRequest).join();
+            log.info("Completed multipart upload of {} in {} parts", key, completedParts.size());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(bucketName, key, uploadId);
+            throw new IOException("Multipart upload interrupted: " + key, e);
+        } catch (CompletionException | IOException e) {
+            abort(bucketName, key, uploadId);
+            Throwable cause = failure.get() != null ? failure.get() : e;
+            throw new IOException("Multipart upload failed for " + key + ": " + cause.getMessage(), cause);
+        } catch (RuntimeException e) {
+            // The source stream rejected the upload (e.g. it failed validation), drop the parts sent so far
+            abort(bucketName, key, uploadId);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<CompletedPart> uploadPart(
+            String bucketName, String key, String uploadId, int partNumber, byte[] partData, int attempt) {
+
+        UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) partData.length)
+                .build();
+
+        return s3AsyncClient.uploadPart(uploadPartRequest, AsyncRequestBody.fromBytes(partData))
+                .thenApply(response -> CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.eTag())
+                        .build())
+                .exceptionallyCompose(ex -> {
+                    if (attempt >= maxAttempts) {
+                        log.error("Part {} of {} failed after {} attempts", partNumber, key, attempt);
+                        return CompletableFuture.failedFuture(ex);
+                    }
+                    log.warn("Retrying part {} of {} (attempt {}): {}", partNumber, key, attempt + 1, ex.getMessage());
+                    return uploadPart(bucketName, key, uploadId, partNumber, partData, attempt + 1);
+                });
+    }
+
+    private void abort(String bucketName, String key, String uploadId) {
+        try {
+            s3AsyncClient.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build()).join();
+            log.warn("Aborted multipart upload of {}", key);
+        } catch (CompletionException e) {
+            log.error("Failed to abort multipart upload of {}: {}", key, e.getMessage(), e);
+        }
+    }
+}
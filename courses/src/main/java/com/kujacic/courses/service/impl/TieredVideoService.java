@@ -0,0 +1,424 @@
+package com.kujacic.courses.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.model.UploadSession;
+import com.kujacic.courses.service.StorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage combining a hot local tier with the cold S3 tier.
+ * S3 stays the source of truth: uploads and HLS packages are always written there. Every play of
+ * a video is counted, and once a video reaches the promotion threshold within the counting window
+ * it is copied to local disk in the background. The hot tier directory only ever holds these copies,
+ * so videos uploaded to the local storage are neither counted against its size nor demoted.
+ * Reads are served from local disk whenever a copy exists and fall back to S3 otherwise, including
+ * when the copy cannot be read. When the hot tier is full, the least played videos are
+ * demoted by deleting their local copy, as long as they were played less than the promoted one.
+ * Requests still reading a demoted copy keep it alive, the file is only deleted once the last of
+ * them has finished.
+ * Video metadata, and with it the ETag and Last-Modified validators, is always read from S3, so
+ * they do not change when a video moves between tiers. Responses served from the hot tier take
+ * their length and content type from the local copy, which is a byte for byte copy of the S3 object.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "video.tiering.enabled", havingValue = "true")
+@Slf4j
+public class TieredVideoService implements StorageService {
+
+    private final LocalVideoService hotTier;
+    private final VideoService coldTier;
+    private final AsyncTaskExecutor tieringExecutor;
+    private final int promoteThreshold;
+    private final long hotMaxBytes;
+
+    // Plays per video, forgotten once a video has not been played for the counting window
+    private final Cache<String, AtomicLong> plays;
+
+    private final Map<String, Long> hotVideos = new ConcurrentHashMap<>();
+    private final Set<String> promoting = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hotBytes = new AtomicLong();
+
+    // Requests currently reading a hot copy, and demoted copies waiting for their readers to finish.
+    // Both are guarded by the readers map
+    private final Map<String, Integer> readers = new HashMap<>();
+    private final Set<String> pendingDeletion = new HashSet<>();
+
+    private final Counter hotReads;
+    private final Counter coldReads;
+    private final Counter promotions;
+    private final Counter demotions;
+
+    public TieredVideoService(
+            LocalVideoService hotTier,
+            VideoService coldTier,
+            @Qualifier("videoTieringExecutor") AsyncTaskExecutor tieringExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${video.tiering.promote-threshold:3}") int promoteThreshold,
+            @Value("${video.tiering.window-minutes:60}") long windowMinutes,
+            @Value("${video.tiering.hot-max-size-mb:51200}") long hotMaxSizeMb) throws IOException {
+        this.hotTier = hotTier;
+        this.coldTier = coldTier;
+        this.tieringExecutor = tieringExecutor;
+        this.promoteThreshold = promoteThreshold;
+        this.hotMaxBytes = hotMaxSizeMb * 1024 * 1024;
+        this.plays = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(Duration.ofMinutes(windowMinutes))
+                .build();
+
+        // Copies promoted before a restart are still valid, S3 objects are never modified in place
+        hotTier.listCopies().forEach((videoId, size) -> {
+            hotVideos.put(videoId, size);
+            hotBytes.addAndGet(size);
+        });
+
+        this.hotReads = Counter.builder("video.tier.reads").tag("tier", "hot").register(meterRegistry);
+        this.coldReads = Counter.builder("video.tier.reads").tag("tier", "cold").register(meterRegistry);
+        this.promotions = Counter.builder("video.tier.promotions").register(meterRegistry);
+        this.demotions = Counter.builder("video.tier.demotions").register(meterRegistry);
+        Gauge.builder("video.tier.hot.size", hotBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String uploadVideo(String contentId, MultipartFile file) throws IOException {
+        String url = coldTier.uploadVideo(contentId, file);
+        demote(contentId);
+        return url;
+    }
+
+    @Override
+    public ResponseEntity<Resource> download(String videoId) {
+        if (!acquireHotCopy(videoId)) {
+            return coldTier.download(videoId);
+        }
+
+        try {
+            ResponseEntity<Resource> response = hotTier.downloadCopy(videoId);
+            if (response.getBody() != null) {
+                // The converter closes the stream once the body is written, which releases the copy
+                InputStream video = releasingOnClose(videoId, response.getBody().getInputStream());
+                return ResponseEntity.status(response.getStatusCode())
+                        .headers(response.getHeaders())
+                        .body(new InputStreamResource(video));
+            }
+            log.warn("Hot copy of video {} could not be read ({}), falling back to S3", videoId, response.getStatusCode());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read hot copy of video {}, falling back to S3: {}", videoId, e.getMessage());
+        }
+
+        releaseHotCopy(videoId);
+        return coldTier.download(videoId);
+    }
+
+    @Override
+    public VideoMetadata getVideoMetadata(String videoId) {
+        return coldTier.getVideoMetadata(videoId);
+    }
+
+    /**
+     * Streams a video from the hot tier when it holds a copy, otherwise from S3.
+     * Requests starting at the first byte count as a play towards promotion.
+     */
+    @Override
+    public ResponseEntity<StreamingResponseBody> streamVideo(String videoId, String rangeHeader) {
+        if (rangeHeader == null || rangeHeader.replace(" ", "").startsWith("bytes=0-")) {
+            recordPlay(videoId);
+        }
+
+        if (!acquireHotCopy(videoId)) {
+            coldReads.increment();
+            return coldTier.streamVideo(videoId, rangeHeader);
+        }
+
+        ResponseEntity<StreamingResponseBody> response;
+        try {
+            response = hotTier.streamCopy(videoId, rangeHeader);
+        } catch (RuntimeException e) {
+            releaseHotCopy(videoId);
+            log.warn("Failed to read hot copy of video {}, falling back to S3: {}", videoId, e.getMessage());
+            coldReads.increment();
+            return coldTier.streamVideo(videoId, rangeHeader);
+        }
+
+        StreamingResponseBody body = response.getBody();
+        if (body == null) {
+            releaseHotCopy(videoId);
+            // An unsatisfiable range is answered the same by either tier, anything else means the copy is unreadable
+            if (response.getStatusCode().value() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                return response;
+            }
+            log.warn("Hot copy of video {} could not be read ({}), falling back to S3", videoId, response.getStatusCode());
+            coldReads.increment();
+            return coldTier.streamVideo(videoId, rangeHeader);
+        }
+
+        hotReads.increment();
+        // The copy is read lazily, after this method returns, so it is only released once the body is written
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .body(outputStream -> {
+                    try {
+                        body.writeTo(outputStream);
+                    } finally {
+                        releaseHotCopy(videoId);
+                    }
+                });
+    }
+
+    @Override
+    public String initUpload(UploadSession session) {
+        return coldTier.initUpload(session);
+    }
+
+    @Override
+    public void appendChunk(UploadSession session, InputStream chunk, long length) {
+        coldTier.appendChunk(session, chunk, length);
+    }
+
+    @Override
+    public String completeUpload(UploadSession session) {
+        String url = coldTier.completeUpload(session);
+        demote(session.getId().toString());
+        return url;
+    }
+
+    @Override
+    public void abortUpload(UploadSession session) {
+        coldTier.abortUpload(session);
+    }
+
+    @Override
+    public InputStream openVideo(String videoId) throws IOException {
+        if (!acquireHotCopy(videoId)) {
+            return coldTier.openVideo(videoId);
+        }
+
+        try {
+            return releasingOnClose(videoId, hotTier.openCopy(videoId));
+        } catch (IOException | RuntimeException e) {
+            releaseHotCopy(videoId);
+            throw e;
+        }
+    }
+
+    @Override
+    public String storeHlsPackage(String videoId, Path packageDirectory) throws IOException {
+        return coldTier.storeHlsPackage(videoId, packageDirectory);
+    }
+
+    @Override
+    public ResponseEntity<Resource> getHlsFile(String videoId, String path) {
+        return coldTier.getHlsFile(videoId, path);
+    }
+
+    private boolean isHot(String videoId) {
+        return hotVideos.containsKey(videoId);
+    }
+
+    /**
+     * Registers a reader of the hot copy of a video, so the copy is not deleted while it is read.
+     *
+     * @return false if the hot tier holds no copy of the video
+     */
+    private boolean acquireHotCopy(String videoId) {
+        synchronized (readers) {
+            if (!isHot(videoId)) {
+                return false;
+            }
+            readers.merge(videoId, 1, Integer::sum);
+            return true;
+        }
+    }
+
+    /**
+     * Unregisters a reader of the hot copy of a video, deleting the copy if it was demoted meanwhile
+     * and this was its last reader.
+     */
+    private void releaseHotCopy(String videoId) {
+        synchronized (readers) {
+            if (readers.merge(videoId, -1, Integer::sum) > 0) {
+                return;
+            }
+            readers.remove(videoId);
+            if (!pendingDeletion.remove(videoId)) {
+                return;
+            }
+        }
+        deleteHotCopy(videoId);
+    }
+
+    private InputStream releasingOnClose(String videoId, InputStream video) {
+        AtomicBoolean released = new AtomicBoolean();
+        return new FilterInputStream(video) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        releaseHotCopy(videoId);
+                    }
+                }
+            }
+        };
+    }
+
+    private long playCount(String videoId) {
+        AtomicLong count = plays.getIfPresent(videoId);
+        return count == null ? 0 : count.get();
+    }
+
+    private void recordPlay(String videoId) {
+        long count = plays.get(videoId, key -> new AtomicLong()).incrementAndGet();
+        if (count < promoteThreshold || isHot(videoId) || !promoting.add(videoId)) {
+            return;
+        }
+
+        try {
+            tieringExecutor.execute(() -> {
+                try {
+                    promote(videoId);
+                } finally {
+                    promoting.remove(videoId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // Promotion is retried on a later play
+            promoting.remove(videoId);
+        }
+    }
+
+    private void promote(String videoId) {
+        synchronized (readers) {
+            // The old copy is still being read and would replace the new one when it is deleted
+            if (pendingDeletion.contains(videoId)) {
+                log.debug("Hot copy of video {} is still being read, promotion deferred", videoId);
+                return;
+            }
+        }
+
+        try {
+            long size = coldTier.getVideoMetadata(videoId).getContentLength();
+            if (!reserve(videoId, size)) {
+                log.debug("Hot tier has no room for video {} ({} bytes)", videoId, size);
+                return;
+            }
+
+            try (InputStream video = coldTier.openVideo(videoId)) {
+                long stored = hotTier.storeCopy(videoId, video);
+                hotBytes.addAndGet(stored - size);
+                hotVideos.put(videoId, stored);
+            } catch (IOException | RuntimeException e) {
+                hotBytes.addAndGet(-size);
+                throw e;
+            }
+
+            promotions.increment();
+            log.info("Promoted video {} to the hot tier ({} bytes)", videoId, size);
+
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to promote video {} to the hot tier: {}", videoId, e.getMessage());
+        }
+    }
+
+    /**
+     * Reserves room for a video in the hot tier, demoting videos played less often if needed.
+     *
+     * @return false if the video does not fit without demoting videos played at least as often
+     */
+    private synchronized boolean reserve(String videoId, long size) {
+        if (size > hotMaxBytes) {
+            return false;
+        }
+
+        long candidatePlays = playCount(videoId);
+        List<String> byPlays = hotVideos.keySet().stream()
+                .sorted(Comparator.comparingLong(this::playCount))
+                .toList();
+
+        long free = hotMaxBytes - hotBytes.get();
+        int victims = 0;
+        while (free < size && victims < byPlays.size() && playCount(byPlays.get(victims)) < candidatePlays) {
+            free += hotVideos.getOrDefault(byPlays.get(victims), 0L);
+            victims++;
+        }
+        if (free < size) {
+            return false;
+        }
+
+        byPlays.subList(0, victims).forEach(this::demote);
+        hotBytes.addAndGet(size);
+        return true;
+    }
+
+    /**
+     * Removes a video from the hot tier. New requests go to S3 right away, while the local copy is
+     * only deleted once the requests still reading it have finished.
+     */
+    private void demote(String videoId) {
+        boolean inUse;
+        synchronized (readers) {
+            Long size = hotVideos.remove(videoId);
+            if (size == null) {
+                return;
+            }
+            hotBytes.addAndGet(-size);
+            inUse = readers.containsKey(videoId);
+            if (inUse) {
+                pendingDeletion.add(videoId);
+            }
+        }
+
+        demotions.increment();
+        if (inUse) {
+            log.info("Demoted video {} from the hot tier, deleting it once its readers finish", videoId);
+            return;
+        }
+        log.info("Demoted video {} from the hot tier", videoId);
+        deleteHotCopy(videoId);
+    }
+
+    private void deleteHotCopy(String videoId) {
+        try {
+            hotTier.deleteCopy(videoId);
+        } catch (IOException e) {
+            log.warn("Failed to delete hot copy of video {}: {}", videoId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.kujacic.courses.service.impl;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket handing out bytes at a fixed rate with a bounded burst.
+ * Callers reserve tokens up front and are told how long to wait until the reservation is covered;
+ * the balance may go negative, so concurrent callers are queued behind each other in the order
+ * they reserved instead of racing for refilled tokens.
+ */
+public class TokenBucket {
+
+    private final double bytesPerNano;
+    private final long capacity;
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(long bytesPerSecond, long capacity, LongSupplier nanoClock) {
+        this.bytesPerNano = bytesPerSecond / 1_000_000_000d;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Reserves tokens for the given number of bytes.
+     *
+     * @param bytes the number of bytes about to be sent
+     * @return the nanoseconds to wait before sending them, 0 if they can be sent right away
+     */
+    public synchronized long reserve(long bytes) {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * bytesPerNano);
+        lastRefill = now;
+
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / bytesPerNano);
+    }
+}
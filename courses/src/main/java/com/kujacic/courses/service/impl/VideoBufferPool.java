@@ -0,0 +1,159 @@
+package com.kujacic.courses.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of off-heap buffers for video chunk I/O.
+ * Buffers come in power-of-two size classes from 64 KB up to the configured maximum, and a
+ * request is served from the smallest class that fits. Released buffers are kept for reuse
+ * until the pool holds its configured number of bytes, so under steady load chunks are read
+ * and written without allocating a buffer per chunk. File channels, such as the segment cache,
+ * read and write these buffers without a heap copy; channels wrapping streams, such as S3
+ * responses and servlet output, still copy through a small heap array of their own.
+ * Requests larger than the biggest class get a dedicated heap buffer that is dropped on release,
+ * so one-off buffers are reclaimed by the GC like any other object instead of holding direct memory.
+ * Direct memory in use, pooled or handed out, is capped as well. Once the cap is reached further
+ * requests get heap buffers, so a spike of concurrent streams slows down to heap copies instead of
+ * failing with an out of memory error for direct buffer memory.
+ */
+@Component
+public class VideoBufferPool {
+
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+
+    private final int maxBufferSize;
+    private final long maxPooledBytes;
+    private final long maxDirectBytes;
+    private final ConcurrentLinkedQueue<ByteBuffer>[] sizeClasses;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong directBytes = new AtomicLong();
+
+    private final Counter reused;
+    private final Counter allocated;
+    private final Counter heap;
+
+    @SuppressWarnings("unchecked")
+    public VideoBufferPool(
+            MeterRegistry meterRegistry,
+            @Value("${video.buffer-pool.max-buffer-size-kb:4096}") int maxBufferSizeKb,
+            @Value("${video.buffer-pool.max-pooled-mb:256}") long maxPooledMb,
+            @Value("${video.buffer-pool.max-direct-mb:512}") long maxDirectMb) {
+        this.maxBufferSize = Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit(maxBufferSizeKb * 1024));
+        this.maxPooledBytes = maxPooledMb * 1024 * 1024;
+        this.maxDirectBytes = maxDirectMb * 1024 * 1024;
+
+        int classCount = Integer.numberOfTrailingZeros(maxBufferSize / MIN_BUFFER_SIZE) + 1;
+        this.sizeClasses = new ConcurrentLinkedQueue[classCount];
+        for (int i = 0; i < classCount; i++) {
+            sizeClasses[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        this.reused = Counter.builder("video.buffer.pool.acquires").tag("result", "reused").register(meterRegistry);
+        this.allocated = Counter.builder("video.buffer.pool.acquires").tag("result", "allocated").register(meterRegistry);
+        this.heap = Counter.builder("video.buffer.pool.acquires").tag("result", "heap").register(meterRegistry);
+        Gauge.builder("video.buffer.pool.size", pooledBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("video.buffer.pool.direct", directBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes a cleared buffer with room for at least the given number of bytes, limited to exactly that many.
+     * The buffer must be released by closing the returned handle once it is no longer used.
+     *
+     * @param size the number of bytes needed
+     * @return the pooled buffer
+     */
+    public PooledBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+
+        if (sizeClass >= 0) {
+            buffer = sizeClasses[sizeClass].poll();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-buffer.capacity());
+                reused.increment();
+            }
+        }
+
+        if (buffer == null && sizeClass >= 0) {
+            int capacity = MIN_BUFFER_SIZE << sizeClass;
+            if (directBytes.addAndGet(capacity) <= maxDirectBytes) {
+                buffer = ByteBuffer.allocateDirect(capacity);
+                allocated.increment();
+            } else {
+                // Served from the heap like an oversized request, and dropped on release
+                directBytes.addAndGet(-capacity);
+                buffer = ByteBuffer.allocate(size);
+                sizeClass = -1;
+                heap.increment();
+            }
+        }
+
+        if (buffer == null) {
+            // Larger than the biggest size class, served from the heap
+            buffer = ByteBuffer.allocate(size);
+            heap.increment();
+        }
+
+        buffer.clear().limit(size);
+        return new PooledBuffer(buffer, sizeClass);
+    }
+
+    private void release(ByteBuffer buffer, int sizeClass) {
+        // Buffers outside the size classes or beyond the pool budget are left to the GC, which frees their memory
+        if (sizeClass < 0 || pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            if (sizeClass >= 0) {
+                pooledBytes.addAndGet(-buffer.capacity());
+                directBytes.addAndGet(-buffer.capacity());
+            }
+            return;
+        }
+        sizeClasses[sizeClass].offer(buffer);
+    }
+
+    private int sizeClass(int size) {
+        if (size > maxBufferSize) {
+            return -1;
+        }
+        int capacity = Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit(Math.max(size - 1, 1)) << 1);
+        return Integer.numberOfTrailingZeros(capacity / MIN_BUFFER_SIZE);
+    }
+
+    /**
+     * A buffer taken from the pool. Closing it returns the buffer; it must not be used afterwards.
+     */
+    public final class PooledBuffer implements AutoCloseable {
+
+        private final ByteBuffer buffer;
+        private final int sizeClass;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PooledBuffer(ByteBuffer buffer, int sizeClass) {
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(buffer, sizeClass);
+            }
+        }
+    }
+}
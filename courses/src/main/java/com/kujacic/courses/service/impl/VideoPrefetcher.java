@@ -0,0 +1,192 @@
+package com.kujacic.courses.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Adaptive read-ahead for sequential video playback.
+ * Every streamed range runs in its own session that watches the offsets being read. While reads
+ * stay sequential, the following segments are loaded into the segment cache in the background and
+ * the read-ahead window doubles up to the configured maximum; a seek or an aborted response cancels
+ * all pending loads and resets the window. The window of a finished session is remembered briefly under the offset it
+ * stopped at, so players fetching consecutive ranges in separate requests keep their read-ahead.
+ * A reader waits for the prefetch of a segment it needs only for a bounded time, since the prefetch
+ * may still be queued behind other sessions' loads.
+ */
+@Component
+@Slf4j
+public class VideoPrefetcher {
+
+    private final VideoSegmentCache segmentCache;
+    private final AsyncTaskExecutor prefetchExecutor;
+    private final int maxSegments;
+    private final long awaitTimeoutMs;
+    private final boolean enabled;
+
+    // Read-ahead windows of recently finished sessions, keyed by video key and the offset they stopped at
+    private final Cache<String, Integer> windows = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+
+    public VideoPrefetcher(
+            VideoSegmentCache segmentCache,
+            @Qualifier("videoPrefetchExecutor") AsyncTaskExecutor prefetchExecutor,
+            @Value("${video.prefetch.max-segments:4}") int maxSegments,
+            @Value("${video.prefetch.await-timeout-ms:500}") long awaitTimeoutMs,
+            @Value("${video.prefetch.enabled:true}") boolean enabled) {
+        this.segmentCache = segmentCache;
+        this.prefetchExecutor = prefetchExecutor;
+        this.maxSegments = maxSegments;
+        this.awaitTimeoutMs = awaitTimeoutMs;
+        // Prefetched segments are handed over through the segment cache, so there is nothing to do without it
+        this.enabled = enabled && segmentCache.isEnabled() && maxSegments > 0;
+    }
+
+    /**
+     * Opens a read-ahead session for one streamed range. Sessions are used by a single thread
+     * and must be closed once the range has been written.
+     *
+     * @param videoKey the storage key of the video
+     * @param contentLength the total size of the video
+     * @param rangeEnd the last byte of the streamed range
+     * @param loader loads a segment from the backing storage
+     * @return the session
+     */
+    public Session openSession(String videoKey, long contentLength, long rangeEnd, VideoSegmentCache.SegmentLoader loader) {
+        return new Session(videoKey, contentLength, rangeEnd, loader);
+    }
+
+    public class Session implements AutoCloseable {
+
+        private final String videoKey;
+        private final long contentLength;
+        private final long rangeEnd;
+        private final VideoSegmentCache.SegmentLoader loader;
+        private final Map<Long, Future<?>> pending = new HashMap<>();
+
+        private long nextOffset = -1;
+        private long scheduledThrough = -1;
+        private int window;
+
+        private Session(String videoKey, long contentLength, long rangeEnd, VideoSegmentCache.SegmentLoader loader) {
+            this.videoKey = videoKey;
+            this.contentLength = contentLength;
+            this.rangeEnd = rangeEnd;
+            this.loader = loader;
+        }
+
+        /**
+         * Records a read of an inclusive byte range and schedules the segments following it.
+         * Waits up to the await timeout for a pending prefetch of a segment the read needs, so the
+         * reader does not fetch the same segment a second time. A prefetch that takes longer is
+         * cancelled and the reader loads the segment itself.
+         *
+         * @param start the first byte about to be read
+         * @param end the last byte about to be read
+         */
+        public void beforeRead(long start, long end) {
+            if (!enabled) {
+                return;
+            }
+
+            if (start == nextOffset) {
+                window = Math.min(Math.max(window * 2, 1), maxSegments);
+            } else {
+                // First read of the session or a seek, earlier read-ahead is no longer useful
+                cancelPending();
+                scheduledThrough = -1;
+                Integer previousWindow = windows.getIfPresent(windowKey(start));
+                window = previousWindow == null ? 0 : previousWindow;
+            }
+            nextOffset = end + 1;
+
+            long segmentSize = segmentCache.getSegmentSize();
+            long firstSegment = start / segmentSize;
+            long lastSegment = end / segmentSize;
+            for (long index = firstSegment; index <= lastSegment; index++) {
+                await(pending.remove(index));
+            }
+
+            pending.values().removeIf(Future::isDone);
+
+            long lastVideoSegment = (contentLength - 1) / segmentSize;
+            long scheduleTo = Math.min(lastSegment + window, lastVideoSegment);
+            for (long index = Math.max(lastSegment, scheduledThrough) + 1; index <= scheduleTo; index++) {
+                schedule(index);
+            }
+            scheduledThrough = Math.max(scheduledThrough, scheduleTo);
+        }
+
+        /**
+         * Ends the session. If the range was written completely, pending loads keep running for the
+         * player's next request; if the client went away mid-range (typically a seek), they are cancelled.
+         */
+        @Override
+        public void close() {
+            if (nextOffset <= rangeEnd) {
+                cancelPending();
+                return;
+            }
+            if (enabled && window > 0 && nextOffset < contentLength) {
+                windows.put(windowKey(nextOffset), window);
+            }
+        }
+
+        private void schedule(long index) {
+            try {
+                pending.put(index, prefetchExecutor.submit(() -> {
+                    try {
+                        segmentCache.prefetch(videoKey, index, contentLength, loader);
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to prefetch segment {} of {}: {}", index, videoKey, e.getMessage());
+                    }
+                }));
+            } catch (TaskRejectedException e) {
+                // All prefetch workers are busy, playback falls back to reading on demand
+                log.debug("Skipped prefetch of segment {} of {}", index, videoKey);
+            }
+        }
+
+        private void await(Future<?> prefetch) {
+            if (prefetch == null) {
+                return;
+            }
+            try {
+                prefetch.get(awaitTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (TimeoutException e) {
+                // Most likely still queued; a load that already started keeps filling the cache
+                prefetch.cancel(false);
+                log.debug("Prefetch of {} did not finish in time, reading on demand", videoKey);
+            } catch (ExecutionException | CancellationException e) {
+                // The reader loads the segment itself
+            }
+        }
+
+        private void cancelPending() {
+            pending.values().forEach(prefetch -> prefetch.cancel(false));
+            pending.clear();
+        }
+
+        private String windowKey(long offset) {
+            return videoKey + "@" + offset;
+        }
+    }
+}
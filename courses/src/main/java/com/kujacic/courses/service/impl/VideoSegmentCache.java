@@ -0,0 +1,379 @@
+package com.kujacic.courses.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Read-through, size-bounded on-disk cache of fixed-size video segments.
+ * Segments are aligned to the configured segment size, so any byte range maps onto
+ * a small set of segments that can be shared between viewers. Cached segments are
+ * read through memory mapping and evicted in least-recently-used order once the
+ * cache exceeds its maximum size. Concurrent misses on the same segment share a single
+ * load from the backing storage, so a burst of viewers starting the same video costs one
+ * S3 request per segment instead of one per viewer.
+ */
+@Component
+@Slf4j
+public class VideoSegmentCache {
+
+    /**
+     * Loads an inclusive byte range from the backing storage on a cache miss,
+     * writing exactly {@code end - start + 1} bytes into the target buffer.
+     */
+    @FunctionalInterface
+    public interface SegmentLoader {
+        void load(long start, long end, ByteBuffer target);
+    }
+
+    // Names of what the cache creates: a directory per video, holding its segments and their temporary files
+    private static final Pattern VIDEO_DIRECTORY_NAME = Pattern.compile("(?:[0-9a-f]{2})+");
+    private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("\\d+\\.seg(?:\\.[0-9a-f-]{36}\\.tmp)?");
+
+    private final VideoBufferPool bufferPool;
+    private final Path cachePath;
+    private final long segmentSize;
+    private final long maxCacheSize;
+    private final boolean enabled;
+
+    // Access-ordered index of cached segment files and their sizes, used for LRU eviction
+    private final LinkedHashMap<Path, Long> segments = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    // Segment loads currently running against the backing storage, keyed by segment file
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter prefetches;
+    private final Counter coalesced;
+
+    public VideoSegmentCache(
+            MeterRegistry meterRegistry,
+            VideoBufferPool bufferPool,
+            @Value("${video.cache.path:./video-cache}") String cachePath,
+            @Value("${video.cache.segment-size-mb:4}") long segmentSizeMb,
+            @Value("${video.cache.max-size-mb:10240}") long maxCacheSizeMb,
+            @Value("${video.cache.enabled:true}") boolean enabled) {
+        this.bufferPool = bufferPool;
+        this.cachePath = Paths.get(cachePath);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.maxCacheSize = maxCacheSizeMb * 1024 * 1024;
+        this.enabled = enabled;
+
+        this.hits = Counter.builder("video.segment.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("video.segment.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("video.segment.cache.evictions").register(meterRegistry);
+        this.prefetches = Counter.builder("video.segment.cache.prefetches").register(meterRegistry);
+        this.coalesced = Counter.builder("video.segment.cache.coalesced").register(meterRegistry);
+        Gauge.builder("video.segment.cache.size", cachedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        if (enabled) {
+            clearStaleSegments();
+        }
+    }
+
+    /**
+     * Reads an inclusive byte range of a video into the target buffer, serving the covered
+     * segments from disk and fetching missing ones through the loader.
+     *
+     * @param videoKey the storage key of the video
+     * @param start the first byte of the range
+     * @param end the last byte of the range (inclusive)
+     * @param contentLength the total size of the video
+     * @param loader loads a segment from the backing storage on a miss
+     * @param target receives the bytes of the requested range at its current position
+     */
+    public void read(String videoKey, long start, long end, long contentLength, SegmentLoader loader, ByteBuffer target) {
+        if (!enabled) {
+            loader.load(start, end, target);
+            return;
+        }
+
+        long firstSegment = start / segmentSize;
+        long lastSegment = end / segmentSize;
+
+        for (long index = firstSegment; index <= lastSegment; index++) {
+            long segmentStart = index * segmentSize;
+            long segmentEnd = Math.min(segmentStart + segmentSize, contentLength) - 1;
+
+            long copyFrom = Math.max(start, segmentStart);
+            long copyTo = Math.min(end, segmentEnd);
+
+            int length = (int) (copyTo - copyFrom + 1);
+
+            Path segmentFile = getSegment(videoKey, index, segmentStart, segmentEnd, loader);
+            if (!copySegment(segmentFile, copyFrom - segmentStart, target, length)) {
+                // The segment was evicted between lookup and read, serve the missing part from the backing storage
+                loader.load(copyFrom, copyTo, target);
+            }
+        }
+    }
+
+    /**
+     * Loads one segment into the cache ahead of playback unless it is already cached.
+     *
+     * @param videoKey the storage key of the video
+     * @param index the index of the segment
+     * @param contentLength the total size of the video
+     * @param loader loads the segment from the backing storage
+     */
+    public void prefetch(String videoKey, long index, long contentLength, SegmentLoader loader) {
+        long segmentStart = index * segmentSize;
+        if (!enabled || segmentStart >= contentLength) {
+            return;
+        }
+
+        Path segmentFile = videoDirectory(videoKey).resolve(index + ".seg");
+        synchronized (segments) {
+            if (segments.containsKey(segmentFile) || inFlight.containsKey(segmentFile.toString())) {
+                return;
+            }
+        }
+
+        long segmentEnd = Math.min(segmentStart + segmentSize, contentLength) - 1;
+        loadOnce(segmentFile, () -> {
+            loadSegment(segmentFile, segmentStart, segmentEnd, loader);
+            prefetches.increment();
+        });
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Drops all cached segments of a video, e.g. after it has been re-uploaded.
+     *
+     * @param videoKey the storage key of the video
+     */
+    public void evict(String videoKey) {
+        if (!enabled) {
+            return;
+        }
+
+        Path videoDirectory = videoDirectory(videoKey);
+        synchronized (segments) {
+            Iterator<Map.Entry<Path, Long>> iterator = segments.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, Long> entry = iterator.next();
+                if (entry.getKey().startsWith(videoDirectory)) {
+                    deleteSegment(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private Path getSegment(String videoKey, long index, long segmentStart, long segmentEnd, SegmentLoader loader) {
+        Path segmentFile = videoDirectory(videoKey).resolve(index + ".seg");
+
+        synchronized (segments) {
+            if (segments.get(segmentFile) != null) {
+                hits.increment();
+                return segmentFile;
+            }
+        }
+
+        loadOnce(segmentFile, () -> {
+            misses.increment();
+            loadSegment(segmentFile, segmentStart, segmentEnd, loader);
+        });
+        return segmentFile;
+    }
+
+    private void loadSegment(Path segmentFile, long segmentStart, long segmentEnd, SegmentLoader loader) {
+        // The segment is staged in a pooled off-heap buffer on its way from storage to disk
+        try (VideoBufferPool.PooledBuffer staging = bufferPool.acquire(Math.toIntExact(segmentEnd - segmentStart + 1))) {
+            ByteBuffer segmentData = staging.buffer();
+            loader.load(segmentStart, segmentEnd, segmentData);
+            storeSegment(segmentFile, segmentData.flip());
+        }
+    }
+
+    /**
+     * Runs a segment load unless the same load is already in flight, in which case the caller
+     * waits for that one to store the segment, or the segment was stored since the caller looked it up.
+     */
+    private void loadOnce(Path segmentFile, Runnable load) {
+        String flightKey = segmentFile.toString();
+        CompletableFuture<Void> flight = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(flightKey, flight);
+
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                existing.join();
+                return;
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            // A load that finished between the caller's lookup and putIfAbsent is no longer in flight
+            boolean cached;
+            synchronized (segments) {
+                cached = segments.containsKey(segmentFile);
+            }
+            if (cached) {
+                coalesced.increment();
+            } else {
+                load.run();
+            }
+            flight.complete(null);
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    private void storeSegment(Path segmentFile, ByteBuffer segmentData) {
+        long size = segmentData.remaining();
+        try {
+            Files.createDirectories(segmentFile.getParent());
+
+            // Write to a temporary file first so readers never observe a partially written segment
+            Path tempFile = segmentFile.resolveSibling(segmentFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (segmentData.hasRemaining()) {
+                    channel.write(segmentData);
+                }
+            }
+            Files.move(tempFile, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (segments) {
+                Long previous = segments.put(segmentFile, size);
+                cachedBytes.addAndGet(size - (previous == null ? 0 : previous));
+                evictOverflow();
+            }
+        } catch (IOException e) {
+            log.error("Failed to cache video segment {}: {}", segmentFile, e.getMessage(), e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean copySegment(Path segmentFile, long position, ByteBuffer target, int length) {
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            target.put(buffer);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            log.error("Failed to read cached video segment {}: {}", segmentFile, e.getMessage(), e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Path, Long>> iterator = segments.entrySet().iterator();
+        while (cachedBytes.get() > maxCacheSize && iterator.hasNext()) {
+            Map.Entry<Path, Long> eldest = iterator.next();
+            deleteSegment(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private void deleteSegment(Path segmentFile, long size) {
+        try {
+            Files.deleteIfExists(segmentFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached video segment {}: {}", segmentFile, e.getMessage());
+        }
+        cachedBytes.addAndGet(-size);
+    }
+
+    private Path videoDirectory(String videoKey) {
+        // Keys contain slashes and arbitrary characters, so each video gets a directory named after its hex-encoded key
+        return cachePath.resolve(HexFormat.of().formatHex(videoKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Removes the segments a previous run left behind, since the video may have changed or the
+     * segment size may differ since. Only what the cache creates is deleted: segment and temporary
+     * files in the hex-named video directories, and those directories once empty. Anything else
+     * under the cache path, e.g. when it points at a shared directory by mistake, is left alone.
+     */
+    private void clearStaleSegments() {
+        try {
+            Files.createDirectories(cachePath);
+
+            int removed = 0;
+            try (Stream<Path> videoDirectories = Files.list(cachePath)) {
+                for (Path videoDirectory : videoDirectories.filter(VideoSegmentCache::isVideoDirectory).toList()) {
+                    removed += clearVideoDirectory(videoDirectory);
+                }
+            }
+            log.info("Video segment cache initialized at {}, removed {} stale segment files", cachePath, removed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to initialize video segment cache", e);
+        }
+    }
+
+    private int clearVideoDirectory(Path videoDirectory) throws IOException {
+        int removed = 0;
+        try (Stream<Path> files = Files.list(videoDirectory)) {
+            for (Path file : files.filter(VideoSegmentCache::isSegmentFile).toList()) {
+                Files.deleteIfExists(file);
+                removed++;
+            }
+        }
+
+        try {
+            Files.delete(videoDirectory);
+        } catch (DirectoryNotEmptyException e) {
+            log.warn("Keeping {} in the video segment cache, it holds files the cache did not create", videoDirectory);
+        }
+        return removed;
+    }
+
+    private static boolean isVideoDirectory(Path path) {
+        return Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)
+                && VIDEO_DIRECTORY_NAME.matcher(path.getFileName().toString()).matches();
+    }
+
+    private static boolean isSegmentFile(Path path) {
+        return Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)
+                && SEGMENT_FILE_NAME.matcher(path.getFileName().toString()).matches();
+    }
+}
@@ -2,7 +2,14 @@ package com.kujacic.courses.service.impl;
 
 import com.kujacic.courses.dto.video.VideoChunk;
 import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.exception.InvalidUploadException;
+import com.kujacic.courses.exception.ResourceNotFoundException;
+import com.kujacic.courses.model.UploadSession;
 import com.kujacic.courses.service.StorageService;
+import com.kujacic.courses.utils.ByteRangeUtils;
+import com.kujacic.courses.utils.FaststartUtils;
+import com.kujacic.courses.utils.HlsUtils;
+import com.kujacic.courses.utils.VideoContainerUtils;
 import com.kujacic.courses.utils.VideoUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,14 +22,25 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.ResponseBytes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -31,8 +49,13 @@ public class VideoService implements StorageService {
 
     private final VideoUtils videoUtils;
     private final S3Client s3Client;
+    private final VideoSegmentCache segmentCache;
+    private final S3MultipartUploader multipartUploader;
+    private final VideoPrefetcher prefetcher;
+    private final VideoBufferPool bufferPool;
 
     private static final long CHUNK_SIZE = 1024 * 1024; // 1MB chunks
+    private static final long MIN_PART_SIZE = 5 * 1024 * 1024; // S3 minimum for all but the last part
 
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
@@ -53,47 +76,182 @@ public class VideoService implements StorageService {
         String uniqueFileName = contentId + "." + fileExtension;
         String s3Key = "videos/" + uniqueFileName;
 
-        try {
-            // Prepare S3 request
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Key)
-                    .contentType(file.getContentType())
-                    .contentLength(file.getSize())
-                    .build();
-
-            // Upload to S3
-            s3Client.putObject(putObjectRequest,
-                    RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
+        // The content is sniffed before the first part is sent, and the upload fails once it exceeds the size limit
+        try (InputStream validated = VideoContainerUtils.validate(file.getInputStream(), fileExtension, maxFileSizeMb * 1024 * 1024);
+             InputStream inputStream = FaststartUtils.faststart(file, validated, fileExtension)) {
+            // Upload to S3 in parallel parts, with the moov box of mp4s moved in front of the media data
+            multipartUploader.upload(bucketName, s3Key, file.getContentType(), inputStream);
 
             log.info("Successfully uploaded video: {} to S3 bucket: {}", s3Key, bucketName);
+            videoUtils.evictVideoMetadata(s3Key);
+            segmentCache.evict(s3Key);
 
             // Return the S3 URL
             return String.format("https://%s.s3.amazonaws.com/%s", bucketName, s3Key);
 
-        } catch (S3Exception e) {
+        } catch (IOException e) {
             log.error("Failed to upload video to S3: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to upload video to S3: " + e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+    }
+
+    public String initUpload(UploadSession session) {
+        String s3Key = uploadKey(session);
+
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .contentType(session.getContentType())
+                .build();
+
+        String uploadId = s3Client.createMultipartUpload(createRequest).uploadId();
+        log.info("Started resumable upload {} as multipart upload of {}", session.getId(), s3Key);
+        return uploadId;
+    }
+
+    public void appendChunk(UploadSession session, InputStream chunk, long length) {
+        boolean lastChunk = session.getUploadedBytes() + length >= session.getTotalSize();
+        if (length < MIN_PART_SIZE && !lastChunk) {
+            throw new InvalidUploadException("Chunks must be at least 5 MB except the last one");
+        }
+
+        // Re-sending a part number after a failed attempt simply replaces that part
+        UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(uploadKey(session))
+                .uploadId(session.getStorageUploadId())
+                .partNumber(session.getPartCount() + 1)
+                .contentLength(length)
+                .build();
+
+        s3Client.uploadPart(uploadPartRequest, RequestBody.fromInputStream(chunk, length));
+    }
+
+    public String completeUpload(UploadSession session) {
+        String s3Key = uploadKey(session);
+
+        ListPartsRequest listPartsRequest = ListPartsRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .uploadId(session.getStorageUploadId())
+                .build();
+
+        List<CompletedPart> completedParts = s3Client.listPartsPaginator(listPartsRequest).parts().stream()
+                .filter(part -> part.partNumber() <= session.getPartCount())
+                .sorted(Comparator.comparing(Part::partNumber))
+                .map(part -> CompletedPart.builder().partNumber(part.partNumber()).eTag(part.eTag()).build())
+                .toList();
+
+        CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .uploadId(session.getStorageUploadId())
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build();
+
+        s3Client.completeMultipartUpload(completeRequest);
+        videoUtils.evictVideoMetadata(s3Key);
+        segmentCache.evict(s3Key);
+
+        log.info("Completed resumable upload {} to S3 bucket: {}", session.getId(), bucketName);
+        return String.format("https://%s.s3.amazonaws.com/%s", bucketName, s3Key);
+    }
+
+    public void abortUpload(UploadSession session) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(uploadKey(session))
+                    .uploadId(session.getStorageUploadId())
+                    .build());
+        } catch (S3Exception e) {
+            log.warn("Failed to abort upload {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private String uploadKey(UploadSession session) {
+        return "videos/" + session.getId() + "." + videoUtils.getFileExtension(session.getFileName());
+    }
+
+    public InputStream openVideo(String videoId) {
+        return getFullVideo("videos/" + videoId + ".mp4");
+    }
+
+    public String storeHlsPackage(String videoId, Path packageDirectory) throws IOException {
+        String prefix = "hls/" + videoId + "/";
+
+        try (Stream<Path> files = Files.walk(packageDirectory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                String relativePath = packageDirectory.relativize(file).toString().replace('\\', '/');
+
+                PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(prefix + relativePath)
+                        .contentType(HlsUtils.contentType(relativePath))
+                        .cacheControl(HlsUtils.cacheControl(relativePath))
+                        .build();
+
+                s3Client.putObject(putObjectRequest, RequestBody.fromFile(file));
+            }
+        } catch (S3Exception e) {
+            log.error("Failed to store HLS package of video {}: {}", videoId, e.getMessage(), e);
+            throw new IOException("Failed to store HLS package: " + e.awsErrorDetails().errorMessage());
         }
+
+        log.info("Stored HLS package of video {} in S3 bucket: {}", videoId, bucketName);
+        return String.format("https://%s.s3.amazonaws.com/%s%s", bucketName, prefix, HlsUtils.MASTER_PLAYLIST);
     }
 
-    public ResponseEntity<byte[]> streamVideo(String videoId, String rangeHeader) {
+    public ResponseEntity<Resource> getHlsFile(String videoId, String path) {
+        if (!HlsUtils.isValidPath(path)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            ResponseInputStream<GetObjectResponse> hlsStream = getFullVideo("hls/" + videoId + "/" + path);
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(HlsUtils.contentType(path)))
+                    .contentLength(hlsStream.response().contentLength())
+                    .header(HttpHeaders.CACHE_CONTROL, HlsUtils.cacheControl(path))
+                    .body(new InputStreamResource(hlsStream));
+
+        } catch (NoSuchKeyException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    public VideoMetadata getVideoMetadata(String videoId) {
+        return videoUtils.getVideoMetadata("videos/" + videoId + ".mp4");
+    }
+
+    public ResponseEntity<StreamingResponseBody> streamVideo(String videoId, String rangeHeader) {
         try {
             String videoKey = "videos/" + videoId + ".mp4";
             log.info("Video id {}", videoId);
-            if (!videoUtils.videoExists(videoKey)) {
-                return ResponseEntity.notFound().build();
-            }
 
+            // Metadata is cached per key, so a seek normally costs only the ranged GET below
             VideoMetadata metadata = videoUtils.getVideoMetadata(videoKey);
             long fileSize = metadata.getContentLength();
 
-            if (rangeHeader == null) {
+            if (rangeHeader == null || !ByteRangeUtils.isWellFormed(rangeHeader)) {
+                if (rangeHeader != null) {
+                    log.warn("Ignoring malformed range header {} of {}", rangeHeader, videoKey);
+                }
                 return streamFullVideo(videoKey, metadata);
             }
 
-            return streamVideoWithRange(videoKey, rangeHeader, fileSize, metadata);
+            log.info("Sending video ranges {} of {} ({} bytes)", rangeHeader, videoKey, fileSize);
+
+            // Suffix, open-ended and multi-range requests are resolved by the shared range engine;
+            // each resolved range is then served from the segment cache piece by piece
+            return ByteRangeUtils.partialContent(rangeHeader, fileSize, metadata.getContentType(),
+                    (outputStream, range) -> writeRange(outputStream, videoKey, metadata, range));
 
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.notFound().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
@@ -101,140 +259,134 @@ public class VideoService implements StorageService {
     }
 
     public ResponseEntity<Resource> download(String videoId) {
+        String videoKey = "videos/" + videoId + ".mp4";
+        ResponseInputStream<GetObjectResponse> videoStream;
         try {
-            String videoKey = "videos/" + videoId + ".mp4";
+            videoStream = getFullVideo(videoKey);
+        } catch (NoSuchKeyException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
 
-            if (!videoUtils.videoExists(videoKey)) {
-                return ResponseEntity.notFound().build();
-            }
+        try {
+            GetObjectResponse objectResponse = videoStream.response();
+            MediaType contentType = objectResponse.contentType() != null
+                    ? MediaType.parseMediaType(objectResponse.contentType())
+                    : MediaType.APPLICATION_OCTET_STREAM;
 
-            VideoMetadata metadata = videoUtils.getVideoMetadata(videoKey);
-            InputStreamResource resource = new InputStreamResource(getFullVideo(videoKey));
+            // The S3 stream is handed to the response as-is and copied with a small fixed buffer,
+            // so the object is never materialized on the heap
+            InputStreamResource resource = new InputStreamResource(videoStream);
 
             return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(metadata.getContentType()))
-                    .contentLength(metadata.getContentLength())
+                    .contentType(contentType)
+                    .contentLength(objectResponse.contentLength())
                     .header(HttpHeaders.CONTENT_DISPOSITION,
-                            "attachment; filename=\"" + metadata.getFileName() + "\"")
+                            "attachment; filename=\"" + videoUtils.extractFileName(videoKey) + "\"")
                     .body(resource);
 
         } catch (Exception e) {
+            // Nothing will consume the stream once the response cannot be built, so release the S3 connection here
+            log.error("Error preparing download for {}: {}", videoKey, e.getMessage(), e);
+            closeQuietly(videoStream);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
-    private InputStream getFullVideo(String videoKey) {
+    private void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            log.warn("Failed to close S3 stream: {}", e.getMessage());
+        }
+    }
+
+    private ResponseInputStream<GetObjectResponse> getFullVideo(String videoKey) {
         try {
             GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                     .bucket(bucketName)
                     .key(videoKey)
                     .build();
 
-            ResponseBytes<GetObjectResponse> objectBytes = s3Client.getObjectAsBytes(getObjectRequest);
-            return new ByteArrayInputStream(objectBytes.asByteArray());
+            return s3Client.getObject(getObjectRequest);
 
+        } catch (NoSuchKeyException e) {
+            throw e;
         } catch (S3Exception e) {
             log.error("Error streaming video: {}", e.getMessage(), e);
             throw new RuntimeException("Error streaming video");
         }
     }
 
-    private ResponseEntity<byte[]> streamFullVideo(String videoKey, VideoMetadata metadata) {
-        long chunkSize = Math.min(1024 * 1024 * 10, metadata.getContentLength());
-        VideoChunk chunk = getVideoChunk(videoKey, 0, chunkSize - 1);
-
+    private ResponseEntity<StreamingResponseBody> streamFullVideo(String videoKey, VideoMetadata metadata) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.parseMediaType(metadata.getContentType()));
-        headers.setContentLength(chunk.getData().length);
+        headers.setContentLength(metadata.getContentLength());
         headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
-        headers.set(HttpHeaders.CONTENT_RANGE,
-                String.format("bytes %d-%d/%d", 0, chunkSize - 1, metadata.getContentLength()));
 
+        // A request without Range gets the complete representation, piped from S3 with a small fixed buffer
         return ResponseEntity
-                .status(HttpStatus.PARTIAL_CONTENT)
+                .ok()
                 .headers(headers)
-                .body(chunk.getData());
+                .body(outputStream -> {
+                    try (ResponseInputStream<GetObjectResponse> videoStream = getFullVideo(videoKey)) {
+                        videoStream.transferTo(outputStream);
+                    }
+                });
     }
 
-    private ResponseEntity<byte[]> streamVideoWithRange(
-            String videoKey, String rangeHeader, long fileSize, VideoMetadata metadata) {
-
-        try {
-            String[] ranges = rangeHeader.replace("bytes=", "").split("-");
-            long rangeStart = Long.parseLong(ranges[0]);
-            long rangeEnd;
-
-            if (ranges.length > 1 && !ranges[1].isEmpty()) {
-                rangeEnd = Long.parseLong(ranges[1]);
-            } else {
-                rangeEnd = Math.min(rangeStart + (1024 * 1024 * 10) - 1, fileSize - 1);
-            }
-
-            if (rangeStart >= fileSize) {
-                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
-                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
-                        .build();
+    /**
+     * Writes one resolved range in pieces of at most CHUNK_SIZE, so an open-ended or large range
+     * never has to be held in memory at once. The body runs on the MVC async executor
+     * (virtual threads), so the request thread is released before any S3 I/O happens and a
+     * viewer waiting on S3 only parks a virtual thread. While the range is read sequentially the
+     * prefetcher loads the following segments, and closing the session on a client abort (seek)
+     * cancels them.
+     */
+    private void writeRange(OutputStream outputStream, String videoKey, VideoMetadata metadata,
+                            ByteRangeUtils.ByteRange range) throws IOException {
+        try (VideoPrefetcher.Session session = prefetcher.openSession(videoKey, metadata.getContentLength(), range.end(),
+                (segmentStart, segmentEnd, target) -> getObjectRange(videoKey, segmentStart, segmentEnd, target))) {
+
+            WritableByteChannel channel = Channels.newChannel(outputStream);
+            for (long start = range.start(); start <= range.end(); start += CHUNK_SIZE) {
+                long end = Math.min(start + CHUNK_SIZE - 1, range.end());
+                session.beforeRead(start, end);
+
+                // Each piece lives in a pooled off-heap buffer that goes back to the pool once written
+                try (VideoChunk chunk = getVideoChunk(videoKey, metadata, start, end)) {
+                    ByteBuffer data = chunk.getData();
+                    while (data.hasRemaining()) {
+                        channel.write(data);
+                    }
+                }
             }
-
-            VideoChunk chunk = getVideoChunk(videoKey, rangeStart, rangeEnd);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(metadata.getContentType()));
-            headers.setContentLength(chunk.getData().length);
-            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
-            headers.set(HttpHeaders.CONTENT_RANGE,
-                    String.format("bytes %d-%d/%d",
-                            chunk.getRangeStart(),
-                            chunk.getRangeEnd(),
-                            chunk.getContentLength()));
-            headers.setCacheControl("no-cache, no-store, must-revalidate");
-
-            log.info("Sending video chunk: bytes {}-{}/{}",
-                    chunk.getRangeStart(), chunk.getRangeEnd(), chunk.getContentLength());
-
-            return ResponseEntity
-                    .status(HttpStatus.PARTIAL_CONTENT)
-                    .headers(headers)
-                    .body(chunk.getData());
-
-        } catch (NumberFormatException e) {
-            log.error("Invalid range header: {}", rangeHeader);
-            return ResponseEntity.badRequest().build();
-        } catch (IllegalArgumentException e) {
-            log.error("Invalid byte range: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
-                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
-                    .build();
         }
     }
 
-    private VideoChunk getVideoChunk(String videoKey, long start, long end) {
-        try {
-            VideoMetadata metadata = videoUtils.getVideoMetadata(videoKey);
-            long contentLength = metadata.getContentLength();
+    private VideoChunk getVideoChunk(String videoKey, VideoMetadata metadata, long start, long end) {
+        long contentLength = metadata.getContentLength();
 
-            // Adjust end if it exceeds content length
-            if (end >= contentLength) {
-                end = contentLength - 1;
-            }
-
-            // Validate range
-            if (start > end || start < 0) {
-                throw new IllegalArgumentException("Invalid byte range");
-            }
-
-            String range = String.format("bytes=%d-%d", start, end);
+        // Adjust end if it exceeds content length
+        if (end >= contentLength) {
+            end = contentLength - 1;
+        }
 
-            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(videoKey)
-                    .range(range)
-                    .build();
+        // Validate range
+        if (start > end || start < 0) {
+            throw new IllegalArgumentException("Invalid byte range");
+        }
 
-            ResponseBytes<GetObjectResponse> objectBytes = s3Client.getObjectAsBytes(getObjectRequest);
+        VideoBufferPool.PooledBuffer buffer = bufferPool.acquire(Math.toIntExact(end - start + 1));
+        try {
+            segmentCache.read(videoKey, start, end, contentLength,
+                    (segmentStart, segmentEnd, target) -> getObjectRange(videoKey, segmentStart, segmentEnd, target),
+                    buffer.buffer());
 
             return VideoChunk.builder()
-                    .data(objectBytes.asByteArray())
+                    .data(buffer.buffer().flip())
+                    .release(buffer::close)
                     .rangeStart(start)
                     .rangeEnd(end)
                     .contentLength(contentLength)
@@ -242,9 +394,42 @@ public class VideoService implements StorageService {
                     .fileName(metadata.getFileName())
                     .build();
 
-        } catch (S3Exception e) {
-            log.error("Error streaming video chunk: {}", e.getMessage(), e);
-            throw new RuntimeException("Error streaming video chunk");
+        } catch (RuntimeException e) {
+            buffer.close();
+            if (e instanceof S3Exception) {
+                log.error("Error streaming video chunk: {}", e.getMessage(), e);
+                throw new RuntimeException("Error streaming video chunk");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a byte range of an object straight into the target buffer.
+     */
+    private void getObjectRange(String videoKey, long start, long end, ByteBuffer target) {
+        String range = String.format("bytes=%d-%d", start, end);
+
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(videoKey)
+                .range(range)
+                .build();
+
+        int limit = target.limit();
+        target.limit(Math.toIntExact(target.position() + end - start + 1));
+
+        try (ResponseInputStream<GetObjectResponse> object = s3Client.getObject(getObjectRequest)) {
+            ReadableByteChannel channel = Channels.newChannel(object);
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) {
+                    throw new IOException("Object ended before the end of range " + range);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + range + " of " + videoKey, e);
+        } finally {
+            target.limit(limit);
         }
     }
 
@@ -0,0 +1,181 @@
+package com.kujacic.courses.utils;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * RFC 7233 range handling shared by the storage implementations.
+ * Resolves single, open-ended, suffix and multi-range headers against the size of a video,
+ * coalesces overlapping and nearly adjacent ranges, and builds the 206 response - a plain
+ * partial response for one range, or a multipart/byteranges body for several.
+ */
+public final class ByteRangeUtils {
+
+    /**
+     * An inclusive, satisfiable byte range of a video.
+     */
+    public record ByteRange(long start, long end) {
+        public long length() {
+            return end - start + 1;
+        }
+
+        public String contentRange(long contentLength) {
+            return String.format("bytes %d-%d/%d", start, end, contentLength);
+        }
+    }
+
+    /**
+     * Writes the bytes of one range of the video to the response.
+     */
+    @FunctionalInterface
+    public interface RangeWriter {
+        void write(OutputStream outputStream, ByteRange range) throws IOException;
+    }
+
+    // Ranges separated by fewer bytes than the headers of an extra part are cheaper to send as one part
+    private static final long COALESCE_GAP = 128;
+
+    private static final String CRLF = "\r\n";
+
+    private ByteRangeUtils() {
+    }
+
+    /**
+     * Tells whether a Range header can be parsed. A malformed header, or one asking for too many
+     * ranges, is to be ignored as if it was absent, so the full video is served (RFC 9110, 14.2).
+     *
+     * @param rangeHeader the value of the Range header
+     * @return true if the header names at least one range and can be resolved
+     */
+    public static boolean isWellFormed(String rangeHeader) {
+        try {
+            // An empty header names no range at all
+            return !HttpRange.parseRanges(rangeHeader).isEmpty();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resolves a Range header against the size of a video. Unsatisfiable ranges are dropped,
+     * the remaining ones are sorted and merged where they overlap or lie close together.
+     *
+     * @param rangeHeader the value of the Range header
+     * @param contentLength the total size of the video
+     * @return the ranges to send, empty if none of the requested ranges is satisfiable
+     * @throws IllegalArgumentException if the header is malformed or requests too many ranges
+     */
+    public static List<ByteRange> resolve(String rangeHeader, long contentLength) {
+        List<ByteRange> satisfiable = new ArrayList<>();
+
+        for (HttpRange range : HttpRange.parseRanges(rangeHeader)) {
+            long start = range.getRangeStart(contentLength);
+            long end = range.getRangeEnd(contentLength);
+
+            // A first byte past the end or a zero-length suffix (bytes=-0) cannot be satisfied
+            if (start < contentLength && start <= end) {
+                satisfiable.add(new ByteRange(start, end));
+            }
+        }
+
+        return coalesce(satisfiable);
+    }
+
+    static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::start));
+
+        List<ByteRange> merged = new ArrayList<>();
+        for (ByteRange range : sorted) {
+            if (!merged.isEmpty()) {
+                ByteRange last = merged.get(merged.size() - 1);
+                if (range.start() <= last.end() + COALESCE_GAP + 1) {
+                    merged.set(merged.size() - 1, new ByteRange(last.start(), Math.max(last.end(), range.end())));
+                    continue;
+                }
+            }
+            merged.add(range);
+        }
+        return merged;
+    }
+
+    /**
+     * Builds the response for a Range request.
+     *
+     * @param rangeHeader the value of the Range header
+     * @param contentLength the total size of the video
+     * @param contentType the content type of the video
+     * @param writer writes the bytes of a single range to the response
+     * @return a 206 response, or 416 if no requested range is satisfiable
+     * @throws IllegalArgumentException if the header is malformed
+     */
+    public static ResponseEntity<StreamingResponseBody> partialContent(
+            String rangeHeader, long contentLength, String contentType, RangeWriter writer) {
+
+        List<ByteRange> ranges = resolve(rangeHeader, contentLength);
+        if (ranges.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength)
+                    .build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            headers.setContentType(MediaType.parseMediaType(contentType));
+            headers.setContentLength(range.length());
+            headers.set(HttpHeaders.CONTENT_RANGE, range.contentRange(contentLength));
+
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .body(outputStream -> writer.write(outputStream, range));
+        }
+
+        String boundary = new String(MimeTypeUtils.generateMultipartBoundary(), StandardCharsets.US_ASCII);
+        List<byte[]> partHeaders = ranges.stream()
+                .map(range -> partHeader(boundary, contentType, range, contentLength))
+                .toList();
+        byte[] closingDelimiter = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+
+        long bodyLength = closingDelimiter.length;
+        for (int i = 0; i < ranges.size(); i++) {
+            bodyLength += partHeaders.get(i).length + ranges.get(i).length();
+        }
+
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+        headers.setContentLength(bodyLength);
+
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(headers)
+                .body(outputStream -> {
+                    for (int i = 0; i < ranges.size(); i++) {
+                        outputStream.write(partHeaders.get(i));
+                        writer.write(outputStream, ranges.get(i));
+                    }
+                    outputStream.write(closingDelimiter);
+                });
+    }
+
+    private static byte[] partHeader(String boundary, String contentType, ByteRange range, long contentLength) {
+        // Every delimiter but the first is preceded by the CRLF ending the previous part's data
+        String header = CRLF + "--" + boundary + CRLF
+                + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                + HttpHeaders.CONTENT_RANGE + ": " + range.contentRange(contentLength) + CRLF
+                + CRLF;
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,49 @@
+package com.kujacic.courses.utils;
+
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content hashes that identify stored videos, so the same video uploaded twice is stored once.
+ */
+public final class ContentHashUtils {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContentHashUtils() {
+    }
+
+    /**
+     * Computes the SHA-256 of a video in a single streaming pass, without holding it in memory.
+     *
+     * @param source the video to hash
+     * @return the hash as lower case hex
+     * @throws IOException if the video cannot be read
+     */
+    public static String sha256(InputStreamSource source) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream input = source.getInputStream()) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.kujacic.courses.utils;
+
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Faststart rewriting of mp4/mov files.
+ * When the moov box (the index players need before the first frame) is stored after the media data,
+ * the file is rewritten so moov comes right before the first mdat box. A first pass over the box
+ * headers locates moov and reads only that box; the second pass streams the file in its original
+ * order, inserting the moov box with its chunk offsets shifted and skipping it at its old position.
+ * Files that already start with moov, fragmented files and files whose offsets would not fit are
+ * passed through unchanged.
+ */
+public final class FaststartUtils {
+
+    private static final Set<String> EXTENSIONS = Set.of("mp4", "m4v", "mov");
+
+    // Boxes inside moov that lead to the chunk offset tables
+    private static final Set<String> CONTAINER_BOXES = Set.of("moov", "trak", "mdia", "minf", "stbl", "edts", "dinf", "mvex");
+
+    private static final long MAX_MOOV_SIZE = 64L * 1024 * 1024;
+
+    private FaststartUtils() {
+    }
+
+    /**
+     * Returns a stream of the file in faststart layout, or the original stream when no rewrite is needed.
+     *
+     * @param source provides a separate stream of the file for the scanning pass
+     * @param original the stream to rewrite, positioned at the first byte of the file
+     * @param extension the file extension
+     * @return the stream to store
+     * @throws IOException if the scanning pass fails
+     */
+    public static InputStream faststart(InputStreamSource source, InputStream original, String extension) throws IOException {
+        if (!EXTENSIONS.contains(extension.toLowerCase())) {
+            return original;
+        }
+
+        Optional<Layout> layout;
+        try (InputStream scan = source.getInputStream()) {
+            layout = scan(scan);
+        }
+        return layout.<InputStream>map(plan -> new FaststartInputStream(original, plan)).orElse(original);
+    }
+
+    /**
+     * A top-level box; a size of -1 means the box extends to the end of the file.
+     */
+    private record Box(String type, long offset, long size) {
+    }
+
+    private record Layout(List<Box> boxes, Box moov, Box firstMdat, byte[] patchedMoov) {
+    }
+
+    private static Optional<Layout> scan(InputStream input) throws IOException {
+        List<Box> boxes = new ArrayList<>();
+        Box moov = null;
+        Box firstMdat = null;
+        byte[] moovData = null;
+        long offset = 0;
+
+        while (true) {
+            byte[] header = input.readNBytes(8);
+            if (header.length == 0) {
+                break;
+            }
+            if (header.length < 8) {
+                return Optional.empty();
+            }
+
+            long size = Integer.toUnsignedLong(ByteBuffer.wrap(header).getInt());
+            String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+            int headerSize = 8;
+
+            if (size == 1) {
+                byte[] largeSize = input.readNBytes(8);
+                if (largeSize.length < 8) {
+                    return Optional.empty();
+                }
+                size = ByteBuffer.wrap(largeSize).getLong();
+                headerSize = 16;
+            }
+
+            if (type.equals("moof")) {
+                // Fragmented files keep their index in every fragment and stream fine as they are
+                return Optional.empty();
+            }
+
+            if (size == 0) {
+                boxes.add(new Box(type, offset, -1));
+                if (type.equals("mdat") && firstMdat == null) {
+                    firstMdat = boxes.get(boxes.size() - 1);
+                }
+                break;
+            }
+            if (size < headerSize) {
+                return Optional.empty();
+            }
+
+            Box box = new Box(type, offset, size);
+            boxes.add(box);
+
+            if (type.equals("moov") && moov == null) {
+                if (firstMdat == null || size > MAX_MOOV_SIZE) {
+                    // Already faststart, or too large to hold while the file is rewritten
+                    return Optional.empty();
+                }
+                moov = box;
+                byte[] body = input.readNBytes((int) size - headerSize);
+                if (body.length < size - headerSize) {
+                    return Optional.empty();
+                }
+                moovData = new byte[(int) size];
+                System.arraycopy(header, 0, moovData, 0, 8);
+                if (headerSize == 16) {
+                    ByteBuffer.wrap(moovData).putLong(8, size);
+                }
+                System.arraycopy(body, 0, moovData, headerSize, body.length);
+            } else {
+                if (type.equals("mdat") && firstMdat == null) {
+                    firstMdat = box;
+                }
+                input.skipNBytes(size - headerSize);
+            }
+            offset += size;
+        }
+
+        if (moov == null || firstMdat == null) {
+            return Optional.empty();
+        }
+
+        // Data between the insertion point and the old moov position moves forward by the size of moov,
+        // everything after the old moov position keeps its offset
+        long shiftFrom = firstMdat.offset();
+        long shiftTo = moov.offset();
+        if (!patchChunkOffsets(ByteBuffer.wrap(moovData), 0, moovData.length, shiftFrom, shiftTo, moov.size())) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new Layout(boxes, moov, firstMdat, moovData));
+    }
+
+    private static boolean patchChunkOffsets(ByteBuffer data, int start, int end, long shiftFrom, long shiftTo, long shift) {
+        int position = start;
+        while (position + 8 <= end) {
+            long size = Integer.toUnsignedLong(data.getInt(position));
+            String type = new String(data.array(), position + 4, 4, StandardCharsets.US_ASCII);
+            int headerSize = 8;
+
+            if (size == 1) {
+                size = data.getLong(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) {
+                return false;
+            }
+
+            int boxEnd = (int) (position + size);
+            int body = position + headerSize;
+
+            if (CONTAINER_BOXES.contains(type)) {
+                if (!patchChunkOffsets(data, body, boxEnd, shiftFrom, shiftTo, shift)) {
+                    return false;
+                }
+            } else if (type.equals("stco") || type.equals("co64")) {
+                boolean wide = type.equals("co64");
+                // Full box header (version and flags) followed by the entry count
+                long entries = Integer.toUnsignedLong(data.getInt(body + 4));
+                int entrySize = wide ? 8 : 4;
+                if (body + 8 + entries * entrySize > boxEnd) {
+                    return false;
+                }
+
+                for (int i = 0; i < entries; i++) {
+                    int entry = body + 8 + i * entrySize;
+                    long chunkOffset = wide ? data.getLong(entry) : Integer.toUnsignedLong(data.getInt(entry));
+                    if (chunkOffset < shiftFrom || chunkOffset >= shiftTo) {
+                        continue;
+                    }
+
+                    long shifted = chunkOffset + shift;
+                    if (wide) {
+                        data.putLong(entry, shifted);
+                    } else if (shifted > 0xFFFFFFFFL) {
+                        // Would need a co64 table, leave the file as it is
+                        return false;
+                    } else {
+                        data.putInt(entry, (int) shifted);
+                    }
+                }
+            }
+            position = boxEnd;
+        }
+        return true;
+    }
+
+    /**
+     * Streams the original file in box order, emitting the patched moov before the first mdat
+     * and dropping the original moov.
+     */
+    private static final class FaststartInputStream extends InputStream {
+
+        private final InputStream original;
+        private final Layout layout;
+
+        private int boxIndex = -1;
+        private InputStream current = InputStream.nullInputStream();
+        private long remainingInBox;
+        private boolean moovEmitted;
+
+        private FaststartInputStream(InputStream original, Layout layout) {
+            this.original = original;
+            this.layout = layout;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                if (current != original) {
+                    int read = current.read(buffer, offset, length);
+                    if (read >= 0) {
+                        return read;
+                    }
+                } else if (remainingInBox != 0) {
+                    int toRead = remainingInBox < 0 ? length : (int) Math.min(length, remainingInBox);
+                    int read = original.read(buffer, offset, toRead);
+                    if (read >= 0) {
+                        if (remainingInBox > 0) {
+                            remainingInBox -= read;
+                        }
+                        return read;
+                    }
+                    if (remainingInBox > 0) {
+                        throw new IOException("Video ended inside a " + layout.boxes().get(boxIndex).type() + " box");
+                    }
+                }
+                if (!nextBox()) {
+                    return -1;
+                }
+            }
+        }
+
+        private boolean nextBox() throws IOException {
+            Box box = boxIndex + 1 < layout.boxes().size() ? layout.boxes().get(boxIndex + 1) : null;
+            if (box == null) {
+                return false;
+            }
+
+            if (box == layout.firstMdat() && !moovEmitted) {
+                moovEmitted = true;
+                current = new ByteArrayInputStream(layout.patchedMoov());
+                return true;
+            }
+
+            boxIndex++;
+            if (box == layout.moov()) {
+                original.skipNBytes(box.size());
+                current = InputStream.nullInputStream();
+                remainingInBox = 0;
+            } else {
+                current = original;
+                remainingInBox = box.size();
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            original.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.kujacic.courses.utils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Helpers shared by the storage implementations for serving HLS packages, including the preview
+ * images and thumbnail track stored inside them.
+ */
+public final class HlsUtils {
+
+    public static final String MASTER_PLAYLIST = "master.m3u8";
+
+    // A playlist, segment or preview file name, optionally inside one directory (e.g. "720p/segment_001.ts")
+    private static final Pattern HLS_PATH = Pattern.compile("^([A-Za-z0-9_-]+/)?[A-Za-z0-9_-]+\\.(m3u8|ts|jpg|vtt)$");
+
+    private HlsUtils() {
+    }
+
+    public static boolean isValidPath(String path) {
+        return path != null && HLS_PATH.matcher(path).matches();
+    }
+
+    public static String contentType(String path) {
+        if (path.endsWith(".m3u8")) {
+            return "application/vnd.apple.mpegurl";
+        }
+        if (path.endsWith(".jpg")) {
+            return "image/jpeg";
+        }
+        if (path.endsWith(".vtt")) {
+            return "text/vtt";
+        }
+        return "video/mp2t";
+    }
+
+    /**
+     * Packages are written once per content and never modified, so every file can be cached for long.
+     * They are only served to authenticated viewers, so shared caches must not keep them.
+     */
+    public static String cacheControl(String path) {
+        return path.endsWith(".m3u8") ? "private, max-age=300" : "private, max-age=31536000, immutable";
+    }
+}
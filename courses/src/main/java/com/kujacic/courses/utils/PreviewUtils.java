@@ -0,0 +1,64 @@
+package com.kujacic.courses.utils;
+
+import java.util.Locale;
+
+/**
+ * Layout of the preview images stored with a video's HLS package: a poster frame and sprite
+ * sheets of evenly spaced thumbnails, indexed by a WebVTT track that players use for scrub previews.
+ */
+public final class PreviewUtils {
+
+    public static final String DIRECTORY = "preview";
+    public static final String POSTER = "poster.jpg";
+    public static final String THUMBNAIL_TRACK = "thumbnails.vtt";
+
+    // ffmpeg image2 pattern of the sprite sheets, numbered from 1
+    public static final String SPRITE_PATTERN = "sprite_%03d.jpg";
+
+    private PreviewUtils() {
+    }
+
+    /**
+     * Number of thumbnails taken from a video of the given duration.
+     */
+    public static int thumbnailCount(double durationSeconds, int intervalSeconds) {
+        return Math.max(1, (int) Math.ceil(durationSeconds / intervalSeconds));
+    }
+
+    /**
+     * Writes the WebVTT track mapping every interval of the video to its tile in the sprite sheets.
+     * Tiles fill each sheet row by row, and cue URLs are relative to the track.
+     *
+     * @param durationSeconds the duration of the video
+     * @param intervalSeconds the time between two thumbnails
+     * @param columns the tiles per sheet row
+     * @param rows the tile rows per sheet
+     * @param width the width of a tile in pixels
+     * @param height the height of a tile in pixels
+     * @return the track
+     */
+    public static String thumbnailTrack(double durationSeconds, int intervalSeconds, int columns, int rows, int width, int height) {
+        StringBuilder track = new StringBuilder("WEBVTT\n");
+        int count = thumbnailCount(durationSeconds, intervalSeconds);
+        int tilesPerSheet = columns * rows;
+
+        for (int i = 0; i < count; i++) {
+            double start = (double) i * intervalSeconds;
+            double end = Math.min(durationSeconds, start + intervalSeconds);
+            int tile = i % tilesPerSheet;
+
+            track.append('\n')
+                    .append(timestamp(start)).append(" --> ").append(timestamp(end)).append('\n')
+                    .append(String.format(SPRITE_PATTERN, i / tilesPerSheet + 1))
+                    .append("#xywh=").append((tile % columns) * width).append(',').append((tile / columns) * height)
+                    .append(',').append(width).append(',').append(height).append('\n');
+        }
+        return track.toString();
+    }
+
+    private static String timestamp(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d",
+                millis / 3_600_000, (millis / 60_000) % 60, (millis / 1000) % 60, millis % 1000);
+    }
+}
@@ -0,0 +1,44 @@
+package com.kujacic.courses.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the ffmpeg and ffprobe processes of transcoding and preview generation.
+ * A process writes its combined output to a log file, which is its result for probes and kept
+ * next to the package for diagnosis otherwise, and is killed once the deadline of its job has passed.
+ */
+public final class ProcessUtils {
+
+    private ProcessUtils() {
+    }
+
+    /**
+     * Runs a command to completion.
+     *
+     * @param command the executable and its arguments
+     * @param logFile receives the standard output and error of the process
+     * @param deadline when the job the process belongs to must be done
+     * @param step describes the process in error messages, e.g. "ffmpeg encoding rendition 720p"
+     * @throws IOException if the process cannot be started, runs past the deadline or exits with a non-zero code
+     * @throws InterruptedException if interrupted while waiting for the process
+     */
+    public static void run(List<String> command, Path logFile, Instant deadline, String step) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile())
+                .start();
+
+        if (!process.waitFor(Duration.between(Instant.now(), deadline).toMillis(), TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            throw new IOException(step + " timed out");
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException(step + " exited with code " + process.exitValue());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.kujacic.courses.utils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds the ffmpeg commands of the HLS ladder and the master playlist referencing its renditions.
+ * Renditions are H.264 Main profile with stereo AAC-LC audio, so their CODECS attribute only
+ * depends on the level signalled for the rendition height.
+ */
+public final class TranscodingUtils {
+
+    public static final int AUDIO_BITRATE_KBPS = 128;
+
+    // ffmpeg pattern of the segments of a rendition, numbered from 0
+    public static final String SEGMENT_PATTERN = "segment_%04d.ts";
+    public static final String FIRST_SEGMENT = "segment_0000.ts";
+    public static final String RENDITION_PLAYLIST = "index.m3u8";
+
+    private static final String AUDIO_CODEC = "mp4a.40.2";
+
+    /**
+     * One output quality of the HLS ladder.
+     */
+    public record Rendition(int height, int videoBitrateKbps) {
+        public String name() {
+            return height + "p";
+        }
+    }
+
+    /**
+     * A rendition as ffmpeg encoded it, with the frame size it produced for the source's aspect ratio.
+     */
+    public record EncodedRendition(Rendition rendition, int width, int height, boolean audio) {
+    }
+
+    private TranscodingUtils() {
+    }
+
+    /**
+     * Parses a ladder of comma separated height:bitrate pairs, e.g. "360:800,720:2800", ordered by height.
+     */
+    public static List<Rendition> parseRenditions(String renditions) {
+        return Arrays.stream(renditions.split(","))
+                .map(String::trim)
+                .map(rendition -> rendition.split(":"))
+                .map(parts -> new Rendition(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])))
+                .sorted(Comparator.comparingInt(Rendition::height))
+                .toList();
+    }
+
+    /**
+     * Builds the ffmpeg command encoding one rendition into HLS segments and its playlist.
+     * Keyframes are forced every segmentSeconds of presentation time, whatever the frame rate of
+     * the source, so every rendition can be cut at the same points and players can switch between them.
+     *
+     * @param ffmpegPath the ffmpeg executable
+     * @param source the local copy of the video
+     * @param renditionDirectory the directory receiving the segments and playlist
+     * @param rendition the rendition to encode
+     * @param segmentSeconds the target segment duration
+     * @return the command line
+     */
+    public static List<String> renditionCommand(String ffmpegPath, Path source, Path renditionDirectory,
+                                                Rendition rendition, int segmentSeconds) {
+        int bitrate = rendition.videoBitrateKbps();
+        int level = h264Level(rendition.height());
+
+        return List.of(
+                ffmpegPath, "-y", "-hide_banner",
+                "-i", source.toString(),
+                "-map", "0:v:0", "-map", "0:a:0?",
+                "-vf", "scale=-2:" + rendition.height(),
+                "-c:v", "libx264", "-preset", "veryfast", "-profile:v", "main", "-level:v", level / 10 + "." + level % 10,
+                "-b:v", bitrate + "k", "-maxrate", bitrate + "k", "-bufsize", (bitrate * 2) + "k",
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")", "-sc_threshold", "0",
+                "-c:a", "aac", "-b:a", AUDIO_BITRATE_KBPS + "k", "-ac", "2",
+                "-f", "hls",
+                "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_playlist_type", "vod",
+                "-hls_segment_filename", renditionDirectory.resolve(SEGMENT_PATTERN).toString(),
+                renditionDirectory.resolve(RENDITION_PLAYLIST).toString()
+        );
+    }
+
+    /**
+     * Builds the ffprobe command listing the streams of an encoded segment, one per line as
+     * "codec_type[,width,height]".
+     */
+    public static List<String> probeCommand(String ffprobePath, Path segment) {
+        return List.of(
+                ffprobePath, "-v", "error",
+                "-show_entries", "stream=codec_type,width,height",
+                "-of", "csv=p=0",
+                segment.toString()
+        );
+    }
+
+    /**
+     * Reads the output of the probe command into the encoded rendition.
+     *
+     * @throws IllegalArgumentException if the output has no video stream
+     */
+    public static EncodedRendition parseProbe(Rendition rendition, String probeOutput) {
+        int width = 0;
+        int height = 0;
+        boolean audio = false;
+
+        for (String line : probeOutput.split("\\R")) {
+            String[] fields = line.trim().split(",");
+            if (fields[0].equals("audio")) {
+                audio = true;
+            } else if (fields[0].equals("video") && fields.length >= 3 && width == 0) {
+                width = Integer.parseInt(fields[1]);
+                height = Integer.parseInt(fields[2]);
+            }
+        }
+
+        if (width == 0) {
+            throw new IllegalArgumentException("No video stream in rendition " + rendition.name());
+        }
+        return new EncodedRendition(rendition, width, height, audio);
+    }
+
+    /**
+     * Writes the master playlist listing every rendition with its peak bandwidth, frame size and codecs.
+     */
+    public static String masterPlaylist(List<EncodedRendition> renditions) {
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (EncodedRendition encoded : renditions) {
+            Rendition rendition = encoded.rendition();
+            long bandwidth = (rendition.videoBitrateKbps() + (encoded.audio() ? AUDIO_BITRATE_KBPS : 0)) * 1000L;
+
+            playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth)
+                    .append(",RESOLUTION=").append(encoded.width()).append('x').append(encoded.height())
+                    .append(",CODECS=\"").append(codecs(encoded)).append("\"\n")
+                    .append(rendition.name()).append('/').append(RENDITION_PLAYLIST).append('\n');
+        }
+        return playlist.toString();
+    }
+
+    /**
+     * RFC 6381 codecs of a rendition: avc1 with the Main profile, its constraint flags and the level.
+     */
+    public static String codecs(EncodedRendition encoded) {
+        String video = String.format("avc1.4d40%02x", h264Level(encoded.rendition().height()));
+        return encoded.audio() ? video + "," + AUDIO_CODEC : video;
+    }
+
+    /**
+     * Lowest H.264 level, times ten, that fits a 16:9 frame of the given height at up to 60 fps.
+     */
+    static int h264Level(int height) {
+        if (height <= 720) {
+            return 32;
+        }
+        if (height <= 1080) {
+            return 42;
+        }
+        return 52;
+    }
+}
@@ -0,0 +1,200 @@
+package com.kujacic.courses.utils;
+
+import com.kujacic.courses.exception.InvalidVideoException;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming validation of uploaded videos.
+ * The first kilobytes of an upload are sniffed for the magic bytes of the container its extension
+ * promises, and for mp4/mov the top-level box structure inside that window is walked as well.
+ * The returned stream replays the sniffed bytes and fails as soon as more than the allowed number
+ * of bytes has been read, so bad uploads are rejected before they are transferred to storage.
+ */
+public final class VideoContainerUtils {
+
+    private static final int SNIFF_BYTES = 4096;
+
+    private enum Container { ISO_BMFF, QUICKTIME, MATROSKA, AVI, FLV, ASF }
+
+    private static final Map<String, Container> CONTAINERS = Map.of(
+            "mp4", Container.ISO_BMFF,
+            "m4v", Container.ISO_BMFF,
+            "mov", Container.QUICKTIME,
+            "mkv", Container.MATROSKA,
+            "webm", Container.MATROSKA,
+            "avi", Container.AVI,
+            "flv", Container.FLV,
+            "wmv", Container.ASF
+    );
+
+    // Boxes a QuickTime file may start with when it was written without a leading ftyp
+    private static final Set<String> QUICKTIME_LEADING_BOXES = Set.of("ftyp", "moov", "mdat", "free", "skip", "wide", "pnot");
+
+    private static final byte[] EBML_MAGIC = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+    private static final byte[] ASF_HEADER_GUID = {
+            0x30, 0x26, (byte) 0xB2, 0x75, (byte) 0x8E, 0x66, (byte) 0xCF, 0x11,
+            (byte) 0xA6, (byte) 0xD9, 0x00, (byte) 0xAA, 0x00, 0x62, (byte) 0xCE, 0x6C
+    };
+
+    private VideoContainerUtils() {
+    }
+
+    /**
+     * Checks the start of an upload against the container of its extension.
+     *
+     * @param input the upload stream, positioned at the first byte of the video
+     * @param extension the file extension of the upload
+     * @param maxSize the maximum number of bytes the stream may deliver
+     * @return a stream delivering the complete upload, including the sniffed bytes
+     * @throws InvalidVideoException if the content does not match the container, or later while
+     *                               reading once the stream exceeds {@code maxSize}
+     * @throws IOException if reading the upload fails
+     */
+    public static InputStream validate(InputStream input, String extension, long maxSize) throws IOException {
+        Container container = CONTAINERS.get(extension.toLowerCase());
+        if (container == null) {
+            throw new InvalidVideoException("Unsupported video container: " + extension);
+        }
+
+        BufferedInputStream buffered = new BufferedInputStream(input, SNIFF_BYTES);
+        buffered.mark(SNIFF_BYTES);
+        byte[] header = buffered.readNBytes(SNIFF_BYTES);
+        buffered.reset();
+
+        if (!matches(container, header)) {
+            throw new InvalidVideoException("File content is not a valid " + extension + " video");
+        }
+
+        return new SizeLimitedInputStream(buffered, maxSize);
+    }
+
+    private static boolean matches(Container container, byte[] header) {
+        return switch (container) {
+            case ISO_BMFF -> "ftyp".equals(boxType(header, 0)) && hasValidBoxes(header);
+            case QUICKTIME -> QUICKTIME_LEADING_BOXES.contains(boxType(header, 0)) && hasValidBoxes(header);
+            case MATROSKA -> startsWith(header, EBML_MAGIC);
+            case AVI -> header.length >= 12 && ascii(header, 0, 4).equals("RIFF") && ascii(header, 8, 4).equals("AVI ");
+            case FLV -> header.length >= 4 && ascii(header, 0, 3).equals("FLV") && header[3] == 1;
+            case ASF -> startsWith(header, ASF_HEADER_GUID);
+        };
+    }
+
+    /**
+     * Walks the top-level boxes that start inside the sniffed window and checks their headers.
+     */
+    private static boolean hasValidBoxes(byte[] header) {
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        long position = 0;
+
+        while (position + 8 <= header.length) {
+            int offset = (int) position;
+            long size = Integer.toUnsignedLong(buffer.getInt(offset));
+            String type = boxType(header, offset);
+            int headerSize = 8;
+
+            if (type == null) {
+                return false;
+            }
+            if (size == 0) {
+                // The box extends to the end of the file
+                return true;
+            }
+            if (size == 1) {
+                if (position + 16 > header.length) {
+                    return true;
+                }
+                size = buffer.getLong(offset + 8);
+                headerSize = 16;
+            }
+            if (size < headerSize) {
+                return false;
+            }
+            if ("ftyp".equals(type) && size < 16) {
+                // ftyp holds at least the major brand and minor version
+                return false;
+            }
+            position += size;
+        }
+        return true;
+    }
+
+    private static String boxType(byte[] header, int offset) {
+        if (offset + 8 > header.length) {
+            return null;
+        }
+        for (int i = offset + 4; i < offset + 8; i++) {
+            if (header[i] < 0x20 || header[i] > 0x7E) {
+                return null;
+            }
+        }
+        return ascii(header, offset + 4, 4);
+    }
+
+    private static boolean startsWith(byte[] header, byte[] magic) {
+        return header.length >= magic.length && Arrays.equals(header, 0, magic.length, magic, 0, magic.length);
+    }
+
+    private static String ascii(byte[] header, int offset, int length) {
+        return new String(header, offset, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Fails the upload as soon as it delivers more bytes than allowed, instead of after it has been stored.
+     */
+    private static final class SizeLimitedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long count;
+
+        private SizeLimitedInputStream(InputStream input, long maxSize) {
+            super(input);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long bytes) {
+            count += bytes;
+            if (count > maxSize) {
+                throw new InvalidVideoException(String.format("Video exceeds the maximum allowed size of %d bytes", maxSize));
+            }
+        }
+    }
+}
@@ -6,7 +6,9 @@ import org.springframework.web.multipart.MultipartFile;
 public interface VideoUtils {
     String getFileExtension(String filename);
     VideoMetadata getVideoMetadata(String videoKey);
+    void evictVideoMetadata(String videoKey);
     boolean videoExists(String videoKey);
     void validateVideo(MultipartFile file);
+    void validateVideo(String filename, String contentType, long size);
     String extractFileName(String videoKey);
 }
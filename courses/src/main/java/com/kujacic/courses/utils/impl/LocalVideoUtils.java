@@ -1,10 +1,15 @@
 package com.kujacic.courses.utils.impl;
 
 
+import com.kujacic.courses.config.CacheConfig;
 import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.exception.InvalidUploadException;
+import com.kujacic.courses.exception.ResourceNotFoundException;
 import com.kujacic.courses.utils.VideoUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -13,8 +18,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.List;
+import java.time.Instant;
+import java.util.Set;
 
 /**
  * Local filesystem implementation of VideoUtils.
@@ -27,8 +32,9 @@ public class LocalVideoUtils implements VideoUtils {
     @Value("${video.storage.path:./videos}")
     private String videoStoragePath;
 
+    // Parsed once from the comma-separated property
     @Value("${video.upload.allowed-extensions}")
-    private String allowedExtensions;
+    private Set<String> allowedExtensions;
 
     @Value("${video.upload.max-file-size-mb}")
     private long maxFileSizeMb;
@@ -38,24 +44,27 @@ public class LocalVideoUtils implements VideoUtils {
      *
      * @param filename the filename
      * @return the file extension
-     * @throws IllegalArgumentException if filename is invalid
+     * @throws InvalidUploadException if filename is invalid
      */
     @Override
     public String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) {
-            throw new IllegalArgumentException("Invalid filename");
+            throw new InvalidUploadException("Invalid filename");
         }
         return filename.substring(filename.lastIndexOf(".") + 1);
     }
 
     /**
      * Retrieves metadata for a video file from local storage.
+     * Results are cached per video key until evicted or expired.
      *
      * @param videoKey the key/path of the video file
      * @return VideoMetadata containing file information
-     * @throws RuntimeException if video not found or error occurs
+     * @throws ResourceNotFoundException if video not found
+     * @throws RuntimeException if an error occurs
      */
     @Override
+    @Cacheable(cacheNames = CacheConfig.VIDEO_METADATA_CACHE, key = "#videoKey")
     public VideoMetadata getVideoMetadata(String videoKey) {
         try {
             Path videoPath = Paths.get(videoStoragePath, videoKey);
@@ -63,7 +72,7 @@ public class LocalVideoUtils implements VideoUtils {
 
             if (!videoFile.exists()) {
                 log.error("Video not found: {}", videoKey);
-                throw new RuntimeException("Video not found: " + videoKey);
+                throw new ResourceNotFoundException("Video not found: " + videoKey);
             }
 
             String contentType = Files.probeContentType(videoPath);
@@ -71,10 +80,14 @@ public class LocalVideoUtils implements VideoUtils {
                 contentType = "video/mp4";
             }
 
+            Instant lastModified = Files.getLastModifiedTime(videoPath).toInstant();
+
             return VideoMetadata.builder()
                     .contentLength(videoFile.length())
                     .contentType(contentType)
                     .fileName(extractFileName(videoKey))
+                    .etag(Long.toHexString(videoFile.length()) + "-" + Long.toHexString(lastModified.toEpochMilli()))
+                    .lastModified(lastModified)
                     .build();
 
         } catch (IOException e) {
@@ -83,6 +96,17 @@ public class LocalVideoUtils implements VideoUtils {
         }
     }
 
+    /**
+     * Drops the cached metadata of a video, e.g. after it has been re-uploaded.
+     *
+     * @param videoKey the key/path of the video file
+     */
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.VIDEO_METADATA_CACHE, key = "#videoKey")
+    public void evictVideoMetadata(String videoKey) {
+        log.debug("Evicted cached metadata for video: {}", videoKey);
+    }
+
     /**
      * Checks if a video exists in local storage.
      *
@@ -105,36 +129,46 @@ public class LocalVideoUtils implements VideoUtils {
      * Validates the uploaded video file.
      *
      * @param file the file to validate
-     * @throws IllegalArgumentException if validation fails
+     * @throws InvalidUploadException if validation fails
      */
     @Override
     public void validateVideo(MultipartFile file) {
         if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("File cannot be empty");
+            throw new InvalidUploadException("File cannot be empty");
         }
 
-        long fileSizeInMb = file.getSize() / (1024 * 1024);
+        validateVideo(file.getOriginalFilename(), file.getContentType(), file.getSize());
+    }
+
+    /**
+     * Validates a video by its declared name, content type and size,
+     * e.g. before a resumable upload is started.
+     *
+     * @param filename the original filename
+     * @param contentType the declared content type
+     * @param size the size of the file in bytes
+     * @throws InvalidUploadException if validation fails
+     */
+    @Override
+    public void validateVideo(String filename, String contentType, long size) {
+        long fileSizeInMb = size / (1024 * 1024);
         if (fileSizeInMb > maxFileSizeMb) {
-            throw new IllegalArgumentException(
+            throw new InvalidUploadException(
                     String.format("File size exceeds maximum allowed size of %d MB", maxFileSizeMb));
         }
 
-        String filename = file.getOriginalFilename();
         if (filename == null || filename.isEmpty()) {
-            throw new IllegalArgumentException("Filename cannot be empty");
+            throw new InvalidUploadException("Filename cannot be empty");
         }
 
         String fileExtension = getFileExtension(filename).toLowerCase();
-        List<String> allowedExtensionsList = Arrays.asList(allowedExtensions.split(","));
-
-        if (!allowedExtensionsList.contains(fileExtension)) {
-            throw new IllegalArgumentException(
-                    String.format("Invalid file type. Allowed types: %s", allowedExtensions));
+        if (!allowedExtensions.contains(fileExtension)) {
+            throw new InvalidUploadException(
+                    String.format("Invalid file type. Allowed types: %s", String.join(",", allowedExtensions)));
         }
 
-        String contentType = file.getContentType();
         if (contentType == null || !contentType.startsWith("video/")) {
-            throw new IllegalArgumentException("File must be a video");
+            throw new InvalidUploadException("File must be a video");
         }
     }
 
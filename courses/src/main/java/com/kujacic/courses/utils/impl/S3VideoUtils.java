@@ -1,10 +1,15 @@
 package com.kujacic.courses.utils.impl;
 
+import com.kujacic.courses.config.CacheConfig;
 import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.exception.InvalidUploadException;
+import com.kujacic.courses.exception.ResourceNotFoundException;
 import com.kujacic.courses.utils.VideoUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -13,8 +18,7 @@ import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.Set;
 
 @Component
 @Slf4j
@@ -26,8 +30,9 @@ public class S3VideoUtils implements VideoUtils {
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
 
+    // Parsed once from the comma-separated property
     @Value("${video.upload.allowed-extensions}")
-    private String allowedExtensions;
+    private Set<String> allowedExtensions;
 
     @Value("${video.upload.max-file-size-mb}")
     private long maxFileSizeMb;
@@ -35,12 +40,13 @@ public class S3VideoUtils implements VideoUtils {
     @Override
     public String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) {
-            throw new IllegalArgumentException("Invalid filename");
+            throw new InvalidUploadException("Invalid filename");
         }
         return filename.substring(filename.lastIndexOf(".") + 1);
     }
 
     @Override
+    @Cacheable(cacheNames = CacheConfig.VIDEO_METADATA_CACHE, key = "#videoKey")
     public VideoMetadata getVideoMetadata(String videoKey) {
         try {
             HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
@@ -54,17 +60,25 @@ public class S3VideoUtils implements VideoUtils {
                     .contentLength(headObjectResponse.contentLength())
                     .contentType(headObjectResponse.contentType())
                     .fileName(extractFileName(videoKey))
+                    .etag(headObjectResponse.eTag())
+                    .lastModified(headObjectResponse.lastModified())
                     .build();
 
         } catch (NoSuchKeyException e) {
             log.error("Video not found: {}", videoKey);
-            throw new RuntimeException("Video not found: " + videoKey);
+            throw new ResourceNotFoundException("Video not found: " + videoKey);
         } catch (S3Exception e) {
             log.error("Error fetching video metadata: {}", e.getMessage(), e);
             throw new RuntimeException("Error fetching video metadata");
         }
     }
 
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.VIDEO_METADATA_CACHE, key = "#videoKey")
+    public void evictVideoMetadata(String videoKey) {
+        log.debug("Evicted cached metadata for video: {}", videoKey);
+    }
+
     @Override
     public boolean videoExists(String videoKey) {
         try {
@@ -87,31 +101,32 @@ public class S3VideoUtils implements VideoUtils {
     @Override
     public void validateVideo(MultipartFile file) {
         if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("File cannot be empty");
+            throw new InvalidUploadException("File cannot be empty");
         }
 
-        long fileSizeInMb = file.getSize() / (1024 * 1024);
+        validateVideo(file.getOriginalFilename(), file.getContentType(), file.getSize());
+    }
+
+    @Override
+    public void validateVideo(String filename, String contentType, long size) {
+        long fileSizeInMb = size / (1024 * 1024);
         if (fileSizeInMb > maxFileSizeMb) {
-            throw new IllegalArgumentException(
+            throw new InvalidUploadException(
                     String.format("File size exceeds maximum allowed size of %d MB", maxFileSizeMb));
         }
 
-        String filename = file.getOriginalFilename();
         if (filename == null || filename.isEmpty()) {
-            throw new IllegalArgumentException("Filename cannot be empty");
+            throw new InvalidUploadException("Filename cannot be empty");
         }
 
         String fileExtension = getFileExtension(filename).toLowerCase();
-        List<String> allowedExtensionsList = Arrays.asList(allowedExtensions.split(","));
-
-        if (!allowedExtensionsList.contains(fileExtension)) {
-            throw new IllegalArgumentException(
-                    String.format("Invalid file type. Allowed types: %s", allowedExtensions));
+        if (!allowedExtensions.contains(fileExtension)) {
+            throw new InvalidUploadException(
+                    String.format("Invalid file type. Allowed types: %s", String.join(",", allowedExtensions)));
         }
 
-        String contentType = file.getContentType();
         if (contentType == null || !contentType.startsWith("video/")) {
-            throw new IllegalArgumentException("File must be a video");
+            throw new InvalidUploadException("File must be a video");
         }
     }
 
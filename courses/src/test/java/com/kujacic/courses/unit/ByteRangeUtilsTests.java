@@ -0,0 +1,126 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.utils.ByteRangeUtils;
+import com.kujacic.courses.utils.ByteRangeUtils.ByteRange;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteRangeUtilsTests {
+
+    private static final long CONTENT_LENGTH = 10_000;
+
+    @Test
+    void shouldResolveSingleRange() {
+        assertEquals(List.of(new ByteRange(0, 499)), ByteRangeUtils.resolve("bytes=0-499", CONTENT_LENGTH));
+    }
+
+    @Test
+    void shouldResolveSuffixRange() {
+        assertEquals(List.of(new ByteRange(9_500, 9_999)), ByteRangeUtils.resolve("bytes=-500", CONTENT_LENGTH));
+    }
+
+    @Test
+    void shouldClampSuffixRangeLongerThanVideo() {
+        assertEquals(List.of(new ByteRange(0, 9_999)), ByteRangeUtils.resolve("bytes=-20000", CONTENT_LENGTH));
+    }
+
+    @Test
+    void shouldResolveOpenEndedRange() {
+        assertEquals(List.of(new ByteRange(9_000, 9_999)), ByteRangeUtils.resolve("bytes=9000-", CONTENT_LENGTH));
+    }
+
+    @Test
+    void shouldCoalesceOverlappingAndAdjacentRanges() {
+        List<ByteRange> ranges = ByteRangeUtils.resolve("bytes=500-999,0-499,800-1200", CONTENT_LENGTH);
+
+        assertEquals(List.of(new ByteRange(0, 1_200)), ranges);
+    }
+
+    @Test
+    void shouldKeepDistantRangesSeparateAndSorted() {
+        List<ByteRange> ranges = ByteRangeUtils.resolve("bytes=-100,0-99", CONTENT_LENGTH);
+
+        assertEquals(List.of(new ByteRange(0, 99), new ByteRange(9_900, 9_999)), ranges);
+    }
+
+    @Test
+    void shouldDropUnsatisfiableRanges() {
+        assertEquals(List.of(new ByteRange(0, 9)), ByteRangeUtils.resolve("bytes=20000-30000,0-9", CONTENT_LENGTH));
+        assertTrue(ByteRangeUtils.resolve("bytes=20000-", CONTENT_LENGTH).isEmpty());
+    }
+
+    @Test
+    void shouldRejectMalformedHeader() {
+        assertThrows(IllegalArgumentException.class, () -> ByteRangeUtils.resolve("bytes=abc", CONTENT_LENGTH));
+    }
+
+    @Test
+    void shouldTellMalformedHeaderApart() {
+        assertTrue(ByteRangeUtils.isWellFormed("bytes=0-99,-500"));
+        assertTrue(ByteRangeUtils.isWellFormed("bytes=20000-"));
+        assertFalse(ByteRangeUtils.isWellFormed("bytes=abc"));
+        assertFalse(ByteRangeUtils.isWellFormed("items=0-99"));
+        assertFalse(ByteRangeUtils.isWellFormed(""));
+    }
+
+    @Test
+    void shouldReturnNotSatisfiableWhenNoRangeMatches() {
+        ResponseEntity<StreamingResponseBody> response = ByteRangeUtils.partialContent(
+                "bytes=20000-", CONTENT_LENGTH, "video/mp4", (outputStream, range) -> { });
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */10000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void shouldBuildSinglePartResponse() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = ByteRangeUtils.partialContent(
+                "bytes=-4", CONTENT_LENGTH, "video/mp4", ByteRangeUtilsTests::writeRange);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 9996-9999/10000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getHeaders().getContentLength());
+        assertEquals(4, body(response).length);
+    }
+
+    @Test
+    void shouldBuildMultipartResponseWithExactLength() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = ByteRangeUtils.partialContent(
+                "bytes=0-9,5000-5009", CONTENT_LENGTH, "video/mp4", ByteRangeUtilsTests::writeRange);
+
+        MediaType contentType = response.getHeaders().getContentType();
+        byte[] body = body(response);
+        String text = new String(body, StandardCharsets.US_ASCII);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertNotNull(contentType);
+        assertEquals("multipart", contentType.getType());
+        assertEquals("byteranges", contentType.getSubtype());
+        assertEquals(body.length, response.getHeaders().getContentLength());
+        assertTrue(text.contains("Content-Range: bytes 0-9/10000"));
+        assertTrue(text.contains("Content-Range: bytes 5000-5009/10000"));
+        assertTrue(text.endsWith("--" + contentType.getParameter("boundary") + "--\r\n"));
+    }
+
+    private static void writeRange(OutputStream outputStream, ByteRange range) throws IOException {
+        outputStream.write(new byte[(int) range.length()]);
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        response.getBody().writeTo(outputStream);
+        return outputStream.toByteArray();
+    }
+}
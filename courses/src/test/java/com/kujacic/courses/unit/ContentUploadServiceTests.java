@@ -0,0 +1,297 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.dto.content.ContentResponseDTO;
+import com.kujacic.courses.dto.upload.InitUploadRequest;
+import com.kujacic.courses.dto.upload.UploadSessionResponse;
+import com.kujacic.courses.exception.InvalidUploadException;
+import com.kujacic.courses.exception.InvalidVideoException;
+import com.kujacic.courses.exception.ResourceNotFoundException;
+import com.kujacic.courses.exception.UploadInProgressException;
+import com.kujacic.courses.exception.UploadOffsetMismatchException;
+import com.kujacic.courses.exception.VideoProcessingError;
+import com.kujacic.courses.model.CourseLevel;
+import com.kujacic.courses.model.UploadSession;
+import com.kujacic.courses.repository.UploadSessionRepository;
+import com.kujacic.courses.service.ContentUploadService;
+import com.kujacic.courses.service.CourseContentsService;
+import com.kujacic.courses.service.StorageService;
+import com.kujacic.courses.utils.VideoUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContentUploadServiceTests {
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private CourseContentsService courseContentsService;
+
+    @Mock
+    private StorageService videoService;
+
+    @Mock
+    private VideoUtils videoUtils;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private ContentUploadService contentUploadService;
+
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction.set(false);
+            }
+        });
+    }
+
+    @Test
+    void shouldInitUploadWithStorageUploadId() throws Exception {
+        InitUploadRequest request = new InitUploadRequest("lecture.mp4", "video/mp4", 1000L);
+        when(videoService.initUpload(any(UploadSession.class))).thenReturn("storage-upload-id");
+
+        UploadSessionResponse response = contentUploadService.initUpload(1L, request);
+
+        ArgumentCaptor<UploadSession> sessionCaptor = ArgumentCaptor.forClass(UploadSession.class);
+        verify(uploadSessionRepository).save(sessionCaptor.capture());
+        assertEquals("storage-upload-id", sessionCaptor.getValue().getStorageUploadId());
+        assertEquals(1L, sessionCaptor.getValue().getCourseLevelId());
+        assertEquals(sessionCaptor.getValue().getCreatedAt(), sessionCaptor.getValue().getLastActivityAt());
+        assertEquals(0L, response.getUploadedBytes());
+        assertEquals(1000L, response.getTotalSize());
+        verify(courseContentsService).findLevelWithoutContent(1L);
+        verify(videoUtils).validateVideo("lecture.mp4", "video/mp4", 1000L);
+    }
+
+    @Test
+    void shouldAppendChunkAtCurrentOffset() throws Exception {
+        UploadSession session = createSession(400L, 1000L, 1);
+        InputStream chunk = new ByteArrayInputStream(new byte[300]);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.claimChunk(eq(session.getId()), eq(400L), any(), any())).thenReturn(1);
+        when(uploadSessionRepository.commitChunk(eq(session.getId()), eq(400L), eq(700L), any())).thenReturn(1);
+
+        UploadSessionResponse response = contentUploadService.appendChunk(session.getId(), 400L, chunk, 300L);
+
+        InOrder order = inOrder(uploadSessionRepository, videoService);
+        order.verify(uploadSessionRepository).claimChunk(eq(session.getId()), eq(400L), any(), any());
+        order.verify(videoService).appendChunk(session, chunk, 300L);
+        order.verify(uploadSessionRepository).commitChunk(eq(session.getId()), eq(400L), eq(700L), any());
+        verify(uploadSessionRepository, never()).findByIdForUpdate(any());
+        assertEquals(700L, response.getUploadedBytes());
+        assertEquals(2, session.getPartCount());
+    }
+
+    @Test
+    void shouldRejectChunkWhoseOffsetIsClaimedByAnotherRequest() throws Exception {
+        UploadSession session = createSession(400L, 1000L, 1);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.claimChunk(eq(session.getId()), eq(400L), any(), any())).thenReturn(0);
+
+        assertThrows(UploadOffsetMismatchException.class, () ->
+                contentUploadService.appendChunk(session.getId(), 400L, new ByteArrayInputStream(new byte[300]), 300L));
+
+        verify(videoService, never()).appendChunk(any(), any(), anyLong());
+        verify(uploadSessionRepository, never()).commitChunk(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void shouldRejectChunkWithWrongOffset() throws Exception {
+        UploadSession session = createSession(400L, 1000L, 1);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+
+        UploadOffsetMismatchException exception = assertThrows(UploadOffsetMismatchException.class, () ->
+                contentUploadService.appendChunk(session.getId(), 100L, new ByteArrayInputStream(new byte[10]), 10L));
+
+        assertEquals(400L, exception.getExpectedOffset());
+        verify(videoService, never()).appendChunk(any(), any(), anyLong());
+        verify(uploadSessionRepository, never()).claimChunk(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    void shouldRejectFirstChunkThatIsNotAVideo() throws Exception {
+        UploadSession session = createSession(0L, 1000L, 0);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.claimChunk(eq(session.getId()), eq(0L), any(), any())).thenReturn(1);
+        when(videoUtils.getFileExtension("lecture.mp4")).thenReturn("mp4");
+
+        assertThrows(InvalidVideoException.class, () ->
+                contentUploadService.appendChunk(session.getId(), 0L, new ByteArrayInputStream(new byte[100]), 100L));
+
+        verify(videoService, never()).appendChunk(any(), any(), anyLong());
+        verify(uploadSessionRepository).releaseChunk(session.getId(), 0L);
+        verify(uploadSessionRepository, never()).commitChunk(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void shouldRejectChunkExceedingTotalSize() throws Exception {
+        UploadSession session = createSession(900L, 1000L, 3);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+
+        assertThrows(InvalidUploadException.class, () ->
+                contentUploadService.appendChunk(session.getId(), 900L, new ByteArrayInputStream(new byte[200]), 200L));
+
+        verify(videoService, never()).appendChunk(any(), any(), anyLong());
+    }
+
+    @Test
+    void shouldCompleteUploadAndSaveContent() throws Exception {
+        UploadSession session = createSession(1000L, 1000L, 2);
+        CourseLevel courseLevel = CourseLevel.builder().id(1L).build();
+        ContentResponseDTO content = ContentResponseDTO.builder().id(session.getId().toString()).courseLevelId(1L).url("url").build();
+
+        when(uploadSessionRepository.findByIdForUpdate(session.getId())).thenReturn(Optional.of(session));
+        when(courseContentsService.findLevelWithoutContent(1L)).thenReturn(courseLevel);
+        when(videoService.completeUpload(session)).thenReturn("url");
+        when(courseContentsService.saveContent(session.getId(), courseLevel, "url")).thenReturn(content);
+
+        ContentResponseDTO response = contentUploadService.completeUpload(session.getId());
+
+        assertEquals(content, response);
+        assertNotNull(session.getFinalizingSince());
+        verify(uploadSessionRepository).deleteById(session.getId());
+    }
+
+    @Test
+    void shouldCompleteUploadInStorageOutsideTransaction() throws Exception {
+        UploadSession session = createSession(1000L, 1000L, 2);
+        CourseLevel courseLevel = CourseLevel.builder().id(1L).build();
+
+        when(uploadSessionRepository.findByIdForUpdate(session.getId())).thenReturn(Optional.of(session));
+        when(courseContentsService.findLevelWithoutContent(1L)).thenReturn(courseLevel);
+        when(videoService.completeUpload(session)).thenAnswer(invocation -> {
+            assertFalse(inTransaction.get());
+            return "url";
+        });
+
+        contentUploadService.completeUpload(session.getId());
+
+        InOrder order = inOrder(transactionTemplate, videoService, courseContentsService, uploadSessionRepository);
+        order.verify(transactionTemplate).execute(any());
+        order.verify(videoService).completeUpload(session);
+        order.verify(transactionTemplate).execute(any());
+        order.verify(courseContentsService).saveContent(session.getId(), courseLevel, "url");
+        order.verify(uploadSessionRepository).deleteById(session.getId());
+    }
+
+    @Test
+    void shouldReleaseUploadWhenStorageCannotComplete() throws Exception {
+        UploadSession session = createSession(1000L, 1000L, 2);
+        when(uploadSessionRepository.findByIdForUpdate(session.getId())).thenReturn(Optional.of(session));
+        when(videoService.completeUpload(session)).thenThrow(S3Exception.builder().message("Slow down").statusCode(503).build());
+
+        assertThrows(VideoProcessingError.class, () -> contentUploadService.completeUpload(session.getId()));
+
+        verify(uploadSessionRepository).releaseFinalization(List.of(session.getId()));
+        verify(courseContentsService, never()).saveContent(any(), any(), any());
+        verify(uploadSessionRepository, never()).deleteById(any());
+    }
+
+    @Test
+    void shouldRefuseUploadBeingCompletedByAnotherRequest() throws Exception {
+        UploadSession session = createSession(1000L, 1000L, 2);
+        session.setFinalizingSince(LocalDateTime.now().minusMinutes(1));
+        when(uploadSessionRepository.findByIdForUpdate(session.getId())).thenReturn(Optional.of(session));
+
+        assertThrows(UploadInProgressException.class, () -> contentUploadService.completeUpload(session.getId()));
+        assertThrows(UploadInProgressException.class, () -> contentUploadService.abortUpload(session.getId()));
+
+        verify(videoService, never()).completeUpload(any());
+        verify(videoService, never()).abortUpload(any());
+    }
+
+    @Test
+    void shouldNotCompleteUnfinishedUpload() throws Exception {
+        UploadSession session = createSession(500L, 1000L, 1);
+        when(uploadSessionRepository.findByIdForUpdate(session.getId())).thenReturn(Optional.of(session));
+
+        assertThrows(UploadOffsetMismatchException.class, () -> contentUploadService.completeUpload(session.getId()));
+
+        verify(videoService, never()).completeUpload(any());
+    }
+
+    @Test
+    void shouldReportStorageRuntimeFailureAsProcessingError() throws Exception {
+        UploadSession session = createSession(400L, 1000L, 1);
+        InputStream chunk = new ByteArrayInputStream(new byte[300]);
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.claimChunk(eq(session.getId()), eq(400L), any(), any())).thenReturn(1);
+        doThrow(S3Exception.builder().message("Slow down").statusCode(503).build())
+                .when(videoService).appendChunk(session, chunk, 300L);
+
+        assertThrows(VideoProcessingError.class, () -> contentUploadService.appendChunk(session.getId(), 400L, chunk, 300L));
+
+        verify(uploadSessionRepository).releaseChunk(session.getId(), 400L);
+        verify(uploadSessionRepository, never()).commitChunk(any(), anyLong(), anyLong(), any());
+        assertEquals(400L, session.getUploadedBytes());
+    }
+
+    @Test
+    void shouldAbortMarkedUploadOutsideTransaction() {
+        UploadSession session = createSession(400L, 1000L, 1);
+        when(uploadSessionRepository.findByIdForUpdate(session.getId())).thenReturn(Optional.of(session));
+        doAnswer(invocation -> {
+            assertFalse(inTransaction.get());
+            return null;
+        }).when(videoService).abortUpload(session);
+
+        contentUploadService.abortUpload(session.getId());
+
+        assertNotNull(session.getFinalizingSince());
+        verify(videoService).abortUpload(session);
+        verify(uploadSessionRepository).deleteById(session.getId());
+    }
+
+    @Test
+    void shouldThrowWhenUploadNotFound() {
+        UUID uploadId = UUID.randomUUID();
+        when(uploadSessionRepository.findById(uploadId)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> contentUploadService.getUpload(uploadId));
+    }
+
+    private UploadSession createSession(Long uploadedBytes, Long totalSize, Integer partCount) {
+        return UploadSession.builder()
+                .id(UUID.randomUUID())
+                .courseLevelId(1L)
+                .fileName("lecture.mp4")
+                .contentType("video/mp4")
+                .totalSize(totalSize)
+                .uploadedBytes(uploadedBytes)
+                .partCount(partCount)
+                .storageUploadId("storage-upload-id")
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
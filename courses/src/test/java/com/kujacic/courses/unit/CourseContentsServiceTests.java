@@ -0,0 +1,111 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.dto.content.ContentResponseDTO;
+import com.kujacic.courses.model.CourseContent;
+import com.kujacic.courses.model.CourseLevel;
+import com.kujacic.courses.repository.CourseContentRepository;
+import com.kujacic.courses.repository.CourseLevelsRepository;
+import com.kujacic.courses.service.CourseContentsService;
+import com.kujacic.courses.service.CoursePublisher;
+import com.kujacic.courses.service.StorageService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CourseContentsServiceTests {
+
+    @Mock
+    private CourseContentRepository courseContentRepository;
+
+    @Mock
+    private CourseLevelsRepository courseLevelsRepository;
+
+    @Mock
+    private StorageService videoService;
+
+    @Mock
+    private CoursePublisher coursePublisher;
+
+    @InjectMocks
+    private CourseContentsService courseContentsService;
+
+    // SHA-256 of the file's content "video"
+    private static final String FILE_HASH = "0cab1c9617404faf2b24e221e189ca5945813e14d3f766345b09ca13bbe28ffc";
+
+    private final MockMultipartFile file = new MockMultipartFile("file", "lesson.mp4", "video/mp4", "video".getBytes());
+
+    @Test
+    void shouldStoreNewVideoUnderItsContentHash() throws Exception {
+        CourseLevel courseLevel = courseLevel();
+        when(courseContentRepository.existByCourseLevelId(1L)).thenReturn(false);
+        when(courseLevelsRepository.findById(1L)).thenReturn(Optional.of(courseLevel));
+        when(courseContentRepository.findFirstByContentHash(FILE_HASH)).thenReturn(Optional.empty());
+        when(videoService.uploadVideo(FILE_HASH, file)).thenReturn("stored-url");
+        when(courseContentRepository.save(any(CourseContent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ContentResponseDTO response = courseContentsService.createContent(1L, file).get();
+
+        assertEquals("stored-url", response.getUrl());
+
+        ArgumentCaptor<CourseContent> saved = ArgumentCaptor.forClass(CourseContent.class);
+        verify(courseContentRepository).save(saved.capture());
+        assertEquals(FILE_HASH, saved.getValue().getContentHash());
+        assertEquals(saved.getValue().getId().toString(), response.getId());
+    }
+
+    @Test
+    void shouldReferenceStoredVideoInsteadOfUploadingDuplicate() throws Exception {
+        CourseLevel courseLevel = courseLevel();
+        CourseContent stored = CourseContent.builder().url("stored-url").contentHash("hash").build();
+        when(courseContentRepository.existByCourseLevelId(1L)).thenReturn(false);
+        when(courseLevelsRepository.findById(1L)).thenReturn(Optional.of(courseLevel));
+        when(courseContentRepository.findFirstByContentHash(anyString())).thenReturn(Optional.of(stored));
+        when(courseContentRepository.save(any(CourseContent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ContentResponseDTO response = courseContentsService.createContent(1L, file).get();
+
+        verify(videoService, never()).uploadVideo(anyString(), any());
+        assertEquals("stored-url", response.getUrl());
+        verify(coursePublisher).videoTranscodePublisher(response.getId());
+    }
+
+    @Test
+    void shouldResolveContentIdToContentHash() {
+        UUID contentId = UUID.randomUUID();
+        when(courseContentRepository.findContentHashById(contentId)).thenReturn(Optional.of(FILE_HASH));
+
+        assertEquals(FILE_HASH, courseContentsService.resolveVideoKey(contentId.toString()));
+    }
+
+    @Test
+    void shouldKeepIdOfContentWithoutHash() {
+        UUID contentId = UUID.randomUUID();
+        when(courseContentRepository.findContentHashById(contentId)).thenReturn(Optional.empty());
+
+        assertEquals(contentId.toString(), courseContentsService.resolveVideoKey(contentId.toString()));
+    }
+
+    @Test
+    void shouldUseHashAsItsOwnKey() {
+        assertEquals(FILE_HASH, courseContentsService.resolveVideoKey(FILE_HASH));
+        verifyNoInteractions(courseContentRepository);
+    }
+
+    private static CourseLevel courseLevel() {
+        CourseLevel courseLevel = new CourseLevel();
+        courseLevel.setId(1L);
+        return courseLevel;
+    }
+}
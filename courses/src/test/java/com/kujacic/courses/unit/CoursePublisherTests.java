@@ -1,20 +1,31 @@
 package com.kujacic.courses.unit;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kujacic.courses.dto.course.CourseResponseDTO;
 import com.kujacic.courses.dto.rabbitmq.CourseCertificateIssuedEvent;
 import com.kujacic.courses.dto.rabbitmq.CourseLevelPassEvent;
+import com.kujacic.courses.dto.rabbitmq.VideoTranscodeEvent;
+import com.kujacic.courses.model.OutboxEvent;
+import com.kujacic.courses.repository.OutboxEventRepository;
 import com.kujacic.courses.service.CoursePublisher;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.MDC;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -28,9 +39,20 @@ class CoursePublisherTests {
     @Mock
     private RabbitTemplate rabbitTemplate;
 
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
     @InjectMocks
     private CoursePublisher coursePublisher;
 
+    @BeforeEach
+    void setUp() {
+        lenient().when(rabbitTemplate.getMessageConverter()).thenReturn(new Jackson2JsonMessageConverter());
+    }
+
     @AfterEach
     void cleanup() {
         MDC.clear();
@@ -120,7 +142,7 @@ class CoursePublisherTests {
     }
 
     @Test
-    void shouldPublishCourseLevelWithCorrectExchangeAndRoutingKey() {
+    void shouldPublishCourseLevelWithCorrectExchangeAndRoutingKey() throws Exception {
         Integer courseId = 1;
         Long levelId = 10L;
         String userId = "user123";
@@ -129,16 +151,13 @@ class CoursePublisherTests {
 
         coursePublisher.courseLevelPublisher(courseId, levelId, userId, progress, courseName);
 
-        ArgumentCaptor<CourseLevelPassEvent> eventCaptor = ArgumentCaptor.forClass(CourseLevelPassEvent.class);
+        OutboxEvent outboxEvent = captureOutboxEvent();
+        assertEquals("course-exchange", outboxEvent.getExchange());
+        assertEquals("course-level.passed", outboxEvent.getRoutingKey());
+        assertEquals("application/json", outboxEvent.getContentType());
+        assertNotNull(outboxEvent.getCreatedAt());
 
-        verify(rabbitTemplate).convertAndSend(
-                eq("course-exchange"),
-                eq("course-level.passed"),
-                eventCaptor.capture(),
-                any(MessagePostProcessor.class)
-        );
-
-        CourseLevelPassEvent capturedEvent = eventCaptor.getValue();
+        CourseLevelPassEvent capturedEvent = readPayload(outboxEvent);
         assertEquals(courseId, capturedEvent.getCourseId());
         assertEquals(levelId, capturedEvent.getLevelId());
         assertEquals(userId, capturedEvent.getUserId());
@@ -146,6 +165,14 @@ class CoursePublisherTests {
         assertEquals(courseName, capturedEvent.getCourseName());
     }
 
+    @Test
+    void shouldNotSendCourseLevelEventToBrokerDirectly() {
+        coursePublisher.courseLevelPublisher(1, 10L, "user123", 50, "Spring Boot");
+
+        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), any(), any(MessagePostProcessor.class));
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(), any());
+    }
+
     @Test
     void shouldSetMDCValuesForCourseLevelPublisher() {
         AtomicReference<String> capturedCorrelationId = new AtomicReference<>();
@@ -154,8 +181,8 @@ class CoursePublisherTests {
         doAnswer(invocation -> {
             capturedCorrelationId.set(MDC.get("correlationId"));
             capturedLevelId.set(MDC.get("levelId"));
-            return null;
-        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(), any(MessagePostProcessor.class));
+            return invocation.getArgument(0);
+        }).when(outboxEventRepository).save(any(OutboxEvent.class));
 
         coursePublisher.courseLevelPublisher(1, 10L, "user123", 50, "Spring Boot");
 
@@ -163,6 +190,7 @@ class CoursePublisherTests {
         assertEquals(36, capturedCorrelationId.get().length());
         assertDoesNotThrow(() -> UUID.fromString(capturedCorrelationId.get()));
         assertEquals("10", capturedLevelId.get());
+        assertEquals(capturedCorrelationId.get(), captureOutboxEvent().getCorrelationId());
     }
 
     @Test
@@ -175,8 +203,8 @@ class CoursePublisherTests {
 
     @Test
     void shouldClearMDCEvenWhenCourseLevelPublishFails() {
-        doThrow(new RuntimeException("RabbitMQ connection failed"))
-                .when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(), any(MessagePostProcessor.class));
+        doThrow(new RuntimeException("Database unavailable"))
+                .when(outboxEventRepository).save(any(OutboxEvent.class));
 
         assertThrows(RuntimeException.class, () -> {
             coursePublisher.courseLevelPublisher(1, 10L, "user123", 50, "Spring Boot");
@@ -187,7 +215,7 @@ class CoursePublisherTests {
     }
 
     @Test
-    void shouldBuildCourseLevelPassEventCorrectly() {
+    void shouldBuildCourseLevelPassEventCorrectly() throws Exception {
         Integer courseId = 5;
         Long levelId = 20L;
         String userId = "user456";
@@ -196,16 +224,12 @@ class CoursePublisherTests {
 
         coursePublisher.courseLevelPublisher(courseId, levelId, userId, progress, courseName);
 
-        ArgumentCaptor<CourseLevelPassEvent> eventCaptor = ArgumentCaptor.forClass(CourseLevelPassEvent.class);
-
-        verify(rabbitTemplate).convertAndSend(
-                anyString(),
-                anyString(),
-                eventCaptor.capture(),
-                any(MessagePostProcessor.class)
-        );
+        String payload = captureOutboxEvent().getPayload();
+        Map<String, Object> fields = objectMapper.readValue(payload, new TypeReference<Map<String, Object>>() {
+        });
+        assertEquals(Set.of("userId", "courseId", "levelId", "progress", "courseName"), fields.keySet());
 
-        CourseLevelPassEvent event = eventCaptor.getValue();
+        CourseLevelPassEvent event = objectMapper.readValue(payload, CourseLevelPassEvent.class);
         assertEquals(courseId, event.getCourseId());
         assertEquals(levelId, event.getLevelId());
         assertEquals(userId, event.getUserId());
@@ -214,69 +238,37 @@ class CoursePublisherTests {
     }
 
     @Test
-    void shouldSetLevelIdHeaderForCourseLevelMessage() {
+    void shouldSetLevelIdHeaderForCourseLevelMessage() throws Exception {
         Long levelId = 15L;
 
         coursePublisher.courseLevelPublisher(1, levelId, "user123", 75, "Test Course");
 
-        ArgumentCaptor<MessagePostProcessor> processorCaptor = ArgumentCaptor.forClass(MessagePostProcessor.class);
-
-        verify(rabbitTemplate).convertAndSend(
-                anyString(),
-                anyString(),
-                any(),
-                processorCaptor.capture()
-        );
-
-        assertNotNull(processorCaptor.getValue());
+        Map<String, Object> headers = objectMapper.readValue(captureOutboxEvent().getHeaders(), new TypeReference<Map<String, Object>>() {
+        });
+        assertEquals(15, ((Number) headers.get("levelId")).intValue());
+        assertEquals("user123", headers.get("userId"));
+        assertEquals(CourseLevelPassEvent.class.getName(), headers.get("__TypeId__"));
     }
 
     @Test
-    void shouldPublishCourseLevelWithZeroProgress() {
+    void shouldPublishCourseLevelWithZeroProgress() throws Exception {
         coursePublisher.courseLevelPublisher(1, 1L, "user123", 0, "Beginner Course");
 
-        ArgumentCaptor<CourseLevelPassEvent> eventCaptor = ArgumentCaptor.forClass(CourseLevelPassEvent.class);
-
-        verify(rabbitTemplate).convertAndSend(
-                anyString(),
-                anyString(),
-                eventCaptor.capture(),
-                any(MessagePostProcessor.class)
-        );
-
-        assertEquals(0, eventCaptor.getValue().getProgress());
+        assertEquals(0, readPayload(captureOutboxEvent()).getProgress());
     }
 
     @Test
-    void shouldPublishCourseLevelWithMaxProgress() {
+    void shouldPublishCourseLevelWithMaxProgress() throws Exception {
         coursePublisher.courseLevelPublisher(1, 1L, "user123", 100, "Completed Course");
 
-        ArgumentCaptor<CourseLevelPassEvent> eventCaptor = ArgumentCaptor.forClass(CourseLevelPassEvent.class);
-
-        verify(rabbitTemplate).convertAndSend(
-                anyString(),
-                anyString(),
-                eventCaptor.capture(),
-                any(MessagePostProcessor.class)
-        );
-
-        assertEquals(100, eventCaptor.getValue().getProgress());
+        assertEquals(100, readPayload(captureOutboxEvent()).getProgress());
     }
 
     @Test
-    void shouldHandleNullCourseName() {
+    void shouldHandleNullCourseName() throws Exception {
         coursePublisher.courseLevelPublisher(1, 1L, "user123", 50, null);
 
-        ArgumentCaptor<CourseLevelPassEvent> eventCaptor = ArgumentCaptor.forClass(CourseLevelPassEvent.class);
-
-        verify(rabbitTemplate).convertAndSend(
-                anyString(),
-                anyString(),
-                eventCaptor.capture(),
-                any(MessagePostProcessor.class)
-        );
-
-        assertNull(eventCaptor.getValue().getCourseName());
+        assertNull(readPayload(captureOutboxEvent()).getCourseName());
     }
 
     @Test
@@ -303,12 +295,7 @@ class CoursePublisherTests {
         coursePublisher.courseLevelPublisher(2, 2L, "user2", 50, "Course B");
         coursePublisher.courseLevelPublisher(3, 3L, "user3", 75, "Course C");
 
-        verify(rabbitTemplate, times(3)).convertAndSend(
-                eq("course-exchange"),
-                eq("course-level.passed"),
-                any(CourseLevelPassEvent.class),
-                any(MessagePostProcessor.class)
-        );
+        verify(outboxEventRepository, times(3)).save(any(OutboxEvent.class));
     }
 
     @Test
@@ -336,24 +323,39 @@ class CoursePublisherTests {
 
     @Test
     void shouldGenerateUniqueCorrelationIdsForCourseLevels() {
-        AtomicReference<String> correlationId1 = new AtomicReference<>();
-        AtomicReference<String> correlationId2 = new AtomicReference<>();
-
-        doAnswer(invocation -> {
-            if (correlationId1.get() == null) {
-                correlationId1.set(MDC.get("correlationId"));
-            } else {
-                correlationId2.set(MDC.get("correlationId"));
-            }
-            return null;
-        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(), any(MessagePostProcessor.class));
-
         coursePublisher.courseLevelPublisher(1, 1L, "user123", 50, "Course");
         coursePublisher.courseLevelPublisher(1, 2L, "user123", 75, "Course");
 
-        assertNotNull(correlationId1.get());
-        assertNotNull(correlationId2.get());
-        assertNotEquals(correlationId1.get(), correlationId2.get());
+        ArgumentCaptor<OutboxEvent> eventCaptor = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxEventRepository, times(2)).save(eventCaptor.capture());
+
+        List<OutboxEvent> events = eventCaptor.getAllValues();
+        assertNotNull(events.get(0).getCorrelationId());
+        assertNotEquals(events.get(0).getCorrelationId(), events.get(1).getCorrelationId());
+    }
+
+    @Test
+    void shouldRecordVideoTranscodeRequestInOutbox() throws Exception {
+        coursePublisher.videoTranscodePublisher("content-1");
+
+        OutboxEvent outboxEvent = captureOutboxEvent();
+        assertEquals("course-exchange", outboxEvent.getExchange());
+        assertEquals("video-transcode.requested", outboxEvent.getRoutingKey());
+        assertNotNull(outboxEvent.getCorrelationId());
+        assertEquals("content-1", objectMapper.readValue(outboxEvent.getPayload(), VideoTranscodeEvent.class).getContentId());
+
+        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), any(), any(MessagePostProcessor.class));
+        assertNull(MDC.get("contentId"));
+    }
+
+    private OutboxEvent captureOutboxEvent() {
+        ArgumentCaptor<OutboxEvent> eventCaptor = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxEventRepository).save(eventCaptor.capture());
+        return eventCaptor.getValue();
+    }
+
+    private CourseLevelPassEvent readPayload(OutboxEvent outboxEvent) throws Exception {
+        return objectMapper.readValue(outboxEvent.getPayload(), CourseLevelPassEvent.class);
     }
 
     private CourseCertificateIssuedEvent createCertificateEvent() {
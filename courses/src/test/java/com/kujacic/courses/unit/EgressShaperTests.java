@@ -0,0 +1,46 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.service.impl.EgressShaper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EgressShaperTests {
+
+    @Test
+    void shouldLeaveBodyUntouchedWithoutLimits() {
+        EgressShaper shaper = new EgressShaper(new SimpleMeterRegistry(), 0, 0, 2);
+        StreamingResponseBody body = outputStream -> { };
+
+        assertSame(body, shaper.shape(body, "viewer-1"));
+    }
+
+    @Test
+    void shouldWriteAllBytesWithinBurst() throws Exception {
+        // 8 Mbit/s with a 2 second burst lets 2 MB through without waiting
+        EgressShaper shaper = new EgressShaper(new SimpleMeterRegistry(), 0, 8, 2);
+        byte[] data = new byte[200 * 1024];
+        data[data.length - 1] = 7;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        shaper.shape(outputStream -> outputStream.write(data), "viewer-1").writeTo(output);
+
+        assertArrayEquals(data, output.toByteArray());
+    }
+
+    @Test
+    void shouldThrottleViewerBeyondBurst() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // 8 Mbit/s is 1 MB/s, so 1 MB beyond a 1 second burst waits about a second
+        EgressShaper shaper = new EgressShaper(meterRegistry, 0, 8, 1);
+        byte[] data = new byte[2_000_000];
+
+        shaper.shape(outputStream -> outputStream.write(data), "viewer-1").writeTo(new ByteArrayOutputStream());
+
+        assertTrue(meterRegistry.counter("video.egress.throttled").count() > 0.5);
+    }
+}
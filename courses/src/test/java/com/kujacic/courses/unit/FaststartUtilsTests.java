@@ -0,0 +1,114 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.utils.FaststartUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FaststartUtilsTests {
+
+    private static final int FTYP_SIZE = 24;
+    private static final int MDAT_SIZE = 1000;
+
+    @Test
+    void shouldMoveTrailingMoovInFrontOfMdatAndShiftChunkOffsets() throws Exception {
+        byte[] moov = moov(FTYP_SIZE + 8);
+        byte[] video = concat(box("ftyp", FTYP_SIZE), box("mdat", MDAT_SIZE), moov);
+
+        byte[] rewritten = rewrite(video, "mp4").readAllBytes();
+
+        assertEquals(video.length, rewritten.length);
+        assertEquals("ftyp", type(rewritten, 0));
+        assertEquals("moov", type(rewritten, FTYP_SIZE));
+        assertEquals("mdat", type(rewritten, FTYP_SIZE + moov.length));
+        // The chunk still points at the first byte of the media data, which now follows moov
+        assertEquals(FTYP_SIZE + moov.length + 8, ByteBuffer.wrap(rewritten).getInt(FTYP_SIZE + moov.length - 4));
+    }
+
+    @Test
+    void shouldLeaveFaststartFileUntouched() throws Exception {
+        byte[] video = concat(box("ftyp", FTYP_SIZE), moov(0), box("mdat", MDAT_SIZE));
+        InputStream original = new ByteArrayInputStream(video);
+
+        assertSame(original, FaststartUtils.faststart(new ByteArrayResource(video), original, "mp4"));
+    }
+
+    @Test
+    void shouldLeaveFragmentedFileUntouched() throws Exception {
+        byte[] video = concat(box("ftyp", FTYP_SIZE), box("moof", 64), box("mdat", MDAT_SIZE), moov(0));
+        InputStream original = new ByteArrayInputStream(video);
+
+        assertSame(original, FaststartUtils.faststart(new ByteArrayResource(video), original, "mp4"));
+    }
+
+    @Test
+    void shouldIgnoreOtherContainers() throws Exception {
+        byte[] video = concat(box("ftyp", FTYP_SIZE), box("mdat", MDAT_SIZE), moov(FTYP_SIZE + 8));
+        InputStream original = new ByteArrayInputStream(video);
+
+        assertSame(original, FaststartUtils.faststart(new ByteArrayResource(video), original, "mkv"));
+    }
+
+    @Test
+    void shouldKeepBoxesAfterMoovInPlace() throws Exception {
+        byte[] moov = moov(FTYP_SIZE + 8);
+        byte[] free = box("free", 40);
+        byte[] video = concat(box("ftyp", FTYP_SIZE), box("mdat", MDAT_SIZE), moov, free);
+
+        byte[] rewritten = rewrite(video, "MOV").readAllBytes();
+
+        assertEquals("free", type(rewritten, video.length - free.length));
+    }
+
+    private static InputStream rewrite(byte[] video, String extension) throws Exception {
+        return FaststartUtils.faststart(new ByteArrayResource(video), new ByteArrayInputStream(video), extension);
+    }
+
+    /**
+     * A moov box with a single track whose stco table points at the given offset, as its last four bytes.
+     */
+    private static byte[] moov(int chunkOffset) {
+        ByteBuffer stco = ByteBuffer.allocate(20);
+        stco.putInt(20).put(ascii("stco")).putInt(0).putInt(1).putInt(chunkOffset);
+        byte[] stbl = wrap("stbl", stco.array());
+        byte[] minf = wrap("minf", stbl);
+        byte[] mdia = wrap("mdia", minf);
+        byte[] trak = wrap("trak", mdia);
+        return wrap("moov", concat(box("mvhd", 16), trak));
+    }
+
+    private static byte[] wrap(String type, byte[] children) {
+        ByteBuffer box = ByteBuffer.allocate(children.length + 8);
+        box.putInt(children.length + 8).put(ascii(type)).put(children);
+        return box.array();
+    }
+
+    private static byte[] box(String type, int size) {
+        ByteBuffer box = ByteBuffer.allocate(size);
+        box.putInt(size).put(ascii(type));
+        return box.array();
+    }
+
+    private static String type(byte[] data, int offset) {
+        return new String(data, offset + 4, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.writeBytes(part);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,295 @@
+package com.kujacic.courses.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kujacic.courses.model.OutboxEvent;
+import com.kujacic.courses.repository.OutboxEventRepository;
+import com.kujacic.courses.service.OutboxRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTests {
+
+    private static final int BATCH_SIZE = 2;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private OutboxRelay outboxRelay;
+
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        outboxRelay = new OutboxRelay(outboxEventRepository, rabbitTemplate, new ObjectMapper(), transactionTemplate,
+                new SimpleMeterRegistry(), BATCH_SIZE, 50, MAX_ATTEMPTS);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction.set(false);
+            }
+        });
+        lenient().doAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+                return null;
+            } finally {
+                inTransaction.set(false);
+            }
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void shouldDeleteConfirmedEventsAndContinueAfterFullBatch() {
+        OutboxEvent first = createOutboxEvent(1L);
+        OutboxEvent second = createOutboxEvent(2L);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(first, second))
+                .thenReturn(List.of());
+        confirmAll(true);
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, times(2)).findBatchForRelay(any(LocalDateTime.class), any(Pageable.class));
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        assertEquals(0, first.getAttempts());
+        assertEquals(0, second.getAttempts());
+    }
+
+    @Test
+    void shouldPublishWholeBatchBeforeWaitingForConfirms() {
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(createOutboxEvent(1L), createOutboxEvent(2L)))
+                .thenReturn(List.of());
+
+        List<CorrelationData> sent = new ArrayList<>();
+        doAnswer(invocation -> {
+            // The first confirm only arrives once the second message was sent
+            sent.add(invocation.getArgument(3));
+            if (sent.size() == 2) {
+                sent.forEach(correlationData -> correlationData.getFuture().complete(new CorrelationData.Confirm(true, null)));
+            }
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        outboxRelay.relay();
+
+        verify(rabbitTemplate, times(2)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        verify(outboxEventRepository).deleteAllByIdInBatch(argThat(ids -> ((List<?>) ids).size() == 2));
+    }
+
+    @Test
+    void shouldClaimBatchWithoutHoldingTransactionWhileAwaitingConfirms() {
+        OutboxEvent event = createOutboxEvent(1L);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(event));
+
+        doAnswer(invocation -> {
+            assertFalse(inTransaction.get());
+            assertNotNull(event.getRelayingSince());
+            CorrelationData correlationData = invocation.getArgument(3);
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L));
+    }
+
+    @Test
+    void shouldKeepNackedEventsAndCountAttempt() {
+        OutboxEvent acked = createOutboxEvent(1L);
+        OutboxEvent nacked = createOutboxEvent(2L);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(acked, nacked));
+
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            boolean ack = !correlationData.getId().equals("outbox-2");
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "queue full"));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, times(1)).findBatchForRelay(any(LocalDateTime.class), any(Pageable.class));
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L));
+        verify(outboxEventRepository).recordFailedAttempt(2L, 1, null);
+        assertEquals(1, nacked.getAttempts());
+    }
+
+    @Test
+    void shouldKeepReturnedEvents() {
+        OutboxEvent event = createOutboxEvent(1L);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(event));
+
+        doAnswer(invocation -> {
+            Message message = invocation.getArgument(2);
+            CorrelationData correlationData = invocation.getArgument(3);
+            correlationData.setReturned(new ReturnedMessage(message, 312, "NO_ROUTE", "course-exchange", "course-level.passed"));
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+        assertEquals(1, event.getAttempts());
+    }
+
+    @Test
+    void shouldKeepEventsWhenConfirmTimesOut() {
+        OutboxEvent event = createOutboxEvent(1L);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(event));
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+        verify(outboxEventRepository).recordFailedAttempt(1L, 1, null);
+        assertEquals(1, event.getAttempts());
+    }
+
+    @Test
+    void shouldRebuildMessageFromOutboxEvent() {
+        OutboxEvent event = createOutboxEvent(7L);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(event));
+        confirmAll(true);
+
+        outboxRelay.relay();
+
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate).send(eq("course-exchange"), eq("course-level.passed"), messageCaptor.capture(), any(CorrelationData.class));
+
+        Message message = messageCaptor.getValue();
+        assertEquals(event.getPayload(), new String(message.getBody(), StandardCharsets.UTF_8));
+        assertEquals("application/json", message.getMessageProperties().getContentType());
+        assertEquals("correlation-7", message.getMessageProperties().getCorrelationId());
+        assertEquals(7, ((Number) message.getMessageProperties().getHeader("levelId")).intValue());
+        assertEquals("com.kujacic.courses.dto.rabbitmq.CourseLevelPassEvent", message.getMessageProperties().getHeader("__TypeId__"));
+    }
+
+    @Test
+    void shouldNotPublishWhenOutboxIsEmpty() {
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of());
+
+        outboxRelay.relay();
+
+        verifyNoInteractions(rabbitTemplate);
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+    }
+
+    @Test
+    void shouldKeepEventsWhenBrokerIsUnavailable() {
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(createOutboxEvent(1L)));
+        doThrow(new AmqpConnectException(new ConnectException("Connection refused")))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        assertDoesNotThrow(() -> outboxRelay.relay());
+
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+        verify(outboxEventRepository).releaseClaims(List.of(1L));
+    }
+
+    @Test
+    void shouldRelayRestOfBatchWhenEventCannotBeBuilt() {
+        OutboxEvent unreadable = createOutboxEvent(1L);
+        unreadable.setHeaders("{not json");
+        OutboxEvent valid = createOutboxEvent(2L);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(unreadable, valid));
+        confirmAll(true);
+
+        outboxRelay.relay();
+
+        verify(rabbitTemplate, times(1)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(2L));
+        verify(outboxEventRepository).recordFailedAttempt(1L, 1, null);
+        assertEquals(1, unreadable.getAttempts());
+        assertNull(unreadable.getParkedAt());
+    }
+
+    @Test
+    void shouldParkEventOnceMaxAttemptsAreReached() {
+        OutboxEvent unreadable = createOutboxEvent(1L);
+        unreadable.setHeaders("{not json");
+        unreadable.setAttempts(MAX_ATTEMPTS - 1);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(unreadable));
+
+        outboxRelay.relay();
+
+        verifyNoInteractions(rabbitTemplate);
+        verify(outboxEventRepository).recordFailedAttempt(eq(1L), eq(MAX_ATTEMPTS), notNull());
+        assertEquals(MAX_ATTEMPTS, unreadable.getAttempts());
+        assertNotNull(unreadable.getParkedAt());
+    }
+
+    @Test
+    void shouldParkEventThatIsNeverConfirmed() {
+        OutboxEvent event = createOutboxEvent(1L);
+        event.setAttempts(MAX_ATTEMPTS - 1);
+        when(outboxEventRepository.findBatchForRelay(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(event));
+        confirmAll(false);
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+        assertNotNull(event.getParkedAt());
+    }
+
+    private void confirmAll(boolean ack) {
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private OutboxEvent createOutboxEvent(Long id) {
+        return OutboxEvent.builder()
+                .id(id)
+                .exchange("course-exchange")
+                .routingKey("course-level.passed")
+                .correlationId("correlation-" + id)
+                .contentType("application/json")
+                .payload("{\"userId\":\"user123\",\"courseId\":1,\"levelId\":" + id + ",\"progress\":50,\"courseName\":\"Course\"}")
+                .headers("{\"levelId\":" + id + ",\"__TypeId__\":\"com.kujacic.courses.dto.rabbitmq.CourseLevelPassEvent\"}")
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.utils.PreviewUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreviewUtilsTests {
+
+    @Test
+    void shouldAddressTilesRowByRow() {
+        String track = PreviewUtils.thumbnailTrack(12.5, 5, 2, 2, 160, 90);
+
+        assertEquals("""
+                WEBVTT
+
+                00:00:00.000 --> 00:00:05.000
+                sprite_001.jpg#xywh=0,0,160,90
+
+                00:00:05.000 --> 00:00:10.000
+                sprite_001.jpg#xywh=160,0,160,90
+
+                00:00:10.000 --> 00:00:12.500
+                sprite_001.jpg#xywh=0,90,160,90
+                """, track);
+    }
+
+    @Test
+    void shouldContinueOnNextSheetWhenSheetIsFull() {
+        String track = PreviewUtils.thumbnailTrack(3700, 5, 10, 10, 160, 90);
+
+        assertEquals(740, PreviewUtils.thumbnailCount(3700, 5));
+        assertTrue(track.contains("00:08:20.000 --> 00:08:25.000\nsprite_002.jpg#xywh=0,0,160,90\n"));
+        assertTrue(track.endsWith("01:01:35.000 --> 01:01:40.000\nsprite_008.jpg#xywh=1440,270,160,90\n"));
+    }
+
+    @Test
+    void shouldProduceOneThumbnailForVeryShortVideos() {
+        assertEquals(1, PreviewUtils.thumbnailCount(0.4, 5));
+    }
+}
@@ -0,0 +1,52 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.utils.ProcessUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessUtilsTests {
+
+    // The JVM running the tests is the one executable known to exist on every platform
+    private static final String JAVA = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+    @TempDir
+    Path logDirectory;
+
+    @Test
+    void shouldWriteOutputOfProcessToLogFile() throws Exception {
+        Path logFile = logDirectory.resolve("java.log");
+
+        ProcessUtils.run(List.of(JAVA, "-version"), logFile, deadline(), "java version");
+
+        assertTrue(Files.readString(logFile).contains("version"));
+    }
+
+    @Test
+    void shouldFailWhenProcessExitsWithError() {
+        IOException exception = assertThrows(IOException.class, () ->
+                ProcessUtils.run(List.of(JAVA, "NoSuchMainClass"), logDirectory.resolve("java.log"), deadline(), "java"));
+
+        assertTrue(exception.getMessage().startsWith("java exited with code"));
+    }
+
+    @Test
+    void shouldFailWhenProcessRunsPastDeadline() {
+        IOException exception = assertThrows(IOException.class, () ->
+                ProcessUtils.run(List.of(JAVA, "-version"), logDirectory.resolve("java.log"), Instant.now(), "java"));
+
+        assertEquals("java timed out", exception.getMessage());
+    }
+
+    private static Instant deadline() {
+        return Instant.now().plus(Duration.ofMinutes(1));
+    }
+}
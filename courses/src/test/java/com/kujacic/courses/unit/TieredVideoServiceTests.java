@@ -0,0 +1,208 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.service.impl.LocalVideoService;
+import com.kujacic.courses.service.impl.TieredVideoService;
+import com.kujacic.courses.service.impl.VideoService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TieredVideoServiceTests {
+
+    private static final long MB = 1024 * 1024;
+
+    @Mock
+    private LocalVideoService hotTier;
+
+    @Mock
+    private VideoService coldTier;
+
+    @Mock
+    private AsyncTaskExecutor tieringExecutor;
+
+    private final Map<String, Long> coldSizes = new HashMap<>();
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        // Promotions run on the calling thread
+        lenient().doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(tieringExecutor).execute(any(Runnable.class));
+        lenient().when(hotTier.storeCopy(anyString(), any(InputStream.class)))
+                .thenAnswer(invocation -> coldSizes.getOrDefault(invocation.<String>getArgument(0), 0L));
+        lenient().when(hotTier.streamCopy(anyString(), any()))
+                .thenReturn(ResponseEntity.<StreamingResponseBody>ok().body(outputStream -> { }));
+    }
+
+    @Test
+    void shouldServeFromColdTierUntilPromotionThreshold() throws Exception {
+        TieredVideoService service = tieredService(Map.of(), 100);
+
+        service.streamVideo("video-1", null);
+        service.streamVideo("video-1", "bytes=0-");
+
+        verify(coldTier, times(2)).streamVideo(eq("video-1"), any());
+        verify(hotTier, never()).storeCopy(anyString(), any());
+    }
+
+    @Test
+    void shouldPromotePopularVideoAndServeItFromHotTier() throws Exception {
+        TieredVideoService service = tieredService(Map.of(), 100);
+        stubColdVideo("video-1", 10 * MB);
+
+        for (int i = 0; i < 3; i++) {
+            service.streamVideo("video-1", null);
+        }
+        service.streamVideo("video-1", "bytes=100-199");
+
+        verify(hotTier).storeCopy(eq("video-1"), any());
+        verify(hotTier).streamCopy("video-1", "bytes=100-199");
+        assertEquals(1, meterRegistry.counter("video.tier.promotions").count());
+        assertEquals(10 * MB, meterRegistry.get("video.tier.hot.size").gauge().value());
+    }
+
+    @Test
+    void shouldNotCountSeeksAsPlays() throws Exception {
+        TieredVideoService service = tieredService(Map.of(), 100);
+
+        for (int i = 0; i < 5; i++) {
+            service.streamVideo("video-1", "bytes=" + (i + 1) * 100 + "-");
+        }
+
+        verify(hotTier, never()).storeCopy(anyString(), any());
+    }
+
+    @Test
+    void shouldDemoteLessPlayedVideoWhenHotTierIsFull() throws Exception {
+        TieredVideoService service = tieredService(Map.of("video-old", 60 * MB), 100);
+        stubColdVideo("video-1", 50 * MB);
+
+        for (int i = 0; i < 3; i++) {
+            service.streamVideo("video-1", null);
+        }
+
+        verify(hotTier).deleteCopy("video-old");
+        verify(hotTier).storeCopy(eq("video-1"), any());
+        assertEquals(50 * MB, meterRegistry.get("video.tier.hot.size").gauge().value());
+    }
+
+    @Test
+    void shouldDropHotCopyWhenVideoIsUploadedAgain() throws Exception {
+        TieredVideoService service = tieredService(Map.of("video-1", 10 * MB), 100);
+
+        service.uploadVideo("video-1", null);
+        service.streamVideo("video-1", null);
+
+        verify(hotTier).deleteCopy("video-1");
+        verify(coldTier).streamVideo("video-1", null);
+    }
+
+    @Test
+    void shouldFallBackToColdTierWhenHotCopyIsMissing() throws Exception {
+        TieredVideoService service = tieredService(Map.of("video-1", 10 * MB), 100);
+        when(hotTier.streamCopy("video-1", "bytes=100-")).thenReturn(ResponseEntity.notFound().build());
+
+        service.streamVideo("video-1", "bytes=100-");
+        service.uploadVideo("video-1", null);
+
+        verify(coldTier).streamVideo("video-1", "bytes=100-");
+        // The copy was released, so demoting it deletes it right away
+        verify(hotTier).deleteCopy("video-1");
+        assertEquals(1, meterRegistry.counter("video.tier.reads", "tier", "cold").count());
+        assertEquals(0, meterRegistry.counter("video.tier.reads", "tier", "hot").count());
+    }
+
+    @Test
+    void shouldFallBackToColdTierWhenHotCopyCannotBeRead() throws Exception {
+        TieredVideoService service = tieredService(Map.of("video-1", 10 * MB), 100);
+        when(hotTier.streamCopy("video-1", null)).thenThrow(new IllegalStateException("disk failure"));
+        when(hotTier.downloadCopy("video-1")).thenReturn(ResponseEntity.notFound().build());
+
+        service.streamVideo("video-1", null);
+        service.download("video-1");
+        service.uploadVideo("video-1", null);
+
+        verify(coldTier).streamVideo("video-1", null);
+        verify(coldTier).download("video-1");
+        verify(hotTier).deleteCopy("video-1");
+    }
+
+    @Test
+    void shouldDeleteDemotedCopyOnlyAfterStreamingReaderFinishes() throws Exception {
+        TieredVideoService service = tieredService(Map.of("video-1", 10 * MB), 100);
+        when(hotTier.streamCopy("video-1", "bytes=100-"))
+                .thenReturn(ResponseEntity.<StreamingResponseBody>ok().body(outputStream -> outputStream.write(1)));
+
+        StreamingResponseBody body = service.streamVideo("video-1", "bytes=100-").getBody();
+        service.uploadVideo("video-1", null);
+
+        verify(hotTier, never()).deleteCopy("video-1");
+        assertEquals(0, meterRegistry.get("video.tier.hot.size").gauge().value());
+
+        body.writeTo(new ByteArrayOutputStream());
+
+        verify(hotTier).deleteCopy("video-1");
+    }
+
+    @Test
+    void shouldDeleteDemotedCopyOnlyAfterOpenedStreamIsClosed() throws Exception {
+        TieredVideoService service = tieredService(Map.of("video-1", 10 * MB), 100);
+        when(hotTier.openCopy("video-1")).thenReturn(new ByteArrayInputStream(new byte[10]));
+
+        InputStream video = service.openVideo("video-1");
+        service.uploadVideo("video-1", null);
+        verify(hotTier, never()).deleteCopy("video-1");
+
+        video.close();
+        video.close();
+
+        verify(hotTier, times(1)).deleteCopy("video-1");
+    }
+
+    @Test
+    void shouldNotPromoteAgainWhileDemotedCopyIsStillRead() throws Exception {
+        TieredVideoService service = tieredService(Map.of("video-1", 10 * MB), 100);
+        when(hotTier.openCopy("video-1")).thenReturn(new ByteArrayInputStream(new byte[10]));
+
+        InputStream video = service.openVideo("video-1");
+        service.uploadVideo("video-1", null);
+        for (int i = 0; i < 3; i++) {
+            service.streamVideo("video-1", null);
+        }
+
+        verify(hotTier, never()).storeCopy(anyString(), any());
+        video.close();
+    }
+
+    private TieredVideoService tieredService(Map<String, Long> hotVideos, long hotMaxSizeMb) throws Exception {
+        when(hotTier.listCopies()).thenReturn(new HashMap<>(hotVideos));
+        return new TieredVideoService(hotTier, coldTier, tieringExecutor, meterRegistry, 3, 60, hotMaxSizeMb);
+    }
+
+    private void stubColdVideo(String videoId, long size) throws Exception {
+        when(coldTier.getVideoMetadata(videoId)).thenReturn(VideoMetadata.builder().contentLength(size).build());
+        when(coldTier.openVideo(videoId)).thenReturn(new ByteArrayInputStream(new byte[0]));
+        coldSizes.put(videoId, size);
+    }
+}
@@ -0,0 +1,54 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.service.impl.TokenBucket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTests {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong();
+    private TokenBucket bucket;
+
+    @BeforeEach
+    void setUp() {
+        // 1000 bytes per second with a burst of 500 bytes
+        bucket = new TokenBucket(1000, 500, clock::get);
+    }
+
+    @Test
+    void shouldAllowBurstWithoutWaiting() {
+        assertEquals(0, bucket.reserve(300));
+        assertEquals(0, bucket.reserve(200));
+    }
+
+    @Test
+    void shouldQueueReservationsBeyondBurstInOrder() {
+        bucket.reserve(500);
+
+        assertEquals(SECOND / 2, bucket.reserve(500));
+        assertEquals(SECOND, bucket.reserve(500));
+    }
+
+    @Test
+    void shouldRefillAtConfiguredRate() {
+        bucket.reserve(500);
+        clock.addAndGet(SECOND / 4);
+
+        assertEquals(0, bucket.reserve(250));
+        assertTrue(bucket.reserve(1) > 0);
+    }
+
+    @Test
+    void shouldNotRefillBeyondCapacity() {
+        clock.addAndGet(10 * SECOND);
+
+        assertEquals(0, bucket.reserve(500));
+        assertEquals(SECOND / 10, bucket.reserve(100));
+    }
+}
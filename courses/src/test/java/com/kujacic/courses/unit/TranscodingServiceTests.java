@@ -0,0 +1,65 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.enums.TranscodingStatus;
+import com.kujacic.courses.model.CourseContent;
+import com.kujacic.courses.repository.CourseContentRepository;
+import com.kujacic.courses.service.PreviewService;
+import com.kujacic.courses.service.StorageService;
+import com.kujacic.courses.service.TranscodingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TranscodingServiceTests {
+
+    @Mock
+    private CourseContentRepository courseContentRepository;
+
+    @Mock
+    private StorageService videoService;
+
+    @Mock
+    private PreviewService previewService;
+
+    @TempDir
+    Path workPath;
+
+    private TranscodingService transcodingService;
+
+    @BeforeEach
+    void setUp() {
+        transcodingService = new TranscodingService(courseContentRepository, videoService, previewService,
+                "ffmpeg", "ffprobe", "360:800", 4, 1, workPath.toString());
+    }
+
+    @Test
+    void shouldMarkContentFailedWhenStorageThrowsUncheckedException() throws Exception {
+        UUID contentId = UUID.randomUUID();
+        CourseContent content = CourseContent.builder().id(contentId).build();
+        when(courseContentRepository.findById(contentId)).thenReturn(Optional.of(content));
+        when(videoService.openVideo(contentId.toString())).thenThrow(NoSuchKeyException.builder().message("missing").build());
+
+        assertDoesNotThrow(() -> transcodingService.transcode(contentId));
+
+        assertEquals(TranscodingStatus.FAILED, content.getTranscodingStatus());
+        verify(courseContentRepository, times(2)).save(content);
+        verify(videoService, never()).storeHlsPackage(any(), any());
+        try (var files = Files.list(workPath)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
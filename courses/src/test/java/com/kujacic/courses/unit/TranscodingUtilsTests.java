@@ -0,0 +1,77 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.utils.TranscodingUtils;
+import com.kujacic.courses.utils.TranscodingUtils.EncodedRendition;
+import com.kujacic.courses.utils.TranscodingUtils.Rendition;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranscodingUtilsTests {
+
+    private static final Rendition SD = new Rendition(360, 800);
+    private static final Rendition FULL_HD = new Rendition(1080, 5000);
+
+    @Test
+    void shouldParseLadderOrderedByHeight() {
+        assertEquals(List.of(new Rendition(360, 800), new Rendition(720, 2800), new Rendition(1080, 5000)),
+                TranscodingUtils.parseRenditions("1080:5000, 360:800,720:2800"));
+    }
+
+    @Test
+    void shouldForceKeyframesByTimeInsteadOfFrameCount() {
+        List<String> command = TranscodingUtils.renditionCommand("ffmpeg", Path.of("/work/source"), Path.of("/work/hls/720p"),
+                new Rendition(720, 2800), 4);
+
+        assertEquals("expr:gte(t,n_forced*4)", command.get(command.indexOf("-force_key_frames") + 1));
+        assertEquals("0", command.get(command.indexOf("-sc_threshold") + 1));
+        assertFalse(command.contains("-g"));
+        assertFalse(command.contains("-keyint_min"));
+        assertEquals("4", command.get(command.indexOf("-hls_time") + 1));
+    }
+
+    @Test
+    void shouldSignalTheLevelAdvertisedInThePlaylist() {
+        List<String> command = TranscodingUtils.renditionCommand("ffmpeg", Path.of("/work/source"), Path.of("/work/hls/1080p"),
+                FULL_HD, 4);
+
+        assertEquals("scale=-2:1080", command.get(command.indexOf("-vf") + 1));
+        assertEquals("main", command.get(command.indexOf("-profile:v") + 1));
+        assertEquals("4.2", command.get(command.indexOf("-level:v") + 1));
+        assertEquals("avc1.4d402a,mp4a.40.2", TranscodingUtils.codecs(new EncodedRendition(FULL_HD, 1920, 1080, true)));
+        assertEquals(Path.of("/work/hls/1080p/index.m3u8").toString(), command.get(command.size() - 1));
+    }
+
+    @Test
+    void shouldListRenditionsWithResolutionAndCodecs() {
+        String playlist = TranscodingUtils.masterPlaylist(List.of(
+                new EncodedRendition(SD, 640, 360, true),
+                new EncodedRendition(FULL_HD, 1440, 1080, true)));
+
+        assertEquals("""
+                #EXTM3U
+                #EXT-X-VERSION:3
+                #EXT-X-STREAM-INF:BANDWIDTH=928000,RESOLUTION=640x360,CODECS="avc1.4d4020,mp4a.40.2"
+                360p/index.m3u8
+                #EXT-X-STREAM-INF:BANDWIDTH=5128000,RESOLUTION=1440x1080,CODECS="avc1.4d402a,mp4a.40.2"
+                1080p/index.m3u8
+                """, playlist);
+    }
+
+    @Test
+    void shouldLeaveAudioOutOfSilentRenditions() {
+        String playlist = TranscodingUtils.masterPlaylist(List.of(new EncodedRendition(SD, 640, 360, false)));
+
+        assertTrue(playlist.contains("#EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360,CODECS=\"avc1.4d4020\"\n"));
+    }
+
+    @Test
+    void shouldReadFrameSizeAndAudioFromProbe() {
+        assertEquals(new EncodedRendition(SD, 480, 360, true), TranscodingUtils.parseProbe(SD, "video,480,360\naudio\n"));
+        assertEquals(new EncodedRendition(SD, 640, 360, false), TranscodingUtils.parseProbe(SD, "video,640,360\n"));
+        assertThrows(IllegalArgumentException.class, () -> TranscodingUtils.parseProbe(SD, "audio\n"));
+    }
+}
@@ -0,0 +1,140 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.model.UploadSession;
+import com.kujacic.courses.repository.UploadSessionRepository;
+import com.kujacic.courses.service.StorageService;
+import com.kujacic.courses.service.UploadSessionCleaner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionCleanerTests {
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private StorageService videoService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private UploadSessionCleaner cleaner;
+
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        cleaner = new UploadSessionCleaner(uploadSessionRepository, videoService, transactionTemplate, 24, 100);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction.set(false);
+            }
+        });
+        lenient().doAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+                return null;
+            } finally {
+                inTransaction.set(false);
+            }
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void shouldAbortAndDeleteExpiredUploads() {
+        UploadSession first = createSession();
+        UploadSession second = createSession();
+        when(uploadSessionRepository.findExpiredForCleanup(any(LocalDateTime.class), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(first, second));
+
+        cleaner.abortExpiredUploads();
+
+        verify(videoService).abortUpload(first);
+        verify(videoService).abortUpload(second);
+        verify(uploadSessionRepository).deleteAllByIdInBatch(List.of(first.getId(), second.getId()));
+        verify(uploadSessionRepository, never()).releaseFinalization(any());
+    }
+
+    @Test
+    void shouldMarkExpiredUploadsAndAbortThemOutsideTransaction() {
+        UploadSession session = createSession();
+        when(uploadSessionRepository.findExpiredForCleanup(any(LocalDateTime.class), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(session));
+        doAnswer(invocation -> {
+            assertFalse(inTransaction.get());
+            return null;
+        }).when(videoService).abortUpload(session);
+
+        cleaner.abortExpiredUploads();
+
+        assertNotNull(session.getFinalizingSince());
+        verify(videoService).abortUpload(session);
+    }
+
+    @Test
+    void shouldOnlyCleanUpSessionsInactiveForTtl() {
+        when(uploadSessionRepository.findExpiredForCleanup(any(LocalDateTime.class), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        LocalDateTime before = LocalDateTime.now().minusHours(24);
+        cleaner.abortExpiredUploads();
+        LocalDateTime after = LocalDateTime.now().minusHours(24);
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(uploadSessionRepository).findExpiredForCleanup(cutoff.capture(), any(LocalDateTime.class), any(Pageable.class));
+        assertFalse(cutoff.getValue().isBefore(before));
+        assertFalse(cutoff.getValue().isAfter(after));
+        verify(uploadSessionRepository, never()).deleteAllByIdInBatch(any());
+    }
+
+    @Test
+    void shouldReleaseUploadWhoseAbortFailed() {
+        UploadSession failing = createSession();
+        UploadSession aborted = createSession();
+        when(uploadSessionRepository.findExpiredForCleanup(any(LocalDateTime.class), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(failing, aborted));
+        doThrow(new IllegalStateException("Storage unavailable")).when(videoService).abortUpload(failing);
+
+        cleaner.abortExpiredUploads();
+
+        verify(uploadSessionRepository).deleteAllByIdInBatch(List.of(aborted.getId()));
+        verify(uploadSessionRepository).releaseFinalization(List.of(failing.getId()));
+    }
+
+    private UploadSession createSession() {
+        return UploadSession.builder()
+                .id(UUID.randomUUID())
+                .courseLevelId(1L)
+                .fileName("lecture.mp4")
+                .contentType("video/mp4")
+                .totalSize(1000L)
+                .storageUploadId("storage-upload-id")
+                .createdAt(LocalDateTime.now().minusDays(3))
+                .lastActivityAt(LocalDateTime.now().minusDays(2))
+                .build();
+    }
+}
@@ -0,0 +1,120 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.service.impl.VideoBufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VideoBufferPoolTests {
+
+    private SimpleMeterRegistry meterRegistry;
+    private VideoBufferPool bufferPool;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bufferPool = new VideoBufferPool(meterRegistry, 1024, 4, 8);
+    }
+
+    @Test
+    void shouldHandOutDirectBufferLimitedToRequestedSize() {
+        try (VideoBufferPool.PooledBuffer pooled = bufferPool.acquire(100_000)) {
+            ByteBuffer buffer = pooled.buffer();
+
+            assertTrue(buffer.isDirect());
+            assertEquals(0, buffer.position());
+            assertEquals(100_000, buffer.limit());
+            assertEquals(128 * 1024, buffer.capacity());
+        }
+    }
+
+    @Test
+    void shouldReuseReleasedBufferOfSameSizeClass() {
+        ByteBuffer first;
+        try (VideoBufferPool.PooledBuffer pooled = bufferPool.acquire(100_000)) {
+            first = pooled.buffer();
+            first.put((byte) 1);
+        }
+
+        try (VideoBufferPool.PooledBuffer pooled = bufferPool.acquire(70_000)) {
+            assertSame(first, pooled.buffer());
+            assertEquals(0, pooled.buffer().position());
+            assertEquals(70_000, pooled.buffer().limit());
+        }
+
+        assertEquals(1, meterRegistry.counter("video.buffer.pool.acquires", "result", "reused").count());
+    }
+
+    @Test
+    void shouldIgnoreDoubleRelease() {
+        VideoBufferPool.PooledBuffer pooled = bufferPool.acquire(1000);
+        pooled.close();
+        pooled.close();
+
+        VideoBufferPool.PooledBuffer first = bufferPool.acquire(1000);
+        VideoBufferPool.PooledBuffer second = bufferPool.acquire(1000);
+
+        assertNotSame(first.buffer(), second.buffer());
+    }
+
+    @Test
+    void shouldNotPoolBuffersLargerThanBiggestSizeClass() {
+        ByteBuffer large;
+        try (VideoBufferPool.PooledBuffer pooled = bufferPool.acquire(2 * 1024 * 1024)) {
+            large = pooled.buffer();
+            assertEquals(2 * 1024 * 1024, large.capacity());
+            assertFalse(large.isDirect());
+        }
+
+        try (VideoBufferPool.PooledBuffer pooled = bufferPool.acquire(2 * 1024 * 1024)) {
+            assertNotSame(large, pooled.buffer());
+        }
+
+        assertEquals(2, meterRegistry.counter("video.buffer.pool.acquires", "result", "heap").count());
+        assertEquals(0, meterRegistry.counter("video.buffer.pool.acquires", "result", "allocated").count());
+    }
+
+    @Test
+    void shouldStopPoolingBeyondBudget() {
+        VideoBufferPool.PooledBuffer[] buffers = new VideoBufferPool.PooledBuffer[5];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = bufferPool.acquire(1024 * 1024);
+        }
+        for (VideoBufferPool.PooledBuffer buffer : buffers) {
+            buffer.close();
+        }
+
+        // The pool keeps at most 4 MB, so only four of the five 1 MB buffers are retained
+        assertEquals(4 * 1024 * 1024, meterRegistry.get("video.buffer.pool.size").gauge().value());
+        assertEquals(4 * 1024 * 1024, meterRegistry.get("video.buffer.pool.direct").gauge().value());
+    }
+
+    @Test
+    void shouldFallBackToHeapBuffersBeyondDirectMemoryCap() {
+        VideoBufferPool.PooledBuffer[] buffers = new VideoBufferPool.PooledBuffer[8];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = bufferPool.acquire(1024 * 1024);
+            assertTrue(buffers[i].buffer().isDirect());
+        }
+
+        // All 8 MB of direct memory are handed out, so the next request is served from the heap
+        try (VideoBufferPool.PooledBuffer overflow = bufferPool.acquire(1024 * 1024)) {
+            assertFalse(overflow.buffer().isDirect());
+            assertEquals(1024 * 1024, overflow.buffer().limit());
+        }
+        assertEquals(8 * 1024 * 1024, meterRegistry.get("video.buffer.pool.direct").gauge().value());
+        assertEquals(1, meterRegistry.counter("video.buffer.pool.acquires", "result", "heap").count());
+
+        buffers[0].close();
+        try (VideoBufferPool.PooledBuffer reused = bufferPool.acquire(1024 * 1024)) {
+            assertTrue(reused.buffer().isDirect());
+        }
+        for (VideoBufferPool.PooledBuffer buffer : buffers) {
+            buffer.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.exception.InvalidVideoException;
+import com.kujacic.courses.utils.VideoContainerUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VideoContainerUtilsTests {
+
+    @Test
+    void shouldAcceptMp4AndReplayWholeStream() throws Exception {
+        byte[] video = mp4();
+
+        InputStream validated = VideoContainerUtils.validate(new ByteArrayInputStream(video), "mp4", video.length);
+
+        assertArrayEquals(video, validated.readAllBytes());
+    }
+
+    @Test
+    void shouldRejectMp4WithoutFtyp() {
+        byte[] video = concat(box("mdat", 32), box("moov", 32));
+
+        assertThrows(InvalidVideoException.class, () ->
+                VideoContainerUtils.validate(new ByteArrayInputStream(video), "mp4", video.length));
+    }
+
+    @Test
+    void shouldAcceptQuickTimeStartingWithMdat() throws Exception {
+        byte[] video = concat(box("mdat", 64), box("moov", 32));
+
+        assertNotNull(VideoContainerUtils.validate(new ByteArrayInputStream(video), "mov", video.length));
+    }
+
+    @Test
+    void shouldRejectCorruptBoxStructure() {
+        // The second box claims a size smaller than its own header
+        byte[] video = concat(box("ftyp", 24), new byte[]{0, 0, 0, 4, 'm', 'o', 'o', 'v'}, new byte[64]);
+
+        assertThrows(InvalidVideoException.class, () ->
+                VideoContainerUtils.validate(new ByteArrayInputStream(video), "mp4", video.length));
+    }
+
+    @Test
+    void shouldRejectContentNotMatchingExtension() {
+        byte[] text = "<html>not a video</html>".getBytes(StandardCharsets.US_ASCII);
+
+        assertThrows(InvalidVideoException.class, () ->
+                VideoContainerUtils.validate(new ByteArrayInputStream(text), "webm", text.length));
+    }
+
+    @Test
+    void shouldAcceptMatroskaAndAvi() throws Exception {
+        byte[] webm = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, 0x01, 0x02};
+        byte[] avi = concat("RIFF".getBytes(StandardCharsets.US_ASCII), new byte[4], "AVI LIST".getBytes(StandardCharsets.US_ASCII));
+
+        assertNotNull(VideoContainerUtils.validate(new ByteArrayInputStream(webm), "webm", webm.length));
+        assertNotNull(VideoContainerUtils.validate(new ByteArrayInputStream(avi), "AVI", avi.length));
+    }
+
+    @Test
+    void shouldFailWhileReadingOnceSizeLimitIsExceeded() throws Exception {
+        byte[] video = mp4();
+        InputStream validated = VideoContainerUtils.validate(new ByteArrayInputStream(video), "mp4", video.length - 1);
+
+        assertThrows(InvalidVideoException.class, () -> validated.transferTo(new ByteArrayOutputStream()));
+    }
+
+    private static byte[] mp4() {
+        byte[] ftyp = box("ftyp", 24);
+        System.arraycopy("isom".getBytes(StandardCharsets.US_ASCII), 0, ftyp, 8, 4);
+        return concat(ftyp, box("moov", 100), box("mdat", 8000));
+    }
+
+    private static byte[] box(String type, int size) {
+        ByteBuffer box = ByteBuffer.allocate(size);
+        box.putInt(size).put(type.getBytes(StandardCharsets.US_ASCII));
+        return box.array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.writeBytes(part);
+        }
+        return output.toByteArray();
+    }
+}
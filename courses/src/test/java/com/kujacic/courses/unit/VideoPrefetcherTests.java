@@ -0,0 +1,155 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.service.impl.VideoPrefetcher;
+import com.kujacic.courses.service.impl.VideoSegmentCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VideoPrefetcherTests {
+
+    private static final String VIDEO_KEY = "videos/video-1.mp4";
+    private static final long SEGMENT_SIZE = 10;
+    private static final long CONTENT_LENGTH = 100;
+    private static final long AWAIT_TIMEOUT_MS = 50;
+
+    @Mock
+    private VideoSegmentCache segmentCache;
+
+    @Mock
+    private AsyncTaskExecutor prefetchExecutor;
+
+    @Mock
+    private VideoSegmentCache.SegmentLoader loader;
+
+    private final List<FutureTask<Void>> submitted = new ArrayList<>();
+
+    private VideoPrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        when(segmentCache.isEnabled()).thenReturn(true);
+        lenient().when(segmentCache.getSegmentSize()).thenReturn(SEGMENT_SIZE);
+        // Tasks are queued but only run when a test runs them explicitly
+        lenient().when(prefetchExecutor.submit(any(Runnable.class))).thenAnswer(invocation -> {
+            FutureTask<Void> task = new FutureTask<>(invocation.getArgument(0), null);
+            submitted.add(task);
+            return task;
+        });
+
+        prefetcher = new VideoPrefetcher(segmentCache, prefetchExecutor, 4, AWAIT_TIMEOUT_MS, true);
+    }
+
+    @Test
+    void shouldGrowReadAheadWhileReadingSequentially() {
+        try (VideoPrefetcher.Session session = prefetcher.openSession(VIDEO_KEY, CONTENT_LENGTH, 99, loader)) {
+            session.beforeRead(0, 9);
+            assertTrue(submitted.isEmpty());
+
+            session.beforeRead(10, 19);
+            assertEquals(1, submitted.size());
+            submitted.forEach(FutureTask::run);
+
+            session.beforeRead(20, 29);
+            assertEquals(3, submitted.size());
+            submitted.forEach(FutureTask::run);
+
+            for (long start = 30; start < CONTENT_LENGTH; start += SEGMENT_SIZE) {
+                session.beforeRead(start, start + SEGMENT_SIZE - 1);
+                submitted.forEach(FutureTask::run);
+            }
+        }
+
+        verify(segmentCache).prefetch(VIDEO_KEY, 2, CONTENT_LENGTH, loader);
+        verify(segmentCache).prefetch(VIDEO_KEY, 3, CONTENT_LENGTH, loader);
+        verify(segmentCache).prefetch(VIDEO_KEY, 4, CONTENT_LENGTH, loader);
+        // Never schedules past the last segment of the video
+        verify(segmentCache, never()).prefetch(eq(VIDEO_KEY), eq(10L), anyLong(), any());
+    }
+
+    @Test
+    void shouldCancelPendingPrefetchesOnSeek() {
+        try (VideoPrefetcher.Session session = prefetcher.openSession(VIDEO_KEY, CONTENT_LENGTH, 99, loader)) {
+            session.beforeRead(0, 9);
+            session.beforeRead(10, 19);
+            List<FutureTask<Void>> beforeSeek = List.copyOf(submitted);
+
+            session.beforeRead(70, 79);
+
+            assertFalse(beforeSeek.isEmpty());
+            assertTrue(beforeSeek.stream().allMatch(FutureTask::isCancelled));
+        }
+    }
+
+    @Test
+    void shouldCancelPendingPrefetchesWhenRangeIsAborted() {
+        VideoPrefetcher.Session session = prefetcher.openSession(VIDEO_KEY, CONTENT_LENGTH, 99, loader);
+        session.beforeRead(0, 9);
+        session.beforeRead(10, 19);
+
+        session.close();
+
+        assertTrue(submitted.stream().allMatch(FutureTask::isCancelled));
+    }
+
+    @Test
+    void shouldKeepReadAheadAcrossConsecutiveRequests() {
+        try (VideoPrefetcher.Session session = prefetcher.openSession(VIDEO_KEY, CONTENT_LENGTH, 29, loader)) {
+            session.beforeRead(0, 9);
+            session.beforeRead(10, 19);
+            submitted.forEach(FutureTask::run);
+            session.beforeRead(20, 29);
+        }
+        int scheduled = submitted.size();
+        assertTrue(submitted.stream().noneMatch(FutureTask::isCancelled));
+
+        try (VideoPrefetcher.Session session = prefetcher.openSession(VIDEO_KEY, CONTENT_LENGTH, 59, loader)) {
+            session.beforeRead(30, 39);
+        }
+
+        assertTrue(submitted.size() > scheduled);
+    }
+
+    @Test
+    void shouldStopWaitingForQueuedPrefetchAfterTimeout() {
+        try (VideoPrefetcher.Session session = prefetcher.openSession(VIDEO_KEY, CONTENT_LENGTH, 99, loader)) {
+            session.beforeRead(0, 9);
+            session.beforeRead(10, 19);
+            FutureTask<Void> queued = submitted.get(0);
+
+            long started = System.nanoTime();
+            // Needs segment 2, whose prefetch never gets a worker
+            session.beforeRead(20, 29);
+
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(queued.isCancelled());
+        }
+        verify(segmentCache, never()).prefetch(eq(VIDEO_KEY), eq(2L), anyLong(), any());
+    }
+
+    @Test
+    void shouldDoNothingWhenSegmentCacheIsDisabled() {
+        when(segmentCache.isEnabled()).thenReturn(false);
+        VideoPrefetcher disabled = new VideoPrefetcher(segmentCache, prefetchExecutor, 4, AWAIT_TIMEOUT_MS, true);
+
+        try (VideoPrefetcher.Session session = disabled.openSession(VIDEO_KEY, CONTENT_LENGTH, 99, loader)) {
+            session.beforeRead(0, 9);
+            session.beforeRead(10, 19);
+        }
+
+        verifyNoInteractions(prefetchExecutor);
+    }
+}
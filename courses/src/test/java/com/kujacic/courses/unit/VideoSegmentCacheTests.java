@@ -0,0 +1,202 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.service.impl.VideoBufferPool;
+import com.kujacic.courses.service.impl.VideoSegmentCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VideoSegmentCacheTests {
+
+    private static final String VIDEO_KEY = "videos/video-1.mp4";
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private static final long CONTENT_LENGTH = 3 * SEGMENT_SIZE;
+
+    @TempDir
+    Path cachePath;
+
+    private SimpleMeterRegistry meterRegistry;
+    private VideoSegmentCache segmentCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        VideoBufferPool bufferPool = new VideoBufferPool(meterRegistry, 1024, 16, 32);
+        segmentCache = new VideoSegmentCache(meterRegistry, bufferPool, cachePath.toString(), 1, 16, true);
+    }
+
+    @Test
+    void shouldServeRangeSpanningSegments() {
+        byte[] data = read(SEGMENT_SIZE - 2, SEGMENT_SIZE + 1, VideoSegmentCacheTests::load);
+
+        assertArrayEquals(bytes(SEGMENT_SIZE - 2, SEGMENT_SIZE + 1), data);
+    }
+
+    @Test
+    void shouldServeRepeatedReadsFromCache() {
+        AtomicInteger loads = new AtomicInteger();
+        VideoSegmentCache.SegmentLoader loader = (start, end, target) -> {
+            loads.incrementAndGet();
+            load(start, end, target);
+        };
+
+        read(0, 99, loader);
+        byte[] data = read(100, 199, loader);
+
+        assertArrayEquals(bytes(100, 199), data);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldShareOneLoadBetweenConcurrentMisses() throws Exception {
+        int viewers = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        VideoSegmentCache.SegmentLoader loader = (start, end, target) -> {
+            loads.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            load(start, end, target);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(viewers);
+        try {
+            List<Future<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < viewers; i++) {
+                reads.add(executor.submit(() -> read(0, 99, loader)));
+            }
+
+            // Let every viewer reach the in-flight load before it completes
+            while (meterRegistry.counter("video.segment.cache.coalesced").count() < viewers - 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<byte[]> read : reads) {
+                assertArrayEquals(bytes(0, 99), read.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldNotReloadSegmentStoredByRacingMiss() throws Exception {
+        int videos = 200;
+        AtomicInteger loads = new AtomicInteger();
+        VideoSegmentCache.SegmentLoader loader = (start, end, target) -> {
+            loads.incrementAndGet();
+            load(start, end, target);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < videos; i++) {
+                String videoKey = "videos/video-" + i + ".mp4";
+                CyclicBarrier start = new CyclicBarrier(2);
+                List<Future<?>> reads = new ArrayList<>();
+                for (int viewer = 0; viewer < 2; viewer++) {
+                    reads.add(executor.submit(() -> {
+                        start.await(5, TimeUnit.SECONDS);
+                        ByteBuffer target = ByteBuffer.allocate(100);
+                        segmentCache.read(videoKey, 0, 99, 100, loader, target);
+                        return target;
+                    }));
+                }
+                for (Future<?> read : reads) {
+                    read.get(5, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // A viewer missing just before the other one's load completes must find the stored segment
+        assertEquals(videos, loads.get());
+    }
+
+    @Test
+    void shouldRetryAfterFailedLoad() {
+        VideoSegmentCache.SegmentLoader loader = (start, end, target) -> {
+            throw new IllegalStateException("S3 unavailable");
+        };
+
+        assertThrows(IllegalStateException.class, () -> read(0, 99, loader));
+        // A failed load is not remembered, the next read tries again
+        assertArrayEquals(bytes(0, 99), read(0, 99, VideoSegmentCacheTests::load));
+    }
+
+    @Test
+    void shouldReadStraightFromLoaderWhenDisabled() {
+        VideoSegmentCache disabled = new VideoSegmentCache(meterRegistry, new VideoBufferPool(meterRegistry, 1024, 16, 32),
+                cachePath.toString(), 1, 16, false);
+        ByteBuffer target = ByteBuffer.allocate(100);
+
+        disabled.read(VIDEO_KEY, 50, 149, CONTENT_LENGTH, VideoSegmentCacheTests::load, target);
+
+        assertArrayEquals(bytes(50, 149), target.array());
+    }
+
+    @Test
+    void shouldOnlyRemoveSegmentsLeftByPreviousRun(@TempDir Path sharedPath) throws Exception {
+        Path videoDirectory = Files.createDirectories(sharedPath.resolve("766964656f"));
+        Files.write(videoDirectory.resolve("0.seg"), new byte[10]);
+        Files.write(videoDirectory.resolve("1.seg." + UUID.randomUUID() + ".tmp"), new byte[10]);
+        Path mixedDirectory = Files.createDirectories(sharedPath.resolve("6d6978"));
+        Files.write(mixedDirectory.resolve("0.seg"), new byte[10]);
+        Files.write(mixedDirectory.resolve("notes.txt"), new byte[10]);
+        Path otherDirectory = Files.createDirectories(sharedPath.resolve("backups"));
+        Files.write(otherDirectory.resolve("0.seg"), new byte[10]);
+        Files.write(sharedPath.resolve("readme.txt"), new byte[10]);
+
+        new VideoSegmentCache(meterRegistry, new VideoBufferPool(meterRegistry, 1024, 16, 32),
+                sharedPath.toString(), 1, 16, true);
+
+        assertFalse(Files.exists(videoDirectory));
+        assertFalse(Files.exists(mixedDirectory.resolve("0.seg")));
+        assertTrue(Files.exists(mixedDirectory.resolve("notes.txt")));
+        assertTrue(Files.exists(otherDirectory.resolve("0.seg")));
+        assertTrue(Files.exists(sharedPath.resolve("readme.txt")));
+    }
+
+    private byte[] read(long start, long end, VideoSegmentCache.SegmentLoader loader) {
+        ByteBuffer target = ByteBuffer.allocate((int) (end - start + 1));
+        segmentCache.read(VIDEO_KEY, start, end, CONTENT_LENGTH, loader, target);
+        assertFalse(target.hasRemaining());
+        return target.array();
+    }
+
+    private static void load(long start, long end, ByteBuffer target) {
+        target.put(bytes(start, end));
+    }
+
+    private static byte[] bytes(long start, long end) {
+        byte[] data = new byte[(int) (end - start + 1)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (start + i);
+        }
+        return data;
+    }
+}
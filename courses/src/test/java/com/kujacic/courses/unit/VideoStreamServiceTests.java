@@ -0,0 +1,145 @@
+package com.kujacic.courses.unit;
+
+import com.kujacic.courses.dto.video.VideoMetadata;
+import com.kujacic.courses.service.StorageService;
+import com.kujacic.courses.service.VideoStreamService;
+import com.kujacic.courses.service.impl.EgressShaper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VideoStreamServiceTests {
+
+    private static final String VIDEO_ID = "video-1";
+    private static final String VIEWER_ID = "viewer-1";
+    private static final Instant LAST_MODIFIED = Instant.parse("2025-01-01T10:00:00Z");
+
+    @Mock
+    private StorageService videoService;
+
+    @Mock
+    private EgressShaper egressShaper;
+
+    @InjectMocks
+    private VideoStreamService videoStreamService;
+
+    @BeforeEach
+    void setUp() {
+        VideoMetadata metadata = VideoMetadata.builder()
+                .contentLength(1000L)
+                .contentType("video/mp4")
+                .fileName("video-1.mp4")
+                .etag("\"abc\"")
+                .lastModified(LAST_MODIFIED)
+                .build();
+        when(videoService.getVideoMetadata(VIDEO_ID)).thenReturn(metadata);
+        lenient().when(egressShaper.shape(any(), eq(VIEWER_ID))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void shouldAddValidatorsAndCacheControlToPartialResponse() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-99");
+        when(videoService.streamVideo(VIDEO_ID, "bytes=0-99")).thenReturn(partialContent());
+
+        ResponseEntity<StreamingResponseBody> response = videoStreamService.streamVideo(VIDEO_ID, requestHeaders, VIEWER_ID);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("\"abc\"", response.getHeaders().getETag());
+        assertEquals(LAST_MODIFIED.toEpochMilli(), response.getHeaders().getLastModified());
+        assertTrue(response.getHeaders().getCacheControl().contains("private"));
+        assertEquals("bytes 0-99/1000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenEtagMatches() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfNoneMatch("\"abc\"");
+
+        ResponseEntity<StreamingResponseBody> response = videoStreamService.streamVideo(VIDEO_ID, requestHeaders, VIEWER_ID);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(videoService, never()).streamVideo(anyString(), any());
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenNotModifiedSince() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfModifiedSince(LAST_MODIFIED.plusSeconds(60).toEpochMilli());
+
+        ResponseEntity<StreamingResponseBody> response = videoStreamService.streamVideo(VIDEO_ID, requestHeaders, VIEWER_ID);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    }
+
+    @Test
+    void shouldServeRangeWhenIfRangeMatchesEtag() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-99");
+        requestHeaders.set(HttpHeaders.IF_RANGE, "\"abc\"");
+        when(videoService.streamVideo(VIDEO_ID, "bytes=0-99")).thenReturn(partialContent());
+
+        ResponseEntity<StreamingResponseBody> response = videoStreamService.streamVideo(VIDEO_ID, requestHeaders, VIEWER_ID);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+    }
+
+    @Test
+    void shouldServeRangeWhenIfRangeMatchesLastModified() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-99");
+        requestHeaders.set(HttpHeaders.IF_RANGE, DateTimeFormatter.RFC_1123_DATE_TIME.format(LAST_MODIFIED.atZone(ZoneOffset.UTC)));
+        when(videoService.streamVideo(VIDEO_ID, "bytes=0-99")).thenReturn(partialContent());
+
+        videoStreamService.streamVideo(VIDEO_ID, requestHeaders, VIEWER_ID);
+
+        verify(videoService).streamVideo(VIDEO_ID, "bytes=0-99");
+    }
+
+    @Test
+    void shouldIgnoreRangeWhenIfRangeDoesNotMatch() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-99");
+        requestHeaders.set(HttpHeaders.IF_RANGE, "\"stale\"");
+        when(videoService.streamVideo(VIDEO_ID, null)).thenReturn(ResponseEntity.ok().body(outputStream -> { }));
+
+        ResponseEntity<StreamingResponseBody> response = videoStreamService.streamVideo(VIDEO_ID, requestHeaders, VIEWER_ID);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(videoService).streamVideo(VIDEO_ID, null);
+    }
+
+    @Test
+    void shouldShapeResponseBodyForViewer() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        StreamingResponseBody body = outputStream -> { };
+        when(videoService.streamVideo(VIDEO_ID, null)).thenReturn(ResponseEntity.ok().body(body));
+
+        videoStreamService.streamVideo(VIDEO_ID, requestHeaders, VIEWER_ID);
+
+        verify(egressShaper).shape(body, VIEWER_ID);
+    }
+
+    private ResponseEntity<StreamingResponseBody> partialContent() {
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes 0-99/1000")
+                .body(outputStream -> { });
+    }
+}
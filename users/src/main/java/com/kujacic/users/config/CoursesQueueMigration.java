@@ -0,0 +1,68 @@
+package com.kujacic.users.config;
+
+import com.rabbitmq.client.GetResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Retires the single courses-queue that held every course level event before events were partitioned
+ * by user. It is no longer declared, but brokers that ran an older version still have it, bound to
+ * course-level.passed, so every event would also be copied there and dead-lettered unread once its
+ * TTL ran out.
+ * On startup the queue is unbound first, so no new events reach it. The events still in it are then
+ * moved to the partition exchange, which routes them by user like any new event, and the empty queue
+ * is deleted. Each event is only acked on the old queue after it was republished.
+ * While instances of an older version still consume the queue it cannot be deleted; the migration
+ * then leaves it in place and runs again on the next startup. Once the queue is gone it does nothing.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class CoursesQueueMigration implements ApplicationRunner {
+
+    public static final String LEGACY_QUEUE = "courses-queue";
+
+    private final AmqpAdmin amqpAdmin;
+    private final RabbitTemplate rabbitTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            migrate();
+        } catch (AmqpException e) {
+            log.warn("Could not retire {}, retrying on the next startup: {}", LEGACY_QUEUE, e.getMessage());
+        }
+    }
+
+    public void migrate() {
+        if (amqpAdmin.getQueueInfo(LEGACY_QUEUE) == null) {
+            return;
+        }
+
+        amqpAdmin.removeBinding(new Binding(LEGACY_QUEUE, Binding.DestinationType.QUEUE,
+                "course-exchange", "course-level.passed", null));
+
+        Integer moved = rabbitTemplate.execute(channel -> {
+            int count = 0;
+            GetResponse response;
+            while ((response = channel.basicGet(LEGACY_QUEUE, false)) != null) {
+                channel.basicPublish(RabbitMQConfig.COURSE_LEVEL_PARTITION_EXCHANGE, "", response.getProps(), response.getBody());
+                channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+                count++;
+            }
+            return count;
+        });
+        log.info("Moved {} course level events from {} to the partition queues", moved, LEGACY_QUEUE);
+
+        // Only deleted when no consumer of an older version is left and nothing arrived meanwhile
+        amqpAdmin.deleteQueue(LEGACY_QUEUE, true, true);
+        log.info("Deleted {}", LEGACY_QUEUE);
+    }
+}
@@ -0,0 +1,23 @@
+package com.kujacic.users.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+
+import java.util.List;
+
+/**
+ * Rejects a batch once its retries are exhausted, so every message of the batch is dead-lettered.
+ * The default recoverer only handles single messages; for a batch it returns normally and the
+ * container acknowledges all of its messages.
+ */
+@Slf4j
+public class DeadLetterBatchRecoverer implements MessageBatchRecoverer {
+
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        log.error("Retries exhausted for a batch of {} messages, sending them to the dead letter exchange", messages.size(), cause);
+        throw new AmqpRejectAndDontRequeueException("Retry policy exhausted for a batch of " + messages.size() + " messages", cause);
+    }
+}
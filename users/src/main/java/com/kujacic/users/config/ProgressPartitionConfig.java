@@ -0,0 +1,67 @@
+package com.kujacic.users.config;
+
+import com.kujacic.users.service.UserListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Registers a batch listener container per partition queue of course level events.
+ * A consumer subscribes to every queue of its container, so a container spanning all partitions
+ * could end up as the single active consumer of all of them. With one container and one consumer
+ * per queue, every partition is processed by its own thread in order, and adding partitions scales
+ * processing across cores and nodes.
+ * The endpoints hand the raw messages to {@link UserListener#handleCourseLevelEvents(List)}, so no
+ * handler method factory is involved.
+ */
+@Configuration
+public class ProgressPartitionConfig implements RabbitListenerConfigurer {
+
+    private final UserListener userListener;
+    private final SimpleRabbitListenerContainerFactory containerFactory;
+    private final int partitions;
+
+    public ProgressPartitionConfig(
+            UserListener userListener,
+            @Qualifier("courseLevelBatchContainerFactory") SimpleRabbitListenerContainerFactory containerFactory,
+            @Value("${progress.partitions:8}") int partitions) {
+        this.userListener = userListener;
+        this.containerFactory = containerFactory;
+        this.partitions = partitions;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (String queueName : RabbitMQConfig.partitionQueueNames(partitions)) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId(queueName);
+            endpoint.setQueueNames(queueName);
+            endpoint.setMessageListener(new CourseLevelBatchListener(userListener));
+            endpoint.setBatchListener(true);
+            // Only one consumer of a queue is active, more would just stand by
+            endpoint.setConcurrency("1");
+            registrar.registerEndpoint(endpoint, containerFactory);
+        }
+    }
+
+    private record CourseLevelBatchListener(UserListener userListener) implements MessageListener {
+
+        @Override
+        public void onMessage(Message message) {
+            userListener.handleCourseLevelEvents(List.of(message));
+        }
+
+        @Override
+        public void onMessageBatch(List<Message> messages) {
+            userListener.handleCourseLevelEvents(messages);
+        }
+    }
+}
@@ -1,29 +1,77 @@
 package com.kujacic.users.config;
 
 import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.CustomExchange;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
 @Configuration
 public class RabbitMQConfig {
+
+    public static final String COURSE_LEVEL_PARTITION_EXCHANGE = "course-level-partitions";
+
+    public static final String DEAD_LETTER_EXCHANGE = "dlx";
+
+    /**
+     * Names of the partition queues of course level events.
+     */
+    public static List<String> partitionQueueNames(int partitions) {
+        return IntStream.range(0, partitions).mapToObj(partition -> "courses-queue." + partition).toList();
+    }
+
+    /**
+     * Spreads course level events over the partition queues by a consistent hash of the user id, so all
+     * events of a user end up in the same partition. Requires the rabbitmq_consistent_hash_exchange plugin.
+     */
     @Bean
-    public Queue coursesQueue() {
-        return QueueBuilder.durable("courses-queue")
-                .withArgument("x-message-ttl", 60000)
-                .withArgument("x-dead-letter-exchange", "dlx")
-                .build();
+    public CustomExchange courseLevelPartitionExchange() {
+        return new CustomExchange(COURSE_LEVEL_PARTITION_EXCHANGE, "x-consistent-hash", true, false,
+                Map.of("hash-header", "userId"));
+    }
+
+    /**
+     * Partition queues of course level events. Each queue has a single active consumer across all
+     * nodes, which keeps the events of a user in order while different partitions run in parallel.
+     */
+    @Bean
+    public Declarables courseLevelPartitions(@Value("${progress.partitions:8}") int partitions) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (String queueName : partitionQueueNames(partitions)) {
+            Queue queue = QueueBuilder.durable(queueName)
+                    .withArgument("x-message-ttl", 60000)
+                    .withArgument("x-dead-letter-exchange", DEAD_LETTER_EXCHANGE)
+                    .singleActiveConsumer()
+                    .build();
+            declarables.add(queue);
+            // Equal weights give every partition the same share of users
+            declarables.add(BindingBuilder.bind(queue).to(courseLevelPartitionExchange()).with("1").noargs());
+        }
+        return new Declarables(declarables);
     }
 
     @Bean
     public Queue courseCertificatesQueue() {
         return QueueBuilder.durable("course-certificates-queue")
                 .withArgument("x-message-ttl", 60000)
-                .withArgument("x-dead-letter-exchange", "dlx")
+                .withArgument("x-dead-letter-exchange", DEAD_LETTER_EXCHANGE)
                 .build();
     }
 
@@ -36,7 +84,7 @@ public class RabbitMQConfig {
     @Bean
     public Binding courseLevelPassed() {
         return BindingBuilder
-                .bind(coursesQueue())
+                .bind(courseLevelPartitionExchange())
                 .to(courseExchange())
                 .with("course-level.passed");
     }
@@ -45,6 +93,37 @@ public class RabbitMQConfig {
         return BindingBuilder.bind((courseCertificatesQueue())).to(courseExchange()).with("course-certificate.issued");
     }
 
+    /**
+     * Delivers course level events to the listener in batches. A batch is handed over once it is full
+     * or no further message arrives within the linger time, so quiet periods still see low latency.
+     * A batch that still fails after the configured retries is dead-lettered as a whole.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory courseLevelBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            RabbitProperties rabbitProperties,
+            @Value("${progress.batch.size:100}") int batchSize,
+            @Value("${progress.batch.linger-ms:200}") long lingerMs) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(lingerMs);
+        // Messages of a batch stay unacked until it is processed, so the broker must be allowed to send a full one
+        factory.setPrefetchCount(batchSize);
+
+        RabbitProperties.ListenerRetry retry = rabbitProperties.getListener().getSimple().getRetry();
+        if (retry.isEnabled()) {
+            factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                    .maxAttempts(retry.getMaxAttempts())
+                    .backOffOptions(retry.getInitialInterval().toMillis(), retry.getMultiplier(), retry.getMaxInterval().toMillis())
+                    .recoverer(new DeadLetterBatchRecoverer())
+                    .build());
+        }
+        return factory;
+    }
+
     @Bean
     public Jackson2JsonMessageConverter messageConverter() {
         return new Jackson2JsonMessageConverter();
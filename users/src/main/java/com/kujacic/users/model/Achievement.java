@@ -4,6 +4,7 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
 import jakarta.persistence.GenerationType;
@@ -15,7 +16,8 @@ import lombok.Builder;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 @Entity
-@Table(name = "achievements")
+@Table(name = "achievements", uniqueConstraints = @UniqueConstraint(
+        name = "uk_achievement_user_certificate", columnNames = {"user_id", "certificate_id"}))
 @Getter
 @Setter
 @NoArgsConstructor
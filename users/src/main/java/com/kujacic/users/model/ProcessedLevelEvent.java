@@ -0,0 +1,34 @@
+package com.kujacic.users.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marks a level pass of a user as applied to the user's progress.
+ * A user passes each level once, so the table needs no expiry and redelivered events are recognized
+ * however late they arrive.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Builder
+@Table(name = "processed_level_events", uniqueConstraints = @UniqueConstraint(
+        name = "uk_processed_level_event_user_level", columnNames = {"user_id", "level_id"}))
+public class ProcessedLevelEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(name = "level_id", nullable = false)
+    private Long levelId;
+
+    @Column(name = "processed_at", nullable = false)
+    private LocalDateTime processedAt;
+}
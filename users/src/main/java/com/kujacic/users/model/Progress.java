@@ -10,7 +10,8 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 @Setter
 @Entity
 @Builder
-@Table(name = "progress")
+@Table(name = "progress", uniqueConstraints = @UniqueConstraint(
+        name = "uk_progress_user_course", columnNames = {"user_id", "course_id"}))
 @EntityListeners(AuditingEntityListener.class)
 public class Progress {
     @Id
@@ -28,4 +29,12 @@ public class Progress {
 
     @Column(name = "course_name")
     private String courseName;
+
+    /**
+     * Whether the certificate of the completed course was requested. Set only after the request was
+     * published, so a failed request is sent again on the next delivery.
+     */
+    @Builder.Default
+    @Column(name = "certificate_requested", nullable = false, columnDefinition = "boolean default false")
+    private boolean certificateRequested = false;
 }
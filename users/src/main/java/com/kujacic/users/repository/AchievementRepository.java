@@ -13,4 +13,6 @@ public interface AchievementRepository extends JpaRepository<Achievement, Long>
 
     @Query("SELECT a FROM Achievement a WHERE a.userId = :userId")
     Optional<List<Achievement>> findAllAchievementsByUserId(@Param("userId") String userId);
+
+    Optional<Achievement> findByUserIdAndCertificateId(String userId, Long certificateId);
 }
@@ -0,0 +1,28 @@
+package com.kujacic.users.repository;
+
+import com.kujacic.users.model.ProcessedLevelEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ProcessedLevelEventRepository extends JpaRepository<ProcessedLevelEvent, Long> {
+
+    /**
+     * Records level passes as processed, taking one array element per pass.
+     * Passes recorded before, by this or a concurrent transaction, are skipped.
+     *
+     * @return the passes recorded by this call
+     */
+    @Query(value = """
+            INSERT INTO processed_level_events (user_id, level_id, processed_at)
+            SELECT *, now() FROM unnest(CAST(:userIds AS varchar[]), CAST(:levelIds AS bigint[]))
+            ON CONFLICT (user_id, level_id) DO NOTHING
+            RETURNING *
+            """, nativeQuery = true)
+    List<ProcessedLevelEvent> claim(
+            @Param("userIds") String[] userIds,
+            @Param("levelIds") Long[] levelIds
+    );
+}
@@ -2,7 +2,6 @@ package com.kujacic.users.repository;
 
 
 import com.kujacic.users.model.Progress;
-import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -22,12 +21,41 @@ public interface ProgressRepository extends JpaRepository<Progress, Integer> {
     @Query(value = "SELECT * FROM progress WHERE user_id = :userId", nativeQuery = true)
     List<Progress> findByUserId(@Param("userId") String userId);
 
-    @Transactional
-    @Modifying
-    @Query("UPDATE Progress p SET p.progress = :progress WHERE p.courseId = :courseId AND p.userId = :userId")
-    int updateProgressByCourseIdAndUserId(
-            @Param("progress") Integer progress,
-            @Param("courseId") Integer courseId,
-            @Param("userId") String userId
+    /**
+     * Creates the progress of users in courses or adds to it, in one statement. Takes one array
+     * element per row; a user and course may appear only once.
+     */
+    @Query(value = """
+            INSERT INTO progress (user_id, course_id, course_name, progress)
+            SELECT * FROM unnest(CAST(:userIds AS varchar[]), CAST(:courseIds AS integer[]),
+                                 CAST(:courseNames AS varchar[]), CAST(:progresses AS integer[]))
+            ON CONFLICT (user_id, course_id)
+            DO UPDATE SET progress = COALESCE(progress.progress, 0) + EXCLUDED.progress
+            RETURNING *
+            """, nativeQuery = true)
+    List<Progress> upsertProgress(
+            @Param("userIds") String[] userIds,
+            @Param("courseIds") Integer[] courseIds,
+            @Param("courseNames") String[] courseNames,
+            @Param("progresses") Integer[] progresses
     );
+
+    /**
+     * Finds the completed courses whose certificate was not requested yet, among the given users and
+     * courses. Takes one array element per user and course.
+     */
+    @Query(value = """
+            SELECT p.* FROM progress p
+            JOIN unnest(CAST(:userIds AS varchar[]), CAST(:courseIds AS integer[])) AS keys(user_id, course_id)
+              ON p.user_id = keys.user_id AND p.course_id = keys.course_id
+            WHERE p.progress >= 100 AND NOT p.certificate_requested
+            """, nativeQuery = true)
+    List<Progress> findPendingCertificates(
+            @Param("userIds") String[] userIds,
+            @Param("courseIds") Integer[] courseIds
+    );
+
+    @Modifying
+    @Query("UPDATE Progress p SET p.certificateRequested = true WHERE p.id = :id")
+    int markCertificateRequested(@Param("id") Integer id);
 }
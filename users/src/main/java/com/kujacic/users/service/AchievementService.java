@@ -14,9 +14,14 @@ public class AchievementService {
     private final AchievementRepository achievementRepository;
 
 
+    /**
+     * Creates the achievement of an issued certificate, or returns the existing one when the
+     * certificate event is redelivered. A concurrent duplicate fails on the unique constraint and is
+     * resolved by the listener retry.
+     */
     public Achievement createAchievement(Long certificateId, String userId) {
-        Achievement achievement = Achievement.builder().userId(userId).certificateId(certificateId).build();
-        return achievementRepository.save(achievement);
+        return achievementRepository.findByUserIdAndCertificateId(userId, certificateId)
+                .orElseGet(() -> achievementRepository.save(Achievement.builder().userId(userId).certificateId(certificateId).build()));
     }
 
     public List<Achievement> getUserAchievements(String userId) {
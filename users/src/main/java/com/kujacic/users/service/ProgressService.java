@@ -4,17 +4,21 @@ import com.kujacic.users.dto.progress.ProgressResponseDTO;
 import com.kujacic.users.dto.rabbitmq.CourseLevelPassEvent;
 import com.kujacic.users.exception.CouldNotParseExcelException;
 import com.kujacic.users.model.Progress;
+import com.kujacic.users.repository.ProcessedLevelEventRepository;
 import com.kujacic.users.repository.ProgressRepository;
 import com.kujacic.users.util.DocumentUtils;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.BeanUtils;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,6 +26,7 @@ import java.util.stream.Collectors;
 @AllArgsConstructor
 public class ProgressService {
     private final ProgressRepository progressRepository;
+    private final ProcessedLevelEventRepository processedLevelEventRepository;
 
 
     public byte[] exportProgress(String userId) {
@@ -35,36 +40,116 @@ public class ProgressService {
 
     }
 
-    public ProgressResponseDTO createProgress(CourseLevelPassEvent courseLevel) {
-       Optional<Progress> progress = progressRepository
-                .findByCourseIdAndUserId(courseLevel.getCourseId(), courseLevel.getUserId());
+    /**
+     * Applies a batch of level pass events with one multi-row upsert, so concurrent events of the same
+     * user and course are summed by the database instead of overwriting each other.
+     * Events of the same user and course are summed first, since a single statement may change every
+     * row only once. Level passes that were applied before, including redeliveries within the batch,
+     * are skipped.
+     *
+     * @param courseLevels the events of the batch
+     * @return the resulting progress of every user and course changed by the batch
+     */
+    @Transactional
+    public List<ProgressResponseDTO> createProgress(List<CourseLevelPassEvent> courseLevels) {
+        List<CourseLevelPassEvent> newLevelPasses = claimNewLevelPasses(courseLevels);
+        if (newLevelPasses.isEmpty()) {
+            return List.of();
+        }
+
+        Map<ProgressKey, CourseLevelPassEvent> aggregated = new LinkedHashMap<>();
+        for (CourseLevelPassEvent courseLevel : newLevelPasses) {
+            aggregated.merge(new ProgressKey(courseLevel.getUserId(), courseLevel.getCourseId()), courseLevel,
+                    (current, next) -> CourseLevelPassEvent.builder()
+                            .userId(current.getUserId())
+                            .courseId(current.getCourseId())
+                            .courseName(current.getCourseName())
+                            .progress(current.getProgress() + next.getProgress())
+                            .build());
+        }
 
-        if(progress.isPresent()) {
-            Progress foundProgress = progress.get();
-            progressRepository.updateProgressByCourseIdAndUserId(foundProgress.getProgress() + courseLevel.getProgress(), courseLevel.getCourseId(), courseLevel.getUserId());
+        List<CourseLevelPassEvent> increments = List.copyOf(aggregated.values());
+        List<Progress> progresses = progressRepository.upsertProgress(
+                increments.stream().map(CourseLevelPassEvent::getUserId).toArray(String[]::new),
+                increments.stream().map(CourseLevelPassEvent::getCourseId).toArray(Integer[]::new),
+                increments.stream().map(CourseLevelPassEvent::getCourseName).toArray(String[]::new),
+                increments.stream().map(CourseLevelPassEvent::getProgress).toArray(Integer[]::new));
+
+        log.info("Applied {} course level events to {} progress records", courseLevels.size(), progresses.size());
+        return progresses.stream().map(this::toResponse).toList();
+    }
 
-            return ProgressResponseDTO.builder()
-                    .id(foundProgress.getId())
-                    .progress(foundProgress.getProgress() + courseLevel.getProgress())
-                    .courseId(foundProgress.getCourseId())
-                    .userId(foundProgress.getUserId())
-                    .build();
+    /**
+     * Records the level passes of the events as processed, in the caller's transaction so a failed
+     * batch releases them again.
+     *
+     * @return one event per level pass that was not processed before
+     */
+    private List<CourseLevelPassEvent> claimNewLevelPasses(List<CourseLevelPassEvent> courseLevels) {
+        Map<LevelPassKey, CourseLevelPassEvent> levelPasses = new LinkedHashMap<>();
+        courseLevels.forEach(courseLevel ->
+                levelPasses.putIfAbsent(new LevelPassKey(courseLevel.getUserId(), courseLevel.getLevelId()), courseLevel));
+
+        List<LevelPassKey> keys = List.copyOf(levelPasses.keySet());
+        Set<LevelPassKey> claimed = processedLevelEventRepository.claim(
+                        keys.stream().map(LevelPassKey::userId).toArray(String[]::new),
+                        keys.stream().map(LevelPassKey::levelId).toArray(Long[]::new))
+                .stream()
+                .map(processed -> new LevelPassKey(processed.getUserId(), processed.getLevelId()))
+                .collect(Collectors.toSet());
+
+        if (claimed.size() < courseLevels.size()) {
+            log.info("Skipping {} course level events that were already applied", courseLevels.size() - claimed.size());
         }
+        return levelPasses.entrySet().stream()
+                .filter(entry -> claimed.contains(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .toList();
+    }
 
-        Progress newProgress = Progress.builder()
-                .userId(courseLevel.getUserId())
-                .courseName(courseLevel.getCourseName())
-                .courseId(courseLevel.getCourseId())
-                .progress(courseLevel.getProgress())
-                .build();
-        progressRepository.save(newProgress);
+    /**
+     * Finds the completed courses of the events' users whose certificate was not requested yet.
+     * Based on the stored progress rather than on the events applied by this delivery, so a retried
+     * batch still finds a certificate whose request failed, even though its level passes are claimed.
+     */
+    public List<ProgressResponseDTO> findPendingCertificates(List<CourseLevelPassEvent> courseLevels) {
+        List<ProgressKey> keys = courseLevels.stream()
+                .map(courseLevel -> new ProgressKey(courseLevel.getUserId(), courseLevel.getCourseId()))
+                .distinct()
+                .toList();
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+
+        return progressRepository.findPendingCertificates(
+                        keys.stream().map(ProgressKey::userId).toArray(String[]::new),
+                        keys.stream().map(ProgressKey::courseId).toArray(Integer[]::new))
+                .stream()
+                .map(this::toResponse)
+                .toList();
+    }
+
+    /**
+     * Records that the certificate of a completed course was requested.
+     */
+    @Transactional
+    public void markCertificateRequested(Integer progressId) {
+        progressRepository.markCertificateRequested(progressId);
+    }
 
+    private ProgressResponseDTO toResponse(Progress progress) {
         return ProgressResponseDTO.builder()
-                .id(newProgress.getId())
-                .progress(newProgress.getProgress())
-                .courseId(newProgress.getCourseId())
-                .userId(newProgress.getUserId())
+                .id(progress.getId())
+                .progress(progress.getProgress())
+                .courseId(progress.getCourseId())
+                .userId(progress.getUserId())
                 .build();
     }
 
+    private record ProgressKey(String userId, Integer courseId) {
+    }
+
+    private record LevelPassKey(String userId, Long levelId) {
+    }
+
 }
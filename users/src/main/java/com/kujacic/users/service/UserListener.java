@@ -8,11 +8,18 @@ import com.kujacic.users.repository.ProgressRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 @Slf4j
 @RequiredArgsConstructor
@@ -22,28 +29,117 @@ public class UserListener {
     private final AchievementService achievementService;
     private final ProgressService progressService;
     private final UserPublisher userPublisher;
+    private final Jackson2JsonMessageConverter messageConverter;
 
-    @RabbitListener(queues = "courses-queue")
-    public void handleCourseLevelEvent(CourseLevelPassEvent courseLevel, @Header(AmqpHeaders.CORRELATION_ID) String correlationId,
-                                       @Header("levelId") String levelId) {
-        MDC.put("correlationId", correlationId);
-        MDC.put("levelId", levelId);
+    private static final ParameterizedTypeReference<CourseLevelPassEvent> COURSE_LEVEL_PASS_EVENT =
+            new ParameterizedTypeReference<>() {
+            };
+
+    /**
+     * Handles a batch of course level events from one partition queue.
+     * Registered for every partition by {@link com.kujacic.users.config.ProgressPartitionConfig}, with one
+     * consumer per queue, so the events of a user are applied in order.
+     * Messages are converted one by one, so a payload that cannot be read only dead-letters itself.
+     */
+    public void handleCourseLevelEvents(List<Message> messages) {
+        MDC.put("batchSize", messages.size() + "");
 
         try {
             log.info("Processing user progress");
-            ProgressResponseDTO progress = progressService.createProgress(courseLevel);
-            if(progress.getProgress() >= 100) {
-                log.info("Course {} passed, requesting certificate for user {}", courseLevel.getCourseId(), courseLevel.getUserId());
-                userPublisher.requestCertificate(courseLevel.getCourseId(), courseLevel.getUserId());
-
+            List<CourseLevelDelivery> deliveries = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                log.debug("Course level event {} of level {}",
+                        message.getMessageProperties().getCorrelationId(), message.getMessageProperties().getHeader("levelId"));
+                CourseLevelPassEvent event = toCourseLevelPassEvent(message);
+                if (event == null) {
+                    userPublisher.deadLetter(message);
+                } else {
+                    deliveries.add(new CourseLevelDelivery(message, event));
+                }
+            }
+            if (deliveries.isEmpty()) {
+                return;
             }
-            log.info("Added progress: {}", progress.getId());
+
+            List<CourseLevelPassEvent> applied = applyProgress(deliveries);
+            requestPendingCertificates(applied);
         } finally {
             MDC.clear();
         }
+    }
 
+    /**
+     * Applies the events of a batch in one call. If that fails, the events are applied one by one and
+     * only those that still fail are dead-lettered, so one poison event does not take the rest of the
+     * batch with it. If every event fails on its own, the failure is not caused by the events and the
+     * batch is left to the container's retry.
+     *
+     * @return the events whose progress was applied
+     */
+    private List<CourseLevelPassEvent> applyProgress(List<CourseLevelDelivery> deliveries) {
+        List<CourseLevelPassEvent> events = deliveries.stream().map(CourseLevelDelivery::event).toList();
+        try {
+            List<ProgressResponseDTO> progresses = progressService.createProgress(events);
+            log.info("Added progress of {} events to {} records", events.size(), progresses.size());
+            return events;
+        } catch (RuntimeException e) {
+            if (deliveries.size() == 1) {
+                throw e;
+            }
+            log.warn("Could not apply a batch of {} course level events, applying them one by one", deliveries.size(), e);
 
+            List<CourseLevelPassEvent> applied = new ArrayList<>(deliveries.size());
+            List<CourseLevelDelivery> failed = new ArrayList<>();
+            for (CourseLevelDelivery delivery : deliveries) {
+                try {
+                    progressService.createProgress(List.of(delivery.event()));
+                    applied.add(delivery.event());
+                } catch (RuntimeException eventFailure) {
+                    log.error("Could not apply course level event {} of user {}",
+                            delivery.event().getLevelId(), delivery.event().getUserId(), eventFailure);
+                    failed.add(delivery);
+                }
+            }
+            if (applied.isEmpty()) {
+                throw e;
+            }
 
+            failed.forEach(delivery -> userPublisher.deadLetter(delivery.message()));
+            log.info("Added progress of {} events, dead-lettered {}", applied.size(), failed.size());
+            return applied;
+        }
+    }
+
+    /**
+     * Reads the event of a message.
+     *
+     * @return the event, or {@code null} if the message does not hold a complete course level event
+     */
+    private CourseLevelPassEvent toCourseLevelPassEvent(Message message) {
+        try {
+            if (messageConverter.fromMessage(message, COURSE_LEVEL_PASS_EVENT) instanceof CourseLevelPassEvent event
+                    && event.getUserId() != null && event.getCourseId() != null
+                    && event.getLevelId() != null && event.getProgress() != null) {
+                return event;
+            }
+            log.error("Course level event {} is incomplete", message.getMessageProperties().getCorrelationId());
+        } catch (MessageConversionException e) {
+            log.error("Could not read course level event {}", message.getMessageProperties().getCorrelationId(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Requests the certificate of every completed course of the events that was not requested yet.
+     * A course is marked only after its request was published, so if publishing fails the retried
+     * batch requests it again, even though its level passes were already applied.
+     */
+    private void requestPendingCertificates(List<CourseLevelPassEvent> events) {
+        for (ProgressResponseDTO progress : progressService.findPendingCertificates(events)) {
+            log.info("Course {} passed, requesting certificate for user {}", progress.getCourseId(), progress.getUserId());
+            userPublisher.requestCertificate(progress.getCourseId(), progress.getUserId());
+            progressService.markCertificateRequested(progress.getId());
+        }
     }
 
     @RabbitListener(queues = "course-certificates-queue")
@@ -62,4 +158,7 @@ public class UserListener {
             MDC.clear();
         }
     }
+
+    private record CourseLevelDelivery(Message message, CourseLevelPassEvent event) {
+    }
 }
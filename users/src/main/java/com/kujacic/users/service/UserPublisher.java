@@ -1,8 +1,10 @@
 package com.kujacic.users.service;
 
+import com.kujacic.users.config.RabbitMQConfig;
 import com.kujacic.users.dto.rabbitmq.CourseCertificateRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Component;
 
@@ -31,4 +33,12 @@ public class UserPublisher {
         }
 
     }
+
+    /**
+     * Sends a received message to the dead letter exchange with its original routing key, as the broker
+     * does for a rejected message. Used for single messages of a batch, which is acknowledged as a whole.
+     */
+    public void deadLetter(Message message) {
+        rabbitTemplate.send(RabbitMQConfig.DEAD_LETTER_EXCHANGE, message.getMessageProperties().getReceivedRoutingKey(), message);
+    }
 }
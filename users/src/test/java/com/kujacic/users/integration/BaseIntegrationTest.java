@@ -25,7 +25,8 @@ public abstract class BaseIntegrationTest {
             .withPassword("test");
 
     @Container
-    static RabbitMQContainer rabbitMQContainer = new RabbitMQContainer("rabbitmq:3.12-management-alpine");
+    static RabbitMQContainer rabbitMQContainer = new RabbitMQContainer("rabbitmq:3.12-management-alpine")
+            .withPluginsEnabled("rabbitmq_consistent_hash_exchange");
 
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
@@ -16,7 +16,10 @@ import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -43,4 +46,17 @@ public class AchievementsServiceTest {
         assertEquals(returnAchievement.getCertificateId(), achievement.getCertificateId());
         assertEquals(returnAchievement.getId(), achievement.getId());
     }
+
+    @Test
+    public void achievementsService_shouldReturnExistingAchievementForRedeliveredCertificate() {
+        String userId = UUID.randomUUID().toString();
+        Achievement achievement = achievementFactory.createAchievement(userId);
+
+        when(achievementRepository.findByUserIdAndCertificateId(userId, achievement.getCertificateId())).thenReturn(Optional.of(achievement));
+
+        Achievement returnAchievement = achievementService.createAchievement(achievement.getCertificateId(), userId);
+
+        assertSame(achievement, returnAchievement);
+        verify(achievementRepository, never()).save(any());
+    }
 }
@@ -0,0 +1,104 @@
+package com.kujacic.users.unit;
+
+import com.kujacic.users.config.CoursesQueueMigration;
+import com.kujacic.users.config.RabbitMQConfig;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CoursesQueueMigrationTest {
+
+    @Mock
+    private AmqpAdmin amqpAdmin;
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private Channel channel;
+
+    @InjectMocks
+    private CoursesQueueMigration migration;
+
+    @Test
+    void shouldDoNothingOnceLegacyQueueIsGone() {
+        when(amqpAdmin.getQueueInfo(CoursesQueueMigration.LEGACY_QUEUE)).thenReturn(null);
+
+        migration.run(null);
+
+        verify(amqpAdmin, never()).removeBinding(any());
+        verifyNoInteractions(rabbitTemplate);
+        verify(amqpAdmin, never()).deleteQueue(anyString(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void shouldUnbindDrainAndDeleteLegacyQueue() throws Exception {
+        when(amqpAdmin.getQueueInfo(CoursesQueueMigration.LEGACY_QUEUE))
+                .thenReturn(new QueueInformation(CoursesQueueMigration.LEGACY_QUEUE, 2, 0));
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().build();
+        when(channel.basicGet(CoursesQueueMigration.LEGACY_QUEUE, false))
+                .thenReturn(response(1, properties, "first"))
+                .thenReturn(response(2, properties, "second"))
+                .thenReturn(null);
+        runCallbacksOnChannel();
+
+        migration.run(null);
+
+        InOrder inOrder = inOrder(amqpAdmin, channel);
+        ArgumentCaptor<Binding> binding = ArgumentCaptor.forClass(Binding.class);
+        inOrder.verify(amqpAdmin).removeBinding(binding.capture());
+        inOrder.verify(channel).basicPublish(eq(RabbitMQConfig.COURSE_LEVEL_PARTITION_EXCHANGE), eq(""), eq(properties), aryEq("first".getBytes()));
+        inOrder.verify(channel).basicAck(1, false);
+        inOrder.verify(channel).basicPublish(eq(RabbitMQConfig.COURSE_LEVEL_PARTITION_EXCHANGE), eq(""), eq(properties), aryEq("second".getBytes()));
+        inOrder.verify(channel).basicAck(2, false);
+        inOrder.verify(amqpAdmin).deleteQueue(CoursesQueueMigration.LEGACY_QUEUE, true, true);
+
+        assertEquals(CoursesQueueMigration.LEGACY_QUEUE, binding.getValue().getDestination());
+        assertEquals("course-exchange", binding.getValue().getExchange());
+        assertEquals("course-level.passed", binding.getValue().getRoutingKey());
+    }
+
+    @Test
+    void shouldLeaveLegacyQueueWhenItIsStillConsumed() throws Exception {
+        when(amqpAdmin.getQueueInfo(CoursesQueueMigration.LEGACY_QUEUE))
+                .thenReturn(new QueueInformation(CoursesQueueMigration.LEGACY_QUEUE, 0, 1));
+        when(channel.basicGet(CoursesQueueMigration.LEGACY_QUEUE, false)).thenReturn(null);
+        runCallbacksOnChannel();
+        doThrow(new AmqpIOException(new IOException("PRECONDITION_FAILED - queue in use")))
+                .when(amqpAdmin).deleteQueue(CoursesQueueMigration.LEGACY_QUEUE, true, true);
+
+        assertDoesNotThrow(() -> migration.run(null));
+    }
+
+    private void runCallbacksOnChannel() {
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+    }
+
+    private static GetResponse response(long deliveryTag, AMQP.BasicProperties properties, String body) {
+        Envelope envelope = new Envelope(deliveryTag, false, "course-exchange", "course-level.passed");
+        return new GetResponse(envelope, properties, body.getBytes(), 0);
+    }
+}
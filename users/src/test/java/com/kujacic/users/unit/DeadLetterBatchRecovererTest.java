@@ -0,0 +1,62 @@
+package com.kujacic.users.unit;
+
+import com.kujacic.users.config.DeadLetterBatchRecoverer;
+import com.kujacic.users.config.RabbitMQConfig;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeadLetterBatchRecovererTest {
+
+    private final List<Message> batch = List.of(
+            new Message("first".getBytes(), new MessageProperties()),
+            new Message("second".getBytes(), new MessageProperties()));
+
+    @Test
+    void shouldRejectBatchWithoutRequeue() {
+        IllegalStateException cause = new IllegalStateException("poison event");
+
+        AmqpRejectAndDontRequeueException exception = assertThrows(AmqpRejectAndDontRequeueException.class,
+                () -> new DeadLetterBatchRecoverer().recover(batch, cause));
+
+        assertSame(cause, exception.getCause());
+    }
+
+    @Test
+    void shouldDeadLetterBatchOnceRetriesAreExhausted() throws Throwable {
+        RabbitProperties rabbitProperties = new RabbitProperties();
+        RabbitProperties.ListenerRetry retry = rabbitProperties.getListener().getSimple().getRetry();
+        retry.setEnabled(true);
+        retry.setMaxAttempts(2);
+        retry.setInitialInterval(Duration.ofMillis(1));
+        retry.setMaxInterval(Duration.ofMillis(1));
+
+        SimpleRabbitListenerContainerFactory factory = new RabbitMQConfig().courseLevelBatchContainerFactory(
+                new SimpleRabbitListenerContainerFactoryConfigurer(rabbitProperties), mock(ConnectionFactory.class),
+                rabbitProperties, 10, 100);
+
+        ProxyMethodInvocation invocation = mock(ProxyMethodInvocation.class);
+        when(invocation.invocableClone()).thenReturn(invocation);
+        when(invocation.getArguments()).thenReturn(new Object[]{null, batch});
+        when(invocation.proceed()).thenThrow(new IllegalStateException("poison event"));
+
+        assertEquals(1, factory.getAdviceChain().length);
+        MethodInterceptor retryInterceptor = (MethodInterceptor) factory.getAdviceChain()[0];
+
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> retryInterceptor.invoke(invocation));
+        verify(invocation, times(2)).proceed();
+    }
+}
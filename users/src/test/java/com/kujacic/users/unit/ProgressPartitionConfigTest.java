@@ -0,0 +1,124 @@
+package com.kujacic.users.unit;
+
+import com.kujacic.users.config.ProgressPartitionConfig;
+import com.kujacic.users.dto.rabbitmq.CourseLevelPassEvent;
+import com.kujacic.users.repository.ProgressRepository;
+import com.kujacic.users.service.AchievementService;
+import com.kujacic.users.service.ProgressService;
+import com.kujacic.users.service.UserListener;
+import com.kujacic.users.service.UserPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProgressPartitionConfigTest {
+
+    @Mock
+    private ProgressRepository progressRepository;
+
+    @Mock
+    private AchievementService achievementService;
+
+    @Mock
+    private ProgressService progressService;
+
+    @Mock
+    private UserPublisher userPublisher;
+
+    @Mock
+    private RabbitListenerEndpointRegistrar registrar;
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    private final Jackson2JsonMessageConverter messageConverter = new Jackson2JsonMessageConverter();
+
+    private SimpleRabbitListenerContainerFactory containerFactory;
+
+    private UserListener userListener;
+
+    @BeforeEach
+    void setUp() {
+        containerFactory = new SimpleRabbitListenerContainerFactory();
+        containerFactory.setConnectionFactory(connectionFactory);
+        containerFactory.setBatchListener(true);
+        containerFactory.setConsumerBatchEnabled(true);
+        // Endpoints must not inherit a higher concurrency from the factory
+        containerFactory.setConcurrentConsumers(8);
+
+        userListener = new UserListener(progressRepository, achievementService, progressService, userPublisher, messageConverter);
+    }
+
+    @Test
+    void shouldAssignEveryPartitionQueueToItsOwnSingleConsumer() {
+        List<SimpleMessageListenerContainer> containers = containers(4);
+
+        Set<String> assignedQueues = new HashSet<>();
+        for (int partition = 0; partition < 4; partition++) {
+            SimpleMessageListenerContainer container = containers.get(partition);
+            assertArrayEquals(new String[]{"courses-queue." + partition}, container.getQueueNames());
+            assertEquals(1, ReflectionTestUtils.getField(container, "concurrentConsumers"));
+            assignedQueues.addAll(List.of(container.getQueueNames()));
+        }
+        assertEquals(4, assignedQueues.size());
+    }
+
+    @Test
+    void shouldApplyEventsOfUserInDeliveryOrder() {
+        SimpleMessageListenerContainer container = containers(1).get(0);
+        List<Message> batch = List.of(message("user-1", 3L), message("user-1", 1L), message("user-1", 2L));
+
+        ((MessageListener) container.getMessageListener()).onMessageBatch(batch);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CourseLevelPassEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(progressService).createProgress(events.capture());
+        assertEquals(List.of(3L, 1L, 2L), events.getValue().stream().map(CourseLevelPassEvent::getLevelId).toList());
+    }
+
+    private List<SimpleMessageListenerContainer> containers(int partitions) {
+        new ProgressPartitionConfig(userListener, containerFactory, partitions).configureRabbitListeners(registrar);
+
+        ArgumentCaptor<RabbitListenerEndpoint> endpoints = ArgumentCaptor.forClass(RabbitListenerEndpoint.class);
+        verify(registrar, times(partitions)).registerEndpoint(endpoints.capture(), eq(containerFactory));
+        return endpoints.getAllValues().stream()
+                .map(endpoint -> containerFactory.createListenerContainer((SimpleRabbitListenerEndpoint) endpoint))
+                .toList();
+    }
+
+    private Message message(String userId, Long levelId) {
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader("userId", userId);
+        CourseLevelPassEvent event = CourseLevelPassEvent.builder()
+                .userId(userId)
+                .courseId(1)
+                .levelId(levelId)
+                .progress(25)
+                .courseName("Course")
+                .build();
+        return messageConverter.toMessage(event, properties);
+    }
+}
@@ -4,7 +4,9 @@ import com.kujacic.users.dto.progress.ProgressResponseDTO;
 import com.kujacic.users.dto.rabbitmq.CourseLevelPassEvent;
 import com.kujacic.users.exception.CouldNotParseExcelException;
 import com.kujacic.users.factory.ProgressFactory;
+import com.kujacic.users.model.ProcessedLevelEvent;
 import com.kujacic.users.model.Progress;
+import com.kujacic.users.repository.ProcessedLevelEventRepository;
 import com.kujacic.users.repository.ProgressRepository;
 import com.kujacic.users.service.ProgressService;
 import com.kujacic.users.util.DocumentUtils;
@@ -17,11 +19,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,6 +35,9 @@ public class ProgressServiceTest {
     @Mock
     private ProgressRepository progressRepository;
 
+    @Mock
+    private ProcessedLevelEventRepository processedLevelEventRepository;
+
     @InjectMocks
     private ProgressService progressService;
 
@@ -65,46 +71,106 @@ public class ProgressServiceTest {
     }
 
     @Test
-    public void progressService_shouldUpdateProgressValueIfExistsOnCreateProgress() {
+    public void progressService_shouldSumEventsOfSameUserAndCourseInBatch() {
+        String userUUID = UUID.randomUUID().toString();
+        CourseLevelPassEvent firstLevel = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(1L).courseName("Test course").progress(25).build();
+        CourseLevelPassEvent secondLevel = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(2L).courseName("Test course").progress(30).build();
+        Progress progress = Progress.builder().id(1).userId(userUUID).courseId(1).courseName("Test course").progress(55).build();
+
+        claimAll();
+        when(progressRepository.upsertProgress(any(String[].class), any(Integer[].class), any(String[].class), any(Integer[].class)))
+                .thenReturn(List.of(progress));
+
+        List<ProgressResponseDTO> progresses = progressService.createProgress(List.of(firstLevel, secondLevel));
+
+        verify(progressRepository).upsertProgress(
+                aryEq(new String[]{userUUID}), aryEq(new Integer[]{1}), aryEq(new String[]{"Test course"}), aryEq(new Integer[]{55}));
+        assertEquals(1, progresses.size());
+        assertEquals(55, progresses.get(0).getProgress());
+    }
+
+    @Test
+    public void progressService_shouldUpsertEveryUserAndCourseOfBatchInOneStatement() {
+        String firstUser = UUID.randomUUID().toString();
+        String secondUser = UUID.randomUUID().toString();
+        CourseLevelPassEvent firstCourse = CourseLevelPassEvent.builder().userId(firstUser).courseId(1).levelId(1L).courseName("Course A").progress(25).build();
+        CourseLevelPassEvent secondCourse = CourseLevelPassEvent.builder().userId(firstUser).courseId(2).levelId(7L).courseName("Course B").progress(40).build();
+        CourseLevelPassEvent otherUser = CourseLevelPassEvent.builder().userId(secondUser).courseId(1).levelId(1L).courseName("Course A").progress(10).build();
+
+        claimAll();
+        when(progressRepository.upsertProgress(any(String[].class), any(Integer[].class), any(String[].class), any(Integer[].class)))
+                .thenReturn(List.of(
+                        Progress.builder().id(1).userId(firstUser).courseId(1).progress(75).build(),
+                        Progress.builder().id(2).userId(firstUser).courseId(2).progress(40).build(),
+                        Progress.builder().id(3).userId(secondUser).courseId(1).progress(10).build()));
+
+        List<ProgressResponseDTO> progresses = progressService.createProgress(List.of(firstCourse, secondCourse, otherUser));
+
+        verify(progressRepository, times(1)).upsertProgress(
+                aryEq(new String[]{firstUser, firstUser, secondUser}),
+                aryEq(new Integer[]{1, 2, 1}),
+                aryEq(new String[]{"Course A", "Course B", "Course A"}),
+                aryEq(new Integer[]{25, 40, 10}));
+        assertEquals(3, progresses.size());
+        assertEquals(75, progresses.get(0).getProgress());
+    }
+
+    @Test
+    public void progressService_shouldSkipRedeliveredEventsInBatch() {
         String userUUID = UUID.randomUUID().toString();
-        CourseLevelPassEvent courseLevelPassEvent = CourseLevelPassEvent.builder()
-                .userId(userUUID)
-                .courseId(1)
-                .levelId(1L)
-                .courseName("Test course")
-                .progress(25)
-                .build();
-
-        Progress progress = progressFactory.createProgress(userUUID);
-
-        ProgressResponseDTO foundProgress = ProgressResponseDTO.builder()
-                .id(1)
-                .courseId(1)
-                .userId(userUUID)
-                .progress(progress.getProgress() + courseLevelPassEvent.getProgress())
-                .build();
-
-        when(progressRepository.findByCourseIdAndUserId(courseLevelPassEvent.getCourseId(), courseLevelPassEvent.getUserId())).thenReturn(Optional.ofNullable(progress));
-
-        ProgressResponseDTO returnProgress = progressService.createProgress(courseLevelPassEvent);
-        assertEquals(returnProgress.getCourseId(), foundProgress.getCourseId());
-        assertEquals(returnProgress.getProgress(),foundProgress.getProgress() );
-        assertEquals(returnProgress.getUserId(), foundProgress.getUserId());
+        CourseLevelPassEvent newLevel = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(2L).courseName("Test course").progress(25).build();
+        CourseLevelPassEvent redeliveredNewLevel = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(2L).courseName("Test course").progress(25).build();
+        CourseLevelPassEvent appliedLevel = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(1L).courseName("Test course").progress(25).build();
+
+        when(processedLevelEventRepository.claim(aryEq(new String[]{userUUID, userUUID}), aryEq(new Long[]{2L, 1L})))
+                .thenReturn(List.of(ProcessedLevelEvent.builder().userId(userUUID).levelId(2L).build()));
+        when(progressRepository.upsertProgress(any(String[].class), any(Integer[].class), any(String[].class), any(Integer[].class)))
+                .thenReturn(List.of(Progress.builder().id(1).userId(userUUID).courseId(1).progress(50).build()));
+
+        List<ProgressResponseDTO> progresses = progressService.createProgress(List.of(newLevel, redeliveredNewLevel, appliedLevel));
 
+        verify(progressRepository).upsertProgress(
+                aryEq(new String[]{userUUID}), aryEq(new Integer[]{1}), aryEq(new String[]{"Test course"}), aryEq(new Integer[]{25}));
+        assertEquals(1, progresses.size());
     }
 
     @Test
-    public void progressService_shouldCreateNewProgressIfNoProgressExist() {
+    public void progressService_shouldNotWriteProgressWhenWholeBatchWasApplied() {
+        CourseLevelPassEvent courseLevelPassEvent = CourseLevelPassEvent.builder().userId("user123").courseId(1).levelId(1L).courseName("Test course").progress(25).build();
+
+        when(processedLevelEventRepository.claim(any(), any())).thenReturn(List.of());
+
+        List<ProgressResponseDTO> progresses = progressService.createProgress(List.of(courseLevelPassEvent));
+
+        assertTrue(progresses.isEmpty());
+        verify(progressRepository, never()).upsertProgress(any(String[].class), any(Integer[].class), any(String[].class), any(Integer[].class));
+    }
+
+    @Test
+    public void progressService_shouldLookUpPendingCertificatesOncePerUserAndCourse() {
         String userUUID = UUID.randomUUID().toString();
-        CourseLevelPassEvent courseLevelPassEvent = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(1L).courseName("Test course").progress(25).build();
-        ProgressResponseDTO expectedProgressResponse = ProgressResponseDTO.builder().userId(userUUID).courseId(1).progress(25).build();
+        CourseLevelPassEvent firstLevel = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(1L).courseName("Test course").progress(50).build();
+        CourseLevelPassEvent secondLevel = CourseLevelPassEvent.builder().userId(userUUID).courseId(1).levelId(2L).courseName("Test course").progress(50).build();
 
-        when(progressRepository.findByCourseIdAndUserId(courseLevelPassEvent.getCourseId(), courseLevelPassEvent.getUserId())).thenReturn(Optional.empty());
+        when(progressRepository.findPendingCertificates(aryEq(new String[]{userUUID}), aryEq(new Integer[]{1})))
+                .thenReturn(List.of(Progress.builder().id(1).userId(userUUID).courseId(1).progress(100).build()));
 
-        ProgressResponseDTO progressResponse = progressService.createProgress(courseLevelPassEvent);
+        List<ProgressResponseDTO> pending = progressService.findPendingCertificates(List.of(firstLevel, secondLevel));
+
+        assertEquals(1, pending.size());
+        assertEquals(100, pending.get(0).getProgress());
+    }
 
-        assertEquals(progressResponse.getProgress(),expectedProgressResponse.getProgress() );
-        assertEquals(progressResponse.getUserId(),expectedProgressResponse.getUserId() );
-        assertEquals(progressResponse.getCourseId(),expectedProgressResponse.getCourseId() );
+    private void claimAll() {
+        when(processedLevelEventRepository.claim(any(), any())).thenAnswer(invocation -> {
+            String[] userIds = invocation.getArgument(0);
+            Long[] levelIds = invocation.getArgument(1);
+
+            List<ProcessedLevelEvent> claimed = new ArrayList<>();
+            for (int i = 0; i < userIds.length; i++) {
+                claimed.add(ProcessedLevelEvent.builder().userId(userIds[i]).levelId(levelIds[i]).build());
+            }
+            return claimed;
+        });
     }
 }
@@ -0,0 +1,16 @@
+package com.kujacic.users.unit;
+
+import com.kujacic.users.config.RabbitMQConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RabbitMQConfigTest {
+
+    @Test
+    void shouldNamePartitionQueuesByIndex() {
+        assertEquals(List.of("courses-queue.0", "courses-queue.1", "courses-queue.2"), RabbitMQConfig.partitionQueueNames(3));
+    }
+}
@@ -13,16 +13,23 @@ import com.kujacic.users.service.UserPublisher;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -45,6 +52,9 @@ class UserListenerTest {
     @Mock
     private UserPublisher userPublisher;
 
+    @Spy
+    private Jackson2JsonMessageConverter messageConverter = new Jackson2JsonMessageConverter();
+
     @InjectMocks
     private UserListener userListener;
 
@@ -55,22 +65,19 @@ class UserListenerTest {
 
     @Test
     void shouldSetMDCValues() {
-        AtomicReference<String> capturedCorrelationId = new AtomicReference<>();
-        AtomicReference<String> capturedLevelId = new AtomicReference<>();
+        AtomicReference<String> capturedBatchSize = new AtomicReference<>();
 
         CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent();
         ProgressResponseDTO response = progressFactory.createProgressResponse(1, 50);
 
-        when(progressService.createProgress(any())).thenAnswer(invocation -> {
-            capturedCorrelationId.set(MDC.get("correlationId"));
-            capturedLevelId.set(MDC.get("levelId"));
-            return response;
+        when(progressService.createProgress(anyList())).thenAnswer(invocation -> {
+            capturedBatchSize.set(MDC.get("batchSize"));
+            return List.of(response);
         });
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(event), message(event)));
 
-        assertEquals("test-correlation-id", capturedCorrelationId.get());
-        assertEquals("123", capturedLevelId.get());
+        assertEquals("2", capturedBatchSize.get());
     }
 
     @Test
@@ -78,50 +85,106 @@ class UserListenerTest {
         CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent();
         ProgressResponseDTO response = progressFactory.createProgressResponse(1, 50);
 
-        when(progressService.createProgress(any())).thenReturn(response);
+        when(progressService.createProgress(anyList())).thenReturn(List.of(response));
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(event)));
 
-        assertNull(MDC.get("correlationId"));
-        assertNull(MDC.get("levelId"));
+        assertNull(MDC.get("batchSize"));
     }
 
     @Test
     void shouldClearMDCOnException() {
         CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent();
 
-        when(progressService.createProgress(any())).thenThrow(new RuntimeException("Test error"));
+        when(progressService.createProgress(anyList())).thenThrow(new RuntimeException("Test error"));
 
         assertThrows(RuntimeException.class, () ->
-                userListener.handleCourseLevelEvent(event, "test-correlation-id", "123")
+                userListener.handleCourseLevelEvents(List.of(message(event)))
         );
 
-        assertNull(MDC.get("correlationId"));
-        assertNull(MDC.get("levelId"));
+        assertNull(MDC.get("batchSize"));
     }
 
     @Test
-    void shouldCreateProgress() {
-        CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent();
-        ProgressResponseDTO response = progressFactory.createProgressResponse(1, 50);
+    void shouldCreateProgressForWholeBatch() {
+        CourseLevelPassEvent first = courseFactory.createCourseLevelPassEvent("user1", 25);
+        CourseLevelPassEvent second = courseFactory.createCourseLevelPassEvent("user2", 50);
 
-        when(progressService.createProgress(any())).thenReturn(response);
+        when(progressService.createProgress(anyList())).thenReturn(List.of());
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(first), message(second)));
 
-        verify(progressService).createProgress(event);
+        List<CourseLevelPassEvent> events = capturedBatch();
+        assertEquals(List.of("user1", "user2"), events.stream().map(CourseLevelPassEvent::getUserId).toList());
+        assertEquals(List.of(25, 50), events.stream().map(CourseLevelPassEvent::getProgress).toList());
+    }
+
+    @Test
+    void shouldApplyEventsOneByOneAndDeadLetterOnlyFailingEvent() {
+        CourseLevelPassEvent first = courseFactory.createCourseLevelPassEvent("user1", 25);
+        CourseLevelPassEvent poison = courseFactory.createCourseLevelPassEvent("poison", 50);
+        CourseLevelPassEvent third = courseFactory.createCourseLevelPassEvent("user3", 75);
+        Message poisonMessage = message(poison);
+
+        when(progressService.createProgress(anyList())).thenAnswer(invocation -> {
+            List<CourseLevelPassEvent> events = invocation.getArgument(0);
+            if (events.stream().anyMatch(event -> "poison".equals(event.getUserId()))) {
+                throw new IllegalStateException("Poison event");
+            }
+            return List.of();
+        });
+
+        userListener.handleCourseLevelEvents(List.of(message(first), poisonMessage, message(third)));
+
+        // The batch, then each event on its own
+        verify(progressService, times(4)).createProgress(anyList());
+        verify(userPublisher).deadLetter(poisonMessage);
+        verify(userPublisher, times(1)).deadLetter(any());
+    }
+
+    @Test
+    void shouldRethrowWhenEveryEventOfBatchFails() {
+        CourseLevelPassEvent first = courseFactory.createCourseLevelPassEvent("user1", 25);
+        CourseLevelPassEvent second = courseFactory.createCourseLevelPassEvent("user2", 50);
+
+        when(progressService.createProgress(anyList())).thenThrow(new IllegalStateException("Database unavailable"));
+
+        assertThrows(IllegalStateException.class, () ->
+                userListener.handleCourseLevelEvents(List.of(message(first), message(second))));
+
+        verify(userPublisher, never()).deadLetter(any());
+    }
+
+    @Test
+    void shouldDeadLetterUnreadableAndIncompleteEvents() {
+        CourseLevelPassEvent valid = courseFactory.createCourseLevelPassEvent("user1", 25);
+        CourseLevelPassEvent incomplete = courseFactory.createCourseLevelPassEvent("user2", null);
+        MessageProperties unreadableProperties = jsonProperties();
+        unreadableProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message unreadable = new Message("not json".getBytes(), unreadableProperties);
+        Message incompleteMessage = message(incomplete);
+
+        when(progressService.createProgress(anyList())).thenReturn(List.of());
+
+        userListener.handleCourseLevelEvents(List.of(message(valid), unreadable, incompleteMessage));
+
+        verify(userPublisher).deadLetter(unreadable);
+        verify(userPublisher).deadLetter(incompleteMessage);
+        assertEquals(List.of("user1"), capturedBatch().stream().map(CourseLevelPassEvent::getUserId).toList());
     }
 
     @Test
     void shouldRequestCertificateWhenProgressIs100() {
         CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent("user123", 100);
-        ProgressResponseDTO response = progressFactory.createProgressResponse(150, 1);
+        ProgressResponseDTO response = progressFactory.createProgressResponse(100, 1);
 
-        when(progressService.createProgress(any())).thenReturn(response);
+        when(progressService.createProgress(anyList())).thenReturn(List.of(response));
+        when(progressService.findPendingCertificates(anyList())).thenReturn(List.of(response));
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(event)));
 
         verify(userPublisher).requestCertificate(eq(1), eq("user123"));
+        verify(progressService).markCertificateRequested(1);
     }
 
     @Test
@@ -129,9 +192,10 @@ class UserListenerTest {
         CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent("user123", 150);
         ProgressResponseDTO response = progressFactory.createProgressResponse(150, 1);
 
-        when(progressService.createProgress(any())).thenReturn(response);
+        when(progressService.createProgress(anyList())).thenReturn(List.of(response));
+        when(progressService.findPendingCertificates(anyList())).thenReturn(List.of(response));
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(event)));
 
         verify(userPublisher).requestCertificate(eq(1), eq("user123"));
     }
@@ -139,11 +203,11 @@ class UserListenerTest {
     @Test
     void shouldNotRequestCertificateWhenProgressIsLessThan100() {
         CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent("user123", 99);
-        ProgressResponseDTO response = progressFactory.createProgressResponse(1, 99);
+        ProgressResponseDTO response = progressFactory.createProgressResponse(99, 1);
 
-        when(progressService.createProgress(any())).thenReturn(response);
+        when(progressService.createProgress(anyList())).thenReturn(List.of(response));
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(event)));
 
         verify(userPublisher, never()).requestCertificate(any(), any());
     }
@@ -151,26 +215,49 @@ class UserListenerTest {
     @Test
     void shouldNotRequestCertificateWhenProgressIs0() {
         CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent("user123", 0);
-        ProgressResponseDTO response = progressFactory.createProgressResponse(1, 0);
+        ProgressResponseDTO response = progressFactory.createProgressResponse(0, 1);
 
-        when(progressService.createProgress(any())).thenReturn(response);
+        when(progressService.createProgress(anyList())).thenReturn(List.of(response));
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(event)));
 
         verify(userPublisher, never()).requestCertificate(any(), any());
     }
 
     @Test
-    void shouldPassCorrectCourseIdAndUserIdToCertificateRequest() {
-        CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent("user999", 150);
-        event.setCourseId(999);
-        ProgressResponseDTO response = progressFactory.createProgressResponse(999, 100);
+    void shouldRequestCertificateOnlyForCompletedCoursesOfBatch() {
+        CourseLevelPassEvent first = courseFactory.createCourseLevelPassEvent("user123", 50);
+        CourseLevelPassEvent second = courseFactory.createCourseLevelPassEvent("user123", 50);
+        ProgressResponseDTO completed = progressFactory.createProgressResponse(100, 999);
+        ProgressResponseDTO inProgress = progressFactory.createProgressResponse(40, 2);
 
-        when(progressService.createProgress(any())).thenReturn(response);
+        when(progressService.createProgress(anyList())).thenReturn(List.of(completed, inProgress));
+        when(progressService.findPendingCertificates(anyList())).thenReturn(List.of(completed));
 
-        userListener.handleCourseLevelEvent(event, "test-correlation-id", "123");
+        userListener.handleCourseLevelEvents(List.of(message(first), message(second)));
 
-        verify(userPublisher).requestCertificate(999, "user999");
+        verify(userPublisher).requestCertificate(999, "user123");
+        verify(userPublisher, never()).requestCertificate(eq(2), any());
+    }
+
+    @Test
+    void shouldRequestCertificateOnRetryWhenPublishingFailed() {
+        CourseLevelPassEvent event = courseFactory.createCourseLevelPassEvent("user123", 100);
+        ProgressResponseDTO completed = progressFactory.createProgressResponse(100, 1);
+
+        // The retry finds the level pass claimed, but the certificate is still pending
+        when(progressService.createProgress(anyList())).thenReturn(List.of(completed), List.of());
+        when(progressService.findPendingCertificates(anyList())).thenReturn(List.of(completed));
+        doThrow(new RuntimeException("Broker unavailable")).doNothing()
+                .when(userPublisher).requestCertificate(1, "user123");
+
+        assertThrows(RuntimeException.class, () -> userListener.handleCourseLevelEvents(List.of(message(event))));
+        verify(progressService, never()).markCertificateRequested(any());
+
+        userListener.handleCourseLevelEvents(List.of(message(event)));
+
+        verify(userPublisher, times(2)).requestCertificate(1, "user123");
+        verify(progressService).markCertificateRequested(1);
     }
 
     @Test
@@ -242,4 +329,22 @@ class UserListenerTest {
         assertEquals("Service unavailable", thrown.getMessage());
     }
 
+    private Message message(CourseLevelPassEvent event) {
+        return messageConverter.toMessage(event, jsonProperties());
+    }
+
+    private MessageProperties jsonProperties() {
+        MessageProperties properties = new MessageProperties();
+        properties.setCorrelationId("test-correlation-id");
+        properties.setHeader("levelId", "123");
+        properties.setReceivedRoutingKey("course-level.passed");
+        return properties;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CourseLevelPassEvent> capturedBatch() {
+        ArgumentCaptor<List<CourseLevelPassEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(progressService).createProgress(captor.capture());
+        return captor.getValue();
+    }
 }
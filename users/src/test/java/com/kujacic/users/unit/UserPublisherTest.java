@@ -9,7 +9,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 
 import java.util.UUID;
@@ -75,4 +77,15 @@ public class UserPublisherTest {
         assertNull(MDC.get("courseId"));
 
     }
+
+    @Test
+    void shouldDeadLetterMessageWithItsRoutingKey() {
+        MessageProperties properties = new MessageProperties();
+        properties.setReceivedRoutingKey("course-level.passed");
+        Message message = new Message("{}".getBytes(), properties);
+
+        userPublisher.deadLetter(message);
+
+        verify(rabbitTemplate).send("dlx", "course-level.passed", message);
+    }
 }